@@ -0,0 +1,19 @@
+package cm.cfg4j.spring.benchmark;
+
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * 基准测试共用的容器启动方法, 使用文件配置源
+ */
+final class BenchContexts {
+
+    private static final String CONFIG_FILE_KEY = "benchConfigFile";
+
+    private BenchContexts() {
+    }
+
+    static ClassPathXmlApplicationContext startFileBackend() {
+        System.setProperty(CONFIG_FILE_KEY, "app-bench.properties");
+        return new ClassPathXmlApplicationContext("classpath:spring-bench.xml");
+    }
+}
@@ -0,0 +1,61 @@
+package cm.cfg4j.spring.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程下 Environment.getProperty 的吞吐量, 查询经过 InternalPropertySource
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class EnvironmentLookupBenchmark {
+
+    private ClassPathXmlApplicationContext context;
+
+    private Environment environment;
+
+    @Setup
+    public void setup() {
+        context = BenchContexts.startFileBackend();
+        environment = context.getEnvironment();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String hit() {
+        return environment.getProperty("bench.key.42");
+    }
+
+    @Benchmark
+    public String miss() {
+        return environment.getProperty("bench.key.missing");
+    }
+
+    @Benchmark
+    public Integer hitWithConversion() {
+        return environment.getProperty("server.port", Integer.class);
+    }
+}
@@ -0,0 +1,88 @@
+package cm.cfg4j.spring.benchmark;
+
+import cm.cfg4j.spring.CompiledPlaceholderResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.PropertyPlaceholderHelper;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析一个大型容器中的全部占位符: 每个模板在 bean 定义中重复出现, 对比 Spring 的逐次扫描与编译缓存
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceholderResolveBenchmark {
+
+    /**
+     * 占位符出现的总次数
+     */
+    @Param({"5000"})
+    public int placeholders;
+
+    /**
+     * 不同模板的个数
+     */
+    @Param({"200"})
+    public int templates;
+
+    private Properties properties;
+
+    private String[] values;
+
+    @Setup
+    public void setup() {
+        properties = new Properties();
+        for (int i = 0; i < templates; i++)
+            properties.setProperty("bench.key." + i, "value-" + i);
+        properties.setProperty("bench.host", "localhost");
+        properties.setProperty("bench.url", "http://${bench.host}:8080/");
+
+        values = new String[placeholders];
+        for (int i = 0; i < placeholders; i++) {
+            int k = i % templates;
+            switch (k % 3) {
+                case 0:
+                    values[i] = "${bench.key." + k + "}";
+                    break;
+                case 1:
+                    values[i] = "${bench.url}path/${bench.missing." + k + ":default}";
+                    break;
+                default:
+                    values[i] = "prefix-${bench.key.${bench.index:" + k + "}}-suffix";
+            }
+        }
+    }
+
+    @Benchmark
+    public void springHelper(Blackhole bh) {
+        PropertyPlaceholderHelper helper = new PropertyPlaceholderHelper("${", "}", ":", false);
+        for (String value : values)
+            bh.consume(helper.replacePlaceholders(value, properties));
+    }
+
+    /**
+     * 与容器刷新时一样, 每轮创建新的解析器, 缓存只在一轮内生效
+     */
+    @Benchmark
+    public void compiled(Blackhole bh) {
+        CompiledPlaceholderResolver resolver = new CompiledPlaceholderResolver("${", "}", ":", false, properties::getProperty);
+        for (String value : values)
+            bh.consume(resolver.replacePlaceholders(value));
+    }
+}
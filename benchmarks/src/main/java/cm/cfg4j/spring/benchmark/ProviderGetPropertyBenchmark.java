@@ -0,0 +1,79 @@
+package cm.cfg4j.spring.benchmark;
+
+import cm.cfg4j.spring.snapshot.TypedProperties;
+import org.cfg4j.provider.ConfigurationProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConfigurationProvider.getProperty 带类型转换的开销, 与 TypedProperties 的缓存句柄对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProviderGetPropertyBenchmark {
+
+    private ClassPathXmlApplicationContext context;
+
+    private ConfigurationProvider provider;
+
+    private TypedProperties.IntProperty port;
+
+    private TypedProperties.ObjectProperty<Duration> timeout;
+
+    @Setup
+    public void setup() {
+        context = BenchContexts.startFileBackend();
+        provider = context.getBean(ConfigurationProvider.class);
+
+        TypedProperties typedProperties = context.getBean(TypedProperties.class);
+        port = typedProperties.intProperty("server.port", 0);
+        timeout = typedProperties.durationProperty("server.timeout", Duration.ZERO);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String providerString() {
+        return provider.getProperty("bench.key.42", String.class);
+    }
+
+    @Benchmark
+    public Integer providerInteger() {
+        return provider.getProperty("server.port", Integer.class);
+    }
+
+    @Benchmark
+    public Boolean providerBoolean() {
+        return provider.getProperty("feature.enabled", Boolean.class);
+    }
+
+    @Benchmark
+    public int typedInt() {
+        return port.get();
+    }
+
+    @Benchmark
+    public Duration typedDuration() {
+        return timeout.get();
+    }
+}
@@ -0,0 +1,140 @@
+package cm.cfg4j.spring.benchmark;
+
+import cm.cfg4j.spring.source.DatabaseConfigurationSource;
+import cm.cfg4j.spring.source.ProviderAwareConfigurationSource;
+import org.cfg4j.provider.ConfigurationProvider;
+import org.cfg4j.provider.ConfigurationProviderBuilder;
+import org.cfg4j.source.context.environment.ImmutableEnvironment;
+import org.cfg4j.source.reload.strategy.ImmediateReloadStrategy;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据库配置源在不同 key 数量下的 reload 开销, 以内存 H2(MySQL 兼容模式)代替 MySQL.
+ * <p>
+ * unchanged 为数据未变化时(指纹短路)的开销, changed 每次先修改一行再 reload, 包含快照重建与差异计算.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReloadBenchmark {
+
+    private static final String PROJECT = "bench";
+
+    private static final String PROFILE = "default";
+
+    @Param({"1000", "10000", "100000"})
+    public int keys;
+
+    @Param({"false", "true"})
+    public boolean incremental;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    private Connection keepAlive;
+
+    private PreparedStatement update;
+
+    private DatabaseConfigurationSource databaseSource;
+
+    private ProviderAwareConfigurationSource source;
+
+    private long version;
+
+    @Setup
+    public void setup() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bench_" + keys + "_" + incremental + "_" + streaming + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+
+        // 内存库在最后一个连接关闭后销毁, 保持一个连接
+        keepAlive = dataSource.getConnection();
+        try (Statement st = keepAlive.createStatement()) {
+            st.execute("CREATE TABLE TB_CONFIG (" +
+                " ID INTEGER PRIMARY KEY AUTO_INCREMENT," +
+                " PROJECT VARCHAR(255) NOT NULL," +
+                " PROFILE VARCHAR(255) NOT NULL DEFAULT 'default'," +
+                " `KEY` VARCHAR(255) NOT NULL," +
+                " `VALUE` VARCHAR(255) NOT NULL," +
+                " DELETED TINYINT NOT NULL DEFAULT 0," +
+                " UPDATE_AT TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            st.execute("CREATE UNIQUE INDEX TB_CONFIG_UNIQ ON TB_CONFIG (PROJECT, PROFILE, `KEY`)");
+            st.execute("CREATE INDEX TB_CONFIG_UPDATE_AT ON TB_CONFIG (PROJECT, UPDATE_AT)");
+        }
+
+        try (PreparedStatement insert = keepAlive.prepareStatement("INSERT INTO TB_CONFIG (PROJECT, PROFILE, `KEY`, `VALUE`) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < keys; i++) {
+                insert.setString(1, PROJECT);
+                insert.setString(2, PROFILE);
+                insert.setString(3, "bench.key." + i);
+                insert.setString(4, "value-" + i);
+                insert.addBatch();
+                if (i % 1000 == 999)
+                    insert.executeBatch();
+            }
+            insert.executeBatch();
+        }
+
+        update = keepAlive.prepareStatement("UPDATE TB_CONFIG SET `VALUE` = ?, UPDATE_AT = CURRENT_TIMESTAMP WHERE PROJECT = ? AND `KEY` = ?");
+
+        databaseSource = new DatabaseConfigurationSource(dataSource, "TB_CONFIG", PROJECT);
+        databaseSource.setIncremental(incremental);
+        databaseSource.setDeletedColumn("deleted");
+        if (streaming)
+            databaseSource.setProfile(PROFILE);
+
+        source = new ProviderAwareConfigurationSource(databaseSource);
+        source.setChangeDispatcher(null);
+        ConfigurationProvider provider = new ConfigurationProviderBuilder()
+            .withConfigurationSource(source)
+            .withEnvironment(new ImmutableEnvironment(PROFILE))
+            .withReloadStrategy(new ImmediateReloadStrategy())
+            .build();
+        source.setConfigurationProvider(provider);
+        source.reload();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        source.close();
+        update.close();
+        keepAlive.close();
+    }
+
+    @Benchmark
+    public long unchanged() {
+        source.reload();
+        return source.getSkippedReloadCount();
+    }
+
+    @Benchmark
+    public long changed() throws SQLException {
+        update.setString(1, "changed-" + (++version));
+        update.setString(2, PROJECT);
+        update.setString(3, "bench.key.0");
+        update.executeUpdate();
+
+        source.reload();
+        return source.getAppliedReloadCount();
+    }
+}
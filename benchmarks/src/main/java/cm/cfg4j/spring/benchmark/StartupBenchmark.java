@@ -0,0 +1,30 @@
+package cm.cfg4j.spring.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件配置源的容器启动耗时, 每次都创建新的 provider(关闭容器时释放)
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(3)
+public class StartupBenchmark {
+
+    @Benchmark
+    public ClassPathXmlApplicationContext fileBackend() {
+        ClassPathXmlApplicationContext context = BenchContexts.startFileBackend();
+        context.close();
+        return context;
+    }
+}
@@ -1,33 +1,72 @@
 package cm.cfg4j.spring;
 
+import cm.cfg4j.spring.listener.ConfigChangeDispatcher;
+import cm.cfg4j.spring.metrics.ConfigMetrics;
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
 import org.cfg4j.provider.ConfigurationProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.config.PropertyPlaceholderConfigurer;
 import org.springframework.context.EnvironmentAware;
 import org.springframework.core.env.AbstractEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
 import org.springframework.core.env.Environment;
-import org.springframework.core.env.PropertySource;
+import org.springframework.util.StringValueResolver;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * 基于 cfg4j 的属性占位符解析器
  * <p>
+ * 开启 refresh 后, 占位符注入的单例 bean 属性会在配置变更时重新注入, 见 {@link PlaceholderBeanRefresher}.
+ * <p>
+ * bean 定义中的占位符由 {@link CompiledPlaceholderResolver} 解析, 每个字符串只扫描一次, 相同的占位符直接命中缓存.
+ * <p>
  * Created by Yang Tengfei on 9/23/16.
  */
-public class Cfg4jPropertyPlaceholderConfigurer extends PropertyPlaceholderConfigurer implements InitializingBean, EnvironmentAware {
+public class Cfg4jPropertyPlaceholderConfigurer extends PropertyPlaceholderConfigurer implements InitializingBean, DisposableBean, EnvironmentAware {
 
     private final Logger log = LoggerFactory.getLogger(Cfg4jPropertyPlaceholderConfigurer.class);
 
-    public static final AtomicReference<Properties> __propertiesHolder = new AtomicReference<>();
+    /**
+     * 当前生效的只读属性快照, 每次 reload 后整体替换
+     */
+    public static final AtomicReference<PropertiesSnapshot> __propertiesHolder = new AtomicReference<>(PropertiesSnapshot.empty());
 
     private Environment environment;
 
     private ConfigurationProvider configurationProvider;
 
+    private ConfigurationProviderFactoryBean providerFactory;
+
+    private boolean refreshEnabled;
+
+    private ConfigChangeDispatcher changeDispatcher = ConfigChangeDispatcher.shared();
+
+    private String beanName;
+
+    private int systemPropertiesMode = SYSTEM_PROPERTIES_MODE_FALLBACK;
+
+    private PlaceholderBeanRefresher refresher;
+
+    private ConfigMetrics metrics;
+
+    private static final Map<String, Integer> SYSTEM_PROPERTIES_MODE_NAMES = new HashMap<>();
+
+    static {
+        SYSTEM_PROPERTIES_MODE_NAMES.put("SYSTEM_PROPERTIES_MODE_NEVER", SYSTEM_PROPERTIES_MODE_NEVER);
+        SYSTEM_PROPERTIES_MODE_NAMES.put("SYSTEM_PROPERTIES_MODE_FALLBACK", SYSTEM_PROPERTIES_MODE_FALLBACK);
+        SYSTEM_PROPERTIES_MODE_NAMES.put("SYSTEM_PROPERTIES_MODE_OVERRIDE", SYSTEM_PROPERTIES_MODE_OVERRIDE);
+    }
+
     public ConfigurationProvider getConfigurationProvider() {
         return configurationProvider;
     }
@@ -36,21 +75,140 @@ public class Cfg4jPropertyPlaceholderConfigurer extends PropertyPlaceholderConfi
         this.configurationProvider = configurationProvider;
     }
 
+    /**
+     * 从工厂 bean 中取得 provider 及其统计, 没有直接设置 configurationProvider 时使用
+     */
+    public void setProviderFactory(ConfigurationProviderFactoryBean providerFactory) {
+        this.providerFactory = providerFactory;
+    }
+
+    public boolean isRefreshEnabled() {
+        return refreshEnabled;
+    }
+
+    /**
+     * 是否在配置变更后重新注入占位符绑定的 bean 属性
+     */
+    public void setRefreshEnabled(boolean refreshEnabled) {
+        this.refreshEnabled = refreshEnabled;
+    }
+
+    public void setChangeDispatcher(ConfigChangeDispatcher changeDispatcher) {
+        this.changeDispatcher = changeDispatcher;
+    }
+
+    /**
+     * 用于记录 Environment 中的查询次数, 可以为 null
+     */
+    public void setMetrics(ConfigMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void setSystemPropertiesMode(int systemPropertiesMode) {
+        super.setSystemPropertiesMode(systemPropertiesMode);
+        this.systemPropertiesMode = systemPropertiesMode;
+    }
+
+    @Override
+    public void setSystemPropertiesModeName(String constantName) throws IllegalArgumentException {
+        super.setSystemPropertiesModeName(constantName);
+        this.systemPropertiesMode = SYSTEM_PROPERTIES_MODE_NAMES.get(constantName);
+    }
+
+    @Override
+    public void setBeanName(String beanName) {
+        super.setBeanName(beanName);
+        this.beanName = beanName;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
+        if (configurationProvider == null && providerFactory != null) {
+            configurationProvider = providerFactory.getObject();
+            if (metrics == null)
+                metrics = providerFactory.getMetrics();
+        }
+        if (configurationProvider == null)
+            throw new IllegalStateException("either configurationProvider or providerFactory is required");
+    }
+
+    /**
+     * 到真正解析占位符时才读取配置, 异步初始化的 provider 在此之前的 bean 定义注册、其他后处理器实例化期间在后台加载.
+     * 占位符必须在创建单例之前解析完, 所以等待不会晚于这里
+     */
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
         Properties properties = configurationProvider.allConfigurationAsProperties();
-        __propertiesHolder.set(properties);
+        __propertiesHolder.set(PropertiesSnapshot.of(properties));
 
-        // 刷新后不需要再更新 placeholder 的属性值, 因为该值只在启动时才用到
+        // 刷新后不需要再更新 placeholder 的属性值, 因为该值只在启动时才用到; 开启 refresh 时由 PlaceholderBeanRefresher 负责更新
         super.setProperties(properties);
 
         // 配置environment
         configEnvironment();
+
+        super.postProcessBeanFactory(beanFactory);
+    }
+
+    @Override
+    protected void processProperties(ConfigurableListableBeanFactory beanFactory, Properties props) throws BeansException {
+        if (refreshEnabled) {
+            // 必须在解析前记录, 解析会直接替换 bean 定义中的值
+            refresher = new PlaceholderBeanRefresher(placeholderPrefix, this::newValueResolver);
+            refresher.record(beanFactory, beanName, __propertiesHolder.get());
+            changeDispatcher.addListener("", refresher);
+        }
+
+        doProcessProperties(beanFactory, newValueResolver(PropertiesSnapshot.of(props), null));
+    }
+
+    /**
+     * 针对快照的占位符解析, 包括 trimValues 和 nullValue 的处理; 启动时和热刷新时共用
+     *
+     * @param referenced 每查询一个属性名时回调, 可以为 null
+     */
+    StringValueResolver newValueResolver(PropertiesSnapshot snapshot, Consumer<String> referenced) {
+        CompiledPlaceholderResolver resolver = new CompiledPlaceholderResolver(placeholderPrefix, placeholderSuffix, valueSeparator,
+            ignoreUnresolvablePlaceholders, name -> {
+                if (referenced != null)
+                    referenced.accept(name);
+                return lookup(snapshot, name);
+            });
+
+        return strVal -> {
+            String resolved = resolver.replacePlaceholders(strVal);
+            if (trimValues)
+                resolved = resolved.trim();
+            return resolved.equals(nullValue) ? null : resolved;
+        };
+    }
+
+    /**
+     * 与 PropertyPlaceholderConfigurer 相同, 按 systemPropertiesMode 决定系统属性与配置的优先级
+     */
+    private String lookup(PropertiesSnapshot snapshot, String name) {
+        String value = null;
+        if (systemPropertiesMode == SYSTEM_PROPERTIES_MODE_OVERRIDE)
+            value = resolveSystemProperty(name);
+        if (value == null)
+            value = snapshot.get(name);
+        if (value == null && systemPropertiesMode == SYSTEM_PROPERTIES_MODE_FALLBACK)
+            value = resolveSystemProperty(name);
+        return value;
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) {
+            changeDispatcher.removeListener(refresher);
+            refresher = null;
+        }
     }
 
     private void configEnvironment() {
         if (environment != null && environment instanceof AbstractEnvironment) {
-            InternalPropertySource propertySource = new InternalPropertySource("internalPropertySourceForConfigurationProvider", __propertiesHolder);
+            InternalPropertySource propertySource = new InternalPropertySource("internalPropertySourceForConfigurationProvider", __propertiesHolder, metrics);
             ((AbstractEnvironment) environment).getPropertySources().addFirst(propertySource);
         } else {
             log.warn("cannot update spring environment with values from ConfigurationProvider");
@@ -65,15 +223,31 @@ public class Cfg4jPropertyPlaceholderConfigurer extends PropertyPlaceholderConfi
     /**
      * 使用最新的属性源来获取属性, 因为资源在 reload 后,会重置属性源. 为了保证 Environment 能够拿到最新的值, 故重写
      */
-    private class InternalPropertySource extends PropertySource<AtomicReference<Properties>> {
+    private class InternalPropertySource extends EnumerablePropertySource<AtomicReference<PropertiesSnapshot>> {
+
+        private final ConfigMetrics metrics;
 
-        InternalPropertySource(String name, AtomicReference<Properties> source) {
+        InternalPropertySource(String name, AtomicReference<PropertiesSnapshot> source, ConfigMetrics metrics) {
             super(name, source);
+            this.metrics = metrics;
         }
 
         @Override
         public Object getProperty(String name) {
-            return __propertiesHolder.get().getProperty(name);
+            String value = getSource().get().get(name);
+            if (metrics != null)
+                metrics.recordLookup(value != null);
+            return value;
+        }
+
+        @Override
+        public boolean containsProperty(String name) {
+            return getSource().get().containsKey(name);
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return getSource().get().getPropertyNames();
         }
     }
 }
@@ -0,0 +1,271 @@
+package cm.cfg4j.spring;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * 针对同一份配置快照的占位符解析器
+ * <p>
+ * 语义与 Spring 的 PropertyPlaceholderHelper 一致(嵌套占位符, 默认值, 属性值中的占位符递归解析, 循环引用检测),
+ * 区别在于每个字符串只扫描一次, 编译成由文本片段和占位符组成的模板后缓存; 属性值完全解析后的结果和整个字符串的解析结果也会缓存.
+ * 大型 XML 容器中同一个占位符往往出现成百上千次, 之后都直接命中缓存.
+ * <p>
+ * 缓存只对创建时的快照有效, 快照替换后需要创建新的解析器. 启动时使用的解析器会作为容器的 embedded value resolver
+ * 一直存活, 之后解析的字符串不可预知, 因此每个缓存最多保存 maxCacheSize 项, 写满后不再加入新项, 只是不再命中缓存.
+ */
+public class CompiledPlaceholderResolver {
+
+    private static final Map<String, String> WELL_KNOWN_SIMPLE_PREFIXES = new HashMap<>(4);
+
+    static {
+        WELL_KNOWN_SIMPLE_PREFIXES.put("}", "{");
+        WELL_KNOWN_SIMPLE_PREFIXES.put("]", "[");
+        WELL_KNOWN_SIMPLE_PREFIXES.put(")", "(");
+    }
+
+    /**
+     * 每个缓存默认的最大项数
+     */
+    public static final int DEFAULT_MAX_CACHE_SIZE = 10000;
+
+    private final String placeholderPrefix;
+
+    private final String placeholderSuffix;
+
+    private final String simplePrefix;
+
+    private final String valueSeparator;
+
+    private final boolean ignoreUnresolvablePlaceholders;
+
+    private final Function<String, String> lookup;
+
+    private final int maxCacheSize;
+
+    /**
+     * 字符串 -&gt; 编译后的模板
+     */
+    private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<>();
+
+    /**
+     * 属性名 -&gt; 完全解析后的属性值, 只缓存能查到的属性
+     */
+    private final ConcurrentMap<String, String> resolvedValues = new ConcurrentHashMap<>();
+
+    /**
+     * 字符串 -&gt; 完全解析后的结果
+     */
+    private final ConcurrentMap<String, String> results = new ConcurrentHashMap<>();
+
+    /**
+     * @param lookup 按属性名查询原始属性值, 查不到时返回 null
+     */
+    public CompiledPlaceholderResolver(String placeholderPrefix, String placeholderSuffix, String valueSeparator,
+                                       boolean ignoreUnresolvablePlaceholders, Function<String, String> lookup) {
+        this(placeholderPrefix, placeholderSuffix, valueSeparator, ignoreUnresolvablePlaceholders, lookup, DEFAULT_MAX_CACHE_SIZE);
+    }
+
+    /**
+     * @param lookup       按属性名查询原始属性值, 查不到时返回 null
+     * @param maxCacheSize 每个缓存的最大项数, 为 0 时不缓存
+     */
+    public CompiledPlaceholderResolver(String placeholderPrefix, String placeholderSuffix, String valueSeparator,
+                                       boolean ignoreUnresolvablePlaceholders, Function<String, String> lookup, int maxCacheSize) {
+        if (placeholderPrefix == null || placeholderPrefix.isEmpty())
+            throw new IllegalArgumentException("placeholderPrefix cannot be empty");
+        if (placeholderSuffix == null || placeholderSuffix.isEmpty())
+            throw new IllegalArgumentException("placeholderSuffix cannot be empty");
+        if (maxCacheSize < 0)
+            throw new IllegalArgumentException("maxCacheSize cannot be negative: " + maxCacheSize);
+
+        this.placeholderPrefix = placeholderPrefix;
+        this.placeholderSuffix = placeholderSuffix;
+        this.valueSeparator = valueSeparator == null || valueSeparator.isEmpty() ? null : valueSeparator;
+        this.ignoreUnresolvablePlaceholders = ignoreUnresolvablePlaceholders;
+        this.lookup = lookup;
+        this.maxCacheSize = maxCacheSize;
+
+        String simple = WELL_KNOWN_SIMPLE_PREFIXES.get(placeholderSuffix);
+        this.simplePrefix = simple != null && placeholderPrefix.endsWith(simple) ? simple : placeholderPrefix;
+    }
+
+    /**
+     * 替换字符串中的全部占位符
+     *
+     * @throws IllegalArgumentException 存在无法解析的占位符(且未忽略)或循环引用
+     */
+    public String replacePlaceholders(String value) {
+        String result = results.get(value);
+        if (result == null) {
+            result = evaluate(compile(value), new HashSet<>(4));
+            cache(results, value, result);
+        }
+        return result;
+    }
+
+    private Template compile(String value) {
+        Template template = templates.get(value);
+        if (template == null) {
+            template = parse(value);
+            cache(templates, value, template);
+        }
+        return template;
+    }
+
+    private Template parse(String value) {
+        int start = value.indexOf(placeholderPrefix);
+        if (start < 0)
+            return new Template(value, null);
+
+        List<Object> parts = new ArrayList<>();
+        int pos = 0;
+        while (start >= 0) {
+            int end = findPlaceholderEndIndex(value, start);
+            if (end < 0)
+                break;
+
+            if (start > pos)
+                parts.add(value.substring(pos, start));
+
+            String original = value.substring(start + placeholderPrefix.length(), end);
+            parts.add(new Placeholder(original, compile(original)));
+
+            pos = end + placeholderSuffix.length();
+            start = value.indexOf(placeholderPrefix, pos);
+        }
+
+        if (parts.isEmpty())
+            return new Template(value, null);
+
+        if (pos < value.length())
+            parts.add(value.substring(pos));
+        return new Template(value, parts.toArray());
+    }
+
+    private String evaluate(Template template, Set<String> visited) {
+        if (template.parts == null)
+            return template.source;
+
+        StringBuilder sb = new StringBuilder(template.source.length());
+        for (Object part : template.parts) {
+            if (part instanceof String) {
+                sb.append((String) part);
+                continue;
+            }
+
+            Placeholder placeholder = (Placeholder) part;
+            if (!visited.add(placeholder.original))
+                throw new IllegalArgumentException("Circular placeholder reference '" + placeholder.original + "' in property definitions");
+
+            String key = evaluate(placeholder.key, visited);
+            String value = resolve(key, visited);
+            if (value == null && valueSeparator != null) {
+                int idx = key.indexOf(valueSeparator);
+                if (idx >= 0) {
+                    value = resolve(key.substring(0, idx), visited);
+                    if (value == null)
+                        value = evaluate(compile(key.substring(idx + valueSeparator.length())), visited);
+                }
+            }
+
+            if (value != null) {
+                sb.append(value);
+            } else if (ignoreUnresolvablePlaceholders) {
+                sb.append(placeholderPrefix).append(placeholder.original).append(placeholderSuffix);
+            } else {
+                throw new IllegalArgumentException("Could not resolve placeholder '" + key + "' in value \"" + template.source + "\"");
+            }
+
+            visited.remove(placeholder.original);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 查询属性值并递归解析其中的占位符, 查不到时返回 null
+     */
+    private String resolve(String key, Set<String> visited) {
+        String value = resolvedValues.get(key);
+        if (value != null)
+            return value;
+
+        String raw = lookup.apply(key);
+        if (raw == null)
+            return null;
+
+        value = evaluate(compile(raw), visited);
+        cache(resolvedValues, key, value);
+        return value;
+    }
+
+    private <V> void cache(ConcurrentMap<String, V> cache, String key, V value) {
+        if (cache.size() < maxCacheSize)
+            cache.putIfAbsent(key, value);
+    }
+
+    /**
+     * 三个缓存的总项数
+     */
+    int cachedEntries() {
+        return templates.size() + resolvedValues.size() + results.size();
+    }
+
+    /**
+     * 与 PropertyPlaceholderHelper 相同: 跳过成对的嵌套前缀, 返回对应后缀的位置
+     */
+    private int findPlaceholderEndIndex(String value, int startIndex) {
+        int index = startIndex + placeholderPrefix.length();
+        int nested = 0;
+        while (index < value.length()) {
+            if (value.startsWith(placeholderSuffix, index)) {
+                if (nested == 0)
+                    return index;
+                nested--;
+                index += placeholderSuffix.length();
+            } else if (value.startsWith(simplePrefix, index)) {
+                nested++;
+                index += simplePrefix.length();
+            } else {
+                index++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 编译后的字符串, parts 为 null 表示不含占位符; 否则依次为文本片段(String)和占位符({@link Placeholder})
+     */
+    private static final class Template {
+
+        private final String source;
+
+        private final Object[] parts;
+
+        private Template(String source, Object[] parts) {
+            this.source = source;
+            this.parts = parts;
+        }
+    }
+
+    /**
+     * 占位符, key 为前后缀之间的内容编译后的模板, 可能含有嵌套占位符和默认值
+     */
+    private static final class Placeholder {
+
+        private final String original;
+
+        private final Template key;
+
+        private Placeholder(String original, Template key) {
+            this.original = original;
+            this.key = key;
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package cm.cfg4j.spring;
 
-import cm.cfg4j.spring.config.ConfigurationProviderFactoryImpl;
-import org.cfg4j.provider.ConfigurationProvider;
+import cm.cfg4j.spring.config.ConfigurationProviderRegistry;
+import cm.cfg4j.spring.listener.ConfigChangeDispatcher;
+import cm.cfg4j.spring.snapshot.ConfigBinder;
+import cm.cfg4j.spring.snapshot.TypedProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.w3c.dom.Element;
@@ -16,7 +21,7 @@ import java.util.Properties;
 
 /**
  * 加载 配置系统 原始配置文件, 根据文件的内容构造 PropertiesPlaceHolderConfigure,
- * 并注册 ConfigurationProvider 到容器中
+ * 并注册 ConfigurationProvider, TypedProperties, ConfigBinder 及 ConfigChangeDispatcher 到容器中
  * <p>
  * Created by Yang Tengfei on 9/23/16.
  */
@@ -24,8 +29,16 @@ public class ConfigurationBeanDefinitionParser extends AbstractSingleBeanDefinit
 
     private final Logger log = LoggerFactory.getLogger(ConfigurationBeanDefinitionParser.class);
 
+    private static final String PROVIDER_BEAN_NAME = "cfg4jConfigurationProvider";
+
+    private static final String INITIALIZER_BEAN_NAME = "cfg4jConfigurationProviderInitializer";
+
+    private static final String KEY_INIT_ASYNC = "init.async";
+
     private static final String KEY = "key";
 
+    private static final String REFRESH = "refresh";
+
     private static final String KEY_DEFAULT_VALUE = "configFile";
 
     private static final String DEFAULT_CONFIG_FILE_NAME = "app.properties";
@@ -35,13 +48,37 @@ public class ConfigurationBeanDefinitionParser extends AbstractSingleBeanDefinit
         Properties prop = loadProperties(getConfigFile(element.getAttribute(KEY)));
         log.info("origin config: {}", prop);
 
-        ConfigurationProvider provider = new ConfigurationProviderFactoryImpl().create(prop);
+        // 解析阶段只记录原始配置, provider 在工厂 bean 初始化时才从注册表中获取, 相同来源的配置在多个容器间共享同一个 provider
+        BeanDefinitionRegistry registry = parserContext.getRegistry();
+        if (registry.containsBeanDefinition(PROVIDER_BEAN_NAME)) {
+            Properties registered = registeredOrigin(registry);
+            if (registered == null || !ConfigurationProviderRegistry.keyOf(registered).equals(ConfigurationProviderRegistry.keyOf(prop))) {
+                parserContext.getReaderContext().error("[" + PROVIDER_BEAN_NAME + "] is already registered with a different origin config: "
+                    + registered + ", only one origin config is supported in a container", element);
+                return;
+            }
+
+            log.info("[{}] is already registered with the same origin config, share it", PROVIDER_BEAN_NAME);
+        } else {
+            registerConfigurationProvider(parserContext, prop);
+            if (Boolean.parseBoolean(prop.getProperty(KEY_INIT_ASYNC)))
+                registerProviderInitializer(parserContext);
+            registerTypedProperties(parserContext);
+            registerConfigBinder(parserContext);
+            registerChangeDispatcher(parserContext);
+        }
 
-        // 将 ConfigurationProvider 注册到容器
-        registerConfigurationProvider(parserContext, provider);
+        // 设置 Cfg4jPropertyPlaceholderConfigurer 相关属性, 通过工厂 bean 取得 provider 及其统计
+        builder.addPropertyReference("providerFactory", BeanFactory.FACTORY_BEAN_PREFIX + PROVIDER_BEAN_NAME);
 
-        // 设置 Cfg4jPropertyPlaceholderConfigurer 相关属性
-        builder.addPropertyValue("configurationProvider", provider);
+        String refresh = element.getAttribute(REFRESH);
+        if (refresh != null && refresh.length() > 0)
+            builder.addPropertyValue("refreshEnabled", Boolean.valueOf(refresh));
+    }
+
+    private Properties registeredOrigin(BeanDefinitionRegistry registry) {
+        PropertyValue value = registry.getBeanDefinition(PROVIDER_BEAN_NAME).getPropertyValues().getPropertyValue("originProperties");
+        return value != null && value.getValue() instanceof Properties ? (Properties) value.getValue() : null;
     }
 
     private String getConfigFile(String configKey) {
@@ -65,16 +102,47 @@ public class ConfigurationBeanDefinitionParser extends AbstractSingleBeanDefinit
         return configFile;
     }
 
-    private void registerConfigurationProvider(ParserContext parserContext, ConfigurationProvider provider) {
-        log.info("register [cfg4jConfigurationProvider] to spring");
+    private void registerConfigurationProvider(ParserContext parserContext, Properties prop) {
+        log.info("register [{}] to spring", PROVIDER_BEAN_NAME);
 
-        // 通过工厂方法静态类,避开 Spring 无法直接注册一个对象实例的问题
-        ConfigurationProviderFactoryBean.providerHolder.set(provider);
+        // 通过工厂 bean 从注册表中取出 provider, 避开 Spring 无法直接注册一个对象实例的问题, 容器关闭时由工厂 bean 释放引用
+        BeanDefinition configurationProviderFactoryBean = BeanDefinitionBuilder.rootBeanDefinition(ConfigurationProviderFactoryBean.class)
+            .addPropertyValue("originProperties", prop)
+            .getBeanDefinition();
+        parserContext.getRegistry().registerBeanDefinition(PROVIDER_BEAN_NAME, configurationProviderFactoryBean);
+    }
 
-        BeanDefinition configurationProviderFactoryBean = BeanDefinitionBuilder.rootBeanDefinition(ConfigurationProviderFactoryBean.class).getBeanDefinition();
-        parserContext.getRegistry().registerBeanDefinition("cfg4jConfigurationProvider", configurationProviderFactoryBean);
+    private void registerProviderInitializer(ParserContext parserContext) {
+        log.info("register [{}] to spring", INITIALIZER_BEAN_NAME);
+
+        // 异步初始化时在后处理阶段一开始就获取 provider, 与其余后处理器并行加载
+        BeanDefinition initializer = BeanDefinitionBuilder.rootBeanDefinition(ConfigurationProviderInitializer.class)
+            .addPropertyValue("providerFactoryName", PROVIDER_BEAN_NAME)
+            .getBeanDefinition();
+        parserContext.getRegistry().registerBeanDefinition(INITIALIZER_BEAN_NAME, initializer);
     }
 
+    private void registerTypedProperties(ParserContext parserContext) {
+        log.info("register [cfg4jTypedProperties] to spring");
+
+        BeanDefinition typedProperties = BeanDefinitionBuilder.rootBeanDefinition(TypedProperties.class).getBeanDefinition();
+        parserContext.getRegistry().registerBeanDefinition("cfg4jTypedProperties", typedProperties);
+    }
+
+    private void registerConfigBinder(ParserContext parserContext) {
+        log.info("register [cfg4jConfigBinder] to spring");
+
+        BeanDefinition configBinder = BeanDefinitionBuilder.rootBeanDefinition(ConfigBinder.class).getBeanDefinition();
+        parserContext.getRegistry().registerBeanDefinition("cfg4jConfigBinder", configBinder);
+    }
+
+    private void registerChangeDispatcher(ParserContext parserContext) {
+        log.info("register [cfg4jConfigChangeDispatcher] to spring");
+
+        // reload 流程使用的是全局的 dispatcher, 通过静态工厂方法暴露给容器
+        BeanDefinition changeDispatcher = BeanDefinitionBuilder.rootBeanDefinition(ConfigChangeDispatcher.class, "shared").getBeanDefinition();
+        parserContext.getRegistry().registerBeanDefinition("cfg4jConfigChangeDispatcher", changeDispatcher);
+    }
 
     private Properties loadProperties(String configFile) {
         log.info("load origin config from file: {}", configFile);
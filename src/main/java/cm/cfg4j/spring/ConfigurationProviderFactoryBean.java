@@ -1,26 +1,76 @@
 package cm.cfg4j.spring;
 
+import cm.cfg4j.spring.config.ConfigurationProviderRegistry;
+import cm.cfg4j.spring.metrics.ConfigMetrics;
 import org.cfg4j.provider.ConfigurationProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Properties;
 
 /**
+ * 从共享注册表中取出 ConfigurationProvider, 容器关闭时释放引用
+ * <p>
+ * 引用在工厂 bean 初始化时才获取, 只解析了 bean 定义而没有创建工厂 bean 的容器(如 refresh 失败、定义被覆盖)不会占用 provider;
+ * 工厂 bean 创建之后, 容器关闭或 refresh 失败销毁单例时都会释放引用.
+ * <p>
+ * 开启 init.async 时由 {@link ConfigurationProviderInitializer} 在后处理阶段一开始就创建它, 见该类.
+ * <p>
  * Created by Yang Tengfei on 9/23/16.
  */
-public class ConfigurationProviderFactoryBean implements FactoryBean<ConfigurationProvider> {
+public class ConfigurationProviderFactoryBean implements FactoryBean<ConfigurationProvider>, InitializingBean, DisposableBean {
 
     private final Logger log = LoggerFactory.getLogger(ConfigurationProviderFactoryBean.class);
 
-    static final AtomicReference<ConfigurationProvider> providerHolder = new AtomicReference<>();
+    private ConfigurationProviderRegistry registry = ConfigurationProviderRegistry.shared();
+
+    private Properties originProperties;
+
+    private String providerKey;
+
+    public void setRegistry(ConfigurationProviderRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 原始配置, 初始化时据此从注册表中获取 provider
+     */
+    public void setOriginProperties(Properties originProperties) {
+        this.originProperties = originProperties;
+    }
+
+    /**
+     * 已经通过 {@link ConfigurationProviderRegistry#acquire} 获取的 provider 的 key, 由本工厂 bean 负责释放
+     */
+    public void setProviderKey(String providerKey) {
+        this.providerKey = providerKey;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (providerKey != null)
+            return;
+        if (originProperties == null)
+            throw new IllegalStateException("either originProperties or providerKey is required");
+
+        providerKey = registry.acquire(originProperties);
+    }
+
+    /**
+     * @return provider 的 reload 统计, 可能为 null
+     */
+    public ConfigMetrics getMetrics() {
+        return providerKey == null ? null : registry.getMetrics(providerKey);
+    }
 
     @Override
     public ConfigurationProvider getObject() throws Exception {
-        if (providerHolder.get() == null)
+        if (providerKey == null)
             throw new IllegalStateException("ConfigurationProvider is not init");
-        return providerHolder.get();
+        return registry.get(providerKey);
     }
 
     @Override
@@ -32,4 +82,13 @@ public class ConfigurationProviderFactoryBean implements FactoryBean<Configurati
     public boolean isSingleton() {
         return true;
     }
+
+    @Override
+    public void destroy() {
+        if (providerKey != null) {
+            log.info("release ConfigurationProvider");
+            registry.release(providerKey);
+            providerKey = null;
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package cm.cfg4j.spring;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+
+/**
+ * 开启 init.async 时由 {@link ConfigurationBeanDefinitionParser} 注册的后处理器
+ * <p>
+ * 作为最先执行的 {@link BeanDefinitionRegistryPostProcessor} 提前创建 provider 的工厂 bean, 后台初始化因此与组件扫描、
+ * 配置类解析等其余后处理器并行, 直到占位符解析时才等待. 未开启 init.async 的容器不注册它, 生命周期不受影响.
+ */
+public class ConfigurationProviderInitializer implements BeanDefinitionRegistryPostProcessor, PriorityOrdered, BeanFactoryAware {
+
+    private BeanFactory beanFactory;
+
+    private String providerFactoryName;
+
+    /**
+     * provider 工厂 bean 的名称, 不带 &amp; 前缀
+     */
+    public void setProviderFactoryName(String providerFactoryName) {
+        this.providerFactoryName = providerFactoryName;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+        if (providerFactoryName == null)
+            throw new IllegalStateException("providerFactoryName is required");
+
+        // 工厂 bean 初始化时从注册表中获取 provider, 异步初始化随之开始
+        beanFactory.getBean(BeanFactory.FACTORY_BEAN_PREFIX + providerFactoryName);
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        // NOP
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,204 @@
+package cm.cfg4j.spring;
+
+import cm.cfg4j.spring.listener.ConfigChangeEvent;
+import cm.cfg4j.spring.listener.ConfigChangeListener;
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.util.StringValueResolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 占位符注入的 bean 属性热刷新
+ * <p>
+ * 在占位符被解析之前, 记录单例 bean 定义中哪些属性的值是占位符模板, 以及模板引用了哪些属性名(包括嵌套和默认值形式).
+ * 配置变更时只对引用了变更属性的 bean 属性重新解析模板, 并通过 setter 注入到已创建的单例中, 不需要重启容器.
+ * 模板的解析与启动时相同(同一个解析器工厂), nullValue、trimValues 和系统属性模式都保持一致.
+ * <p>
+ * 只处理 &lt;property&gt; 注入, 构造函数参数无法在创建后修改. 注入发生在变更通知线程中, bean 需要自行保证属性的可见性.
+ * 单例是 AOP 代理时注入到代理的目标对象上; 目标不是固定对象(如池化、原型目标)的代理无法刷新, 只记录警告.
+ */
+public class PlaceholderBeanRefresher implements ConfigChangeListener {
+
+    private final Logger log = LoggerFactory.getLogger(PlaceholderBeanRefresher.class);
+
+    private final String placeholderPrefix;
+
+    private final ResolverFactory resolverFactory;
+
+    private final List<Binding> bindings = new ArrayList<>();
+
+    private ConfigurableListableBeanFactory beanFactory;
+
+    /**
+     * @param resolverFactory 与占位符解析器启动时相同的解析方式
+     */
+    public PlaceholderBeanRefresher(String placeholderPrefix, ResolverFactory resolverFactory) {
+        this.placeholderPrefix = placeholderPrefix;
+        this.resolverFactory = resolverFactory;
+    }
+
+    /**
+     * 记录 bean 定义中的占位符模板, 必须在占位符解析之前调用
+     *
+     * @param excludedBeanName 占位符解析器自身的 bean 名称
+     */
+    public synchronized void record(ConfigurableListableBeanFactory beanFactory, String excludedBeanName, PropertiesSnapshot snapshot) {
+        this.beanFactory = beanFactory;
+
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            if (beanName.equals(excludedBeanName))
+                continue;
+
+            BeanDefinition bd = beanFactory.getBeanDefinition(beanName);
+            if (!bd.isSingleton() || bd.isAbstract())
+                continue;
+
+            for (PropertyValue pv : bd.getPropertyValues().getPropertyValues()) {
+                String template = templateOf(pv.getValue());
+                if (template != null && template.contains(placeholderPrefix)) {
+                    Binding binding = new Binding(beanName, pv.getName(), template);
+                    binding.keys = referencedKeys(template, snapshot);
+                    bindings.add(binding);
+
+                    log.debug("record refreshable property {}.{} -> {}", beanName, pv.getName(), binding.keys);
+                }
+            }
+        }
+
+        log.info("{} bean properties are refreshable", bindings.size());
+    }
+
+    @Override
+    public void onChange(ConfigChangeEvent event) {
+        PropertiesSnapshot snapshot = event.getNewSnapshot();
+
+        List<Binding> affected = new ArrayList<>();
+        synchronized (this) {
+            for (Binding binding : bindings) {
+                for (String key : binding.keys) {
+                    if (event.isChanged(key)) {
+                        affected.add(binding);
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (affected.isEmpty())
+            return;
+
+        StringValueResolver resolver = resolverFactory.create(snapshot, null);
+        for (Binding binding : affected)
+            refresh(binding, resolver, snapshot);
+    }
+
+    private void refresh(Binding binding, StringValueResolver resolver, PropertiesSnapshot snapshot) {
+        if (!beanFactory.containsSingleton(binding.beanName))
+            return;
+
+        Object bean = targetOf(beanFactory.getSingleton(binding.beanName));
+        if (bean == null) {
+            log.warn("cannot refresh property {}.{}, the bean is a proxy without a fixed target", binding.beanName, binding.propertyName);
+            return;
+        }
+
+        try {
+            String value = resolver.resolveStringValue(binding.template);
+
+            BeanWrapper bw = PropertyAccessorFactory.forBeanPropertyAccess(bean);
+            bw.setConversionService(beanFactory.getConversionService());
+            beanFactory.copyRegisteredEditorsTo(bw);
+            bw.setPropertyValue(binding.propertyName, value);
+
+            // 嵌套占位符引用的属性名可能随之变化
+            binding.keys = referencedKeys(binding.template, snapshot);
+            log.info("refresh property {}.{}", binding.beanName, binding.propertyName);
+        } catch (IllegalArgumentException | BeansException e) {
+            log.warn("failed to refresh property {}.{}", binding.beanName, binding.propertyName, e);
+        }
+    }
+
+    /**
+     * AOP 代理返回其固定的目标对象, 目标不固定时返回 null; 其他 bean 原样返回
+     */
+    private Object targetOf(Object bean) {
+        if (!AopUtils.isAopProxy(bean))
+            return bean;
+        if (!(bean instanceof Advised))
+            return null;
+
+        TargetSource targetSource = ((Advised) bean).getTargetSource();
+        if (!targetSource.isStatic())
+            return null;
+
+        try {
+            return targetSource.getTarget();
+        } catch (Exception e) {
+            log.debug("failed to get target of proxy", e);
+            return null;
+        }
+    }
+
+    /**
+     * 解析一遍模板, 记录解析过程中查询过的全部属性名
+     */
+    private Set<String> referencedKeys(String template, PropertiesSnapshot snapshot) {
+        Set<String> keys = new HashSet<>();
+        try {
+            resolverFactory.create(snapshot, keys::add).resolveStringValue(template);
+        } catch (IllegalArgumentException e) {
+            log.debug("cannot resolve placeholder template: {}", template, e);
+        }
+        return Collections.unmodifiableSet(keys);
+    }
+
+    private static String templateOf(Object value) {
+        if (value instanceof TypedStringValue)
+            return ((TypedStringValue) value).getValue();
+        if (value instanceof String)
+            return (String) value;
+        return null;
+    }
+
+    /**
+     * 针对某个快照创建占位符解析器
+     */
+    public interface ResolverFactory {
+
+        /**
+         * @param referenced 解析过程中每查询一个属性名时回调, 可以为 null
+         */
+        StringValueResolver create(PropertiesSnapshot snapshot, Consumer<String> referenced);
+    }
+
+    private static final class Binding {
+        private final String beanName;
+        private final String propertyName;
+        private final String template;
+
+        private volatile Set<String> keys;
+
+        Binding(String beanName, String propertyName, String template) {
+            this.beanName = beanName;
+            this.propertyName = propertyName;
+            this.template = template;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cm.cfg4j.spring;
+
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
+import org.springframework.core.env.EnumerablePropertySource;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 当前快照中某个命名空间下的属性, 属性名为去掉命名空间前缀后的相对名称
+ * <p>
+ * 如命名空间为 databasePool 时, databasePool.url 以 url 暴露, 可以直接交给按相对名称读取属性的组件.
+ * 子树视图在每个快照上只查找一次, 之后的读取和枚举只涉及子树内的属性.
+ */
+public class SubTreePropertySource extends EnumerablePropertySource<AtomicReference<PropertiesSnapshot>> {
+
+    private final String namespace;
+
+    private volatile PropertiesSnapshot.SubTree view;
+
+    public SubTreePropertySource(String name, String namespace) {
+        this(name, Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder, namespace);
+    }
+
+    public SubTreePropertySource(String name, AtomicReference<PropertiesSnapshot> holder, String namespace) {
+        super(name, holder);
+        this.namespace = namespace;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return view().get(name);
+    }
+
+    @Override
+    public boolean containsProperty(String name) {
+        return view().get(name) != null;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return view().getPropertyNames();
+    }
+
+    private PropertiesSnapshot.SubTree view() {
+        PropertiesSnapshot.SubTree v = view;
+        PropertiesSnapshot snapshot = getSource().get();
+        if (v == null || v.getSnapshot() != snapshot)
+            view = v = snapshot.subTree(namespace);
+        return v;
+    }
+}
@@ -0,0 +1,62 @@
+package cm.cfg4j.spring.config;
+
+import org.cfg4j.provider.ConfigurationProvider;
+import org.cfg4j.provider.GenericTypeInterface;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 在后台线程初始化的 ConfigurationProvider
+ * <p>
+ * 创建后立即返回, 只有第一次真正读取配置时才等待初始化完成. 在 Spring 容器中第一次读取发生在占位符解析时,
+ * 因此能与初始化并行的是此前的后处理阶段(组件扫描、配置类解析等), 不包括单例的创建.
+ * 初始化失败时, 每次读取都会抛出初始化时的异常.
+ */
+public class AsyncConfigurationProvider implements ConfigurationProvider {
+
+    private final CompletableFuture<ConfigurationProvider> future;
+
+    public AsyncConfigurationProvider(CompletableFuture<ConfigurationProvider> future) {
+        this.future = future;
+    }
+
+    /**
+     * @return 是否已经初始化完成(成功或失败)
+     */
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    @Override
+    public Properties allConfigurationAsProperties() {
+        return await().allConfigurationAsProperties();
+    }
+
+    @Override
+    public <T> T getProperty(String key, Class<T> type) {
+        return await().getProperty(key, type);
+    }
+
+    @Override
+    public <T> T getProperty(String key, GenericTypeInterface genericType) {
+        return await().getProperty(key, genericType);
+    }
+
+    @Override
+    public <T> T bind(String prefix, Class<T> type) {
+        return await().bind(prefix, type);
+    }
+
+    private ConfigurationProvider await() {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IllegalStateException("failed to init ConfigurationProvider", cause);
+        }
+    }
+}
@@ -10,5 +10,13 @@ import java.util.Properties;
  * Created by Yang Tengfei on 9/23/16.
  */
 public interface ConfigurationProviderFactory {
-    ConfigurationProvider create(Properties properties);
+
+    /**
+     * 创建 provider 及其关闭动作, 由调用方负责在不再使用时关闭
+     */
+    ManagedConfigurationProvider createManaged(Properties properties);
+
+    default ConfigurationProvider create(Properties properties) {
+        return createManaged(properties).getProvider();
+    }
 }
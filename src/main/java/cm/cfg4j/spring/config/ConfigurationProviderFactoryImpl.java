@@ -1,7 +1,24 @@
 package cm.cfg4j.spring.config;
 
+import cm.cfg4j.spring.metrics.ConfigMetrics;
+import cm.cfg4j.spring.reload.ChangeTrigger;
+import cm.cfg4j.spring.reload.CompositeChangeTrigger;
+import cm.cfg4j.spring.reload.ConsulWatchTrigger;
+import cm.cfg4j.spring.reload.DatabaseVersionTrigger;
+import cm.cfg4j.spring.reload.FileWatchTrigger;
+import cm.cfg4j.spring.reload.PushReloadStrategy;
+import cm.cfg4j.spring.reload.ScheduledReloadStrategy;
+import cm.cfg4j.spring.snapshot.LocalSnapshotStore;
+import cm.cfg4j.spring.snapshot.TypedProperties;
+import cm.cfg4j.spring.source.CompositeConfigurationSource;
+import cm.cfg4j.spring.source.ConsulConfigurationSource;
 import cm.cfg4j.spring.source.DatabaseConfigurationSource;
+import cm.cfg4j.spring.source.DatabaseConnectionManager;
+import cm.cfg4j.spring.source.GitRepositoryConfigurationSource;
 import cm.cfg4j.spring.source.ProviderAwareConfigurationSource;
+import cm.cfg4j.spring.source.SharedDatabaseConfigurationSource;
+import cm.cfg4j.spring.source.SharedDatabaseLoader;
+import cm.cfg4j.spring.source.SnapshotBackedConfigurationSource;
 import org.cfg4j.provider.ConfigurationProvider;
 import org.cfg4j.provider.ConfigurationProviderBuilder;
 import org.cfg4j.source.ConfigurationSource;
@@ -10,14 +27,26 @@ import org.cfg4j.source.context.environment.Environment;
 import org.cfg4j.source.context.environment.ImmutableEnvironment;
 import org.cfg4j.source.context.filesprovider.ConfigFilesProvider;
 import org.cfg4j.source.git.GitConfigurationSourceBuilder;
-import org.cfg4j.source.reload.strategy.PeriodicalReloadStrategy;
+import org.cfg4j.source.reload.ReloadStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -65,40 +94,260 @@ public class ConfigurationProviderFactoryImpl implements ConfigurationProviderFa
 
     private static final String KEY_CONFIG_DB_TABLE = "db.table";
 
+    /**
+     * 通过 JNDI 获取的 DataSource 名称, 配置后忽略 driver/url/user/password, 连接交由容器的连接池管理
+     */
+    private static final String KEY_CONFIG_DB_JNDI = "db.jndi";
+
+    /**
+     * 复用连接前校验连接是否有效的超时时间(秒)
+     */
+    private static final String KEY_CONFIG_DB_VALIDATION_TIMEOUT = "db.validationTimeout";
+
+    /**
+     * 数据库配置源 增量加载 相关配置项
+     */
+    private static final String KEY_CONFIG_DB_INCREMENTAL = "db.incremental";
+
+    private static final String KEY_CONFIG_DB_FULL_SYNC_CYCLES = "db.fullSyncCycles";
+
+    private static final String KEY_CONFIG_DB_DELETED_COLUMN = "db.deletedColumn";
+
+    /**
+     * 流式加载: 只查询当前 profile, 按 fetchSize 分批读取并直接构建只读快照
+     */
+    private static final String KEY_CONFIG_DB_STREAMING = "db.streaming";
+
+    private static final String KEY_CONFIG_DB_FETCH_SIZE = "db.fetchSize";
+
+    /**
+     * 回退 profile 列表, 如 default, 当前 profile 中没有的配置从这些 profile 中依次查找, 设置后同时开启流式加载
+     */
+    private static final String KEY_CONFIG_DB_FALLBACK_PROFILES = "db.fallbackProfiles";
+
+    /**
+     * 在后台线程查询数据库, 已有数据时 reload 最多等待 db.revalidateTimeout, 超时继续使用旧数据
+     */
+    private static final String KEY_CONFIG_DB_STALE_WHILE_REVALIDATE = "db.staleWhileRevalidate";
+
+    private static final String KEY_CONFIG_DB_REVALIDATE_TIMEOUT = "db.revalidateTimeout";
+
+    /**
+     * 同一数据库上的多个项目共享一个连接, 每个 reload 周期只执行一次 project IN (...) 查询, 默认推送变更.
+     * 只在同一个类加载器(同一个应用)内共享, 见 {@link SharedDatabaseLoader}; 按 db.url 与 db.user 识别数据库, 不支持 db.jndi
+     */
+    private static final String KEY_CONFIG_DB_SHARED = "db.shared";
+
+    /**
+     * 数据库版本表, 推送模式下通过检查版本号变化来触发 reload
+     */
+    private static final String KEY_CONFIG_DB_VERSION_TABLE = "db.versionTable";
+
+    private static final String KEY_CONFIG_DB_VERSION_CHECK_INTERVAL = "db.versionCheckInterval";
+
+    private static final String DEFAULT_DB_VERSION_TABLE = "TB_CONFIG_VERSION";
+
+    private static final String DEFAULT_DB_VERSION_CHECK_INTERVAL = "5s";
+
+    /**
+     * 轮询 reload 的间隔, 如 15s
+     */
+    private static final String KEY_CONFIG_RELOAD_INTERVAL = "reload";
+
+    private static final String DEFAULT_RELOAD_INTERVAL = "15s";
+
+    /**
+     * reload 间隔的随机抖动比例, 取值 [0, 1)
+     */
+    private static final String KEY_CONFIG_RELOAD_JITTER = "reload.jitter";
+
+    /**
+     * reload 失败后指数退避的最大间隔
+     */
+    private static final String KEY_CONFIG_RELOAD_MAX_BACKOFF = "reload.maxBackoff";
+
+    /**
+     * 是否使用推送(变更通知)方式 reload, 默认为周期轮询
+     */
+    private static final String KEY_CONFIG_RELOAD_PUSH = "reload.push";
+
+    /**
+     * 推送模式下兜底轮询的周期, 为 0 时不兜底
+     */
+    private static final String KEY_CONFIG_RELOAD_SAFETY_INTERVAL = "reload.safetyInterval";
+
+    private static final String DEFAULT_RELOAD_SAFETY_INTERVAL = "10m";
+
+    /**
+     * 推送模式下 git 配置源监听的触发文件, 由 git hook 等外部机制在配置更新后 touch
+     */
+    private static final String KEY_CONFIG_RELOAD_TRIGGER_FILE = "reload.triggerFile";
+
+    /**
+     * git 本地仓库目录, 配置后使用持久化的本地仓库, 重启后复用, 只 fetch 当前分支并增量解析变化的文件
+     */
+    private static final String KEY_CONFIG_GIT_LOCAL_PATH = "git.localPath";
+
+    /**
+     * Consul agent 地址, ACL token, 及阻塞查询的最长等待时间(上限 10 分钟)
+     */
+    private static final String KEY_CONFIG_CONSUL_URL = "consul.url";
+
+    private static final String KEY_CONFIG_CONSUL_TOKEN = "consul.token";
+
+    private static final String KEY_CONFIG_CONSUL_WAIT = "consul.wait";
+
+    private static final String DEFAULT_CONSUL_URL = "http://localhost:8500";
+
+    private static final String DEFAULT_CONSUL_WAIT = "5m";
+
+    /**
+     * 组合模式下的各层名称, 按优先级从低到高排列, 如 defaults,db,local
+     */
+    private static final String KEY_CONFIG_LAYERS = "layers";
+
+    /**
+     * 组合模式下每层配置项的前缀, 如 layer.db.type=database
+     */
+    private static final String KEY_CONFIG_LAYER_PREFIX = "layer.";
+
+    /**
+     * 组合模式下并行加载各层的线程数上限, 及每轮加载等待各层的最长时间
+     */
+    private static final String KEY_CONFIG_COMPOSITE_THREADS = "composite.threads";
+
+    private static final String KEY_CONFIG_COMPOSITE_TIMEOUT = "composite.timeout";
+
+    private static final int DEFAULT_COMPOSITE_THREADS = 4;
+
+    private static final String DEFAULT_COMPOSITE_TIMEOUT = "30s";
+
+    /**
+     * 是否将加载指标注册为 JMX MBean, 默认注册
+     */
+    private static final String KEY_CONFIG_METRICS_JMX = "metrics.jmx";
+
+    /**
+     * 本地快照文件, 配置后启动时先使用快照, 后端在后台加载, 每次成功加载后写回快照
+     */
+    private static final String KEY_CONFIG_SNAPSHOT_FILE = "snapshot.file";
+
+    /**
+     * 在后台线程初始化 provider(首次加载后端配置), 第一次读取配置时才等待加载完成.
+     * Spring 容器中与之并行的只有占位符解析之前的后处理阶段(组件扫描、配置类解析等), 单例的创建总是在加载完成之后
+     */
+    private static final String KEY_CONFIG_INIT_ASYNC = "init.async";
+
     private enum ConfigType {
-        git, consul, file, database
+        git, consul, file, database, composite
     }
 
     @Override
-    public ConfigurationProvider create(Properties prop) {
+    public ManagedConfigurationProvider createManaged(Properties prop) {
         log.info("create provider according to : {}", prop);
 
         final ConfigType type = ConfigType.valueOf(prop.getProperty(KEY_CONFIG_TYPE));
+        Backend backend = type == ConfigType.composite ? newCompositeBackend(prop) : newBackend(type, prop);
+
+        ReloadStrategy reloadStrategy = newReloadStrategy(prop, backend.triggerSupplier, backend.pushByDefault);
+        return createProvider(type, backend.source, backend.environment, reloadStrategy, prop);
+    }
+
+    private Backend newBackend(ConfigType type, Properties prop) {
         switch (type) {
             case git:
-                return newGitConfigurationProvider(prop);
+                return newGitBackend(prop);
             case consul:
-                throw new UnsupportedOperationException("consul backend is not supported yet");
+                return newConsulBackend(prop);
             case file:
-                return newLocalFileConfigurationProvider(prop);
+                return newLocalFileBackend(prop);
             case database:
-                return newDatabaseConfigurationProvider(prop);
+                return newDatabaseBackend(prop);
             default:
                 throw new UnsupportedOperationException(type + " backend is not supported yet");
         }
     }
 
-    private ConfigurationProvider newDatabaseConfigurationProvider(Properties prop) {
+    /**
+     * 按 layers 配置的顺序创建各层, 每层的配置项为 layer.&lt;name&gt;. 前缀下的原始配置项, 后面的层覆盖前面的层.
+     * 推送模式下任意一层的变更通知都会触发整体 reload
+     */
+    private Backend newCompositeBackend(Properties prop) {
+        String layerNames = prop.getProperty(KEY_CONFIG_LAYERS);
+        if (isEmpty(layerNames))
+            throw new IllegalArgumentException("config item '" + KEY_CONFIG_LAYERS + "' cannot be empty in composite mode");
+
+        List<CompositeConfigurationSource.Layer> layers = new ArrayList<>();
+        List<Supplier<ChangeTrigger>> triggerSuppliers = new ArrayList<>();
+        for (String name : layerNames.split("[,;]")) {
+            name = name.trim();
+            if (name.isEmpty())
+                continue;
+
+            Properties layerProp = layerProperties(prop, name);
+            ConfigType type = ConfigType.valueOf(layerProp.getProperty(KEY_CONFIG_TYPE));
+            if (type == ConfigType.composite)
+                throw new IllegalArgumentException("composite layer cannot be nested: " + name);
+
+            Backend backend = newBackend(type, layerProp);
+            layers.add(new CompositeConfigurationSource.Layer(name, backend.source, new ImmutableEnvironment(backend.environment)));
+            triggerSuppliers.add(backend.triggerSupplier);
+        }
+
+        String threads = prop.getProperty(KEY_CONFIG_COMPOSITE_THREADS);
+        Duration timeout = TypedProperties.parseDuration(prop.getProperty(KEY_CONFIG_COMPOSITE_TIMEOUT, DEFAULT_COMPOSITE_TIMEOUT));
+
+        log.info("load composite configuration from layers: {}", layers);
+        CompositeConfigurationSource source = new CompositeConfigurationSource(layers,
+            notEmpty(threads) ? Integer.parseInt(threads.trim()) : DEFAULT_COMPOSITE_THREADS, timeout.toMillis());
+
+        return new Backend(source, prop.getProperty(KEY_CONFIG_PROFILE, ""), () -> {
+            List<ChangeTrigger> triggers = new ArrayList<>();
+            for (Supplier<ChangeTrigger> supplier : triggerSuppliers) {
+                ChangeTrigger trigger = supplier.get();
+                if (trigger != null)
+                    triggers.add(trigger);
+            }
+            return triggers.isEmpty() ? null : new CompositeChangeTrigger(triggers);
+        });
+    }
+
+    private Properties layerProperties(Properties prop, String name) {
+        String prefix = KEY_CONFIG_LAYER_PREFIX + name + ".";
+
+        Properties layerProp = new Properties();
+        for (String key : prop.stringPropertyNames()) {
+            if (key.startsWith(prefix))
+                layerProp.setProperty(key.substring(prefix.length()), prop.getProperty(key));
+        }
+
+        if (isEmpty(layerProp.getProperty(KEY_CONFIG_TYPE)))
+            throw new IllegalArgumentException("config item '" + prefix + KEY_CONFIG_TYPE + "' cannot be empty");
+        return layerProp;
+    }
+
+    private Backend newDatabaseBackend(Properties prop) {
         String driver = prop.getProperty(KEY_CONFIG_DB_DRIVER);
         String url = prop.getProperty(KEY_CONFIG_DB_URL);
         String user = prop.getProperty(KEY_CONFIG_DB_USER);
         String password = prop.getProperty(KEY_CONFIG_DB_PASSWORD);
+        String jndi = prop.getProperty(KEY_CONFIG_DB_JNDI);
         String table = prop.getProperty(KEY_CONFIG_DB_TABLE);
 
         String project = prop.getProperty(KEY_CONFIG_PROJECT);
         String profile = prop.getProperty(KEY_CONFIG_PROFILE);
 
-        if (notEmpty(driver) && notEmpty(url) && notEmpty(user) && notEmpty(password)) {
+        boolean shared = Boolean.parseBoolean(prop.getProperty(KEY_CONFIG_DB_SHARED));
+        if (shared && notEmpty(jndi))
+            throw new IllegalArgumentException("db.shared requires db.url/db.user, a jndi datasource belongs to one application and is never shared: " + jndi);
+
+        DatabaseConnectionManager connectionManager = null;
+        if (notEmpty(jndi))
+            connectionManager = new DatabaseConnectionManager(lookupDataSource(jndi));
+        else if (notEmpty(driver) && notEmpty(url) && notEmpty(user) && notEmpty(password))
+            connectionManager = new DatabaseConnectionManager(driver, url, user, password);
+
+        if (connectionManager != null) {
 
             if (isEmpty(table))
                 table = "TB_CONFIG";
@@ -106,20 +355,124 @@ public class ConfigurationProviderFactoryImpl implements ConfigurationProviderFa
             if (isEmpty(profile))
                 profile = "default";
 
-            ConfigurationSource source = new DatabaseConfigurationSource(driver, url, user, password, table, project);
-            return createProvider(source, profile);
+            String validationTimeout = prop.getProperty(KEY_CONFIG_DB_VALIDATION_TIMEOUT);
+            if (notEmpty(validationTimeout))
+                connectionManager.setValidationTimeoutSeconds(Integer.parseInt(validationTimeout.trim()));
+
+            if (shared)
+                return newSharedDatabaseBackend(prop, connectionManager, url + "|" + user, table, project, profile);
+
+            DatabaseConfigurationSource source = new DatabaseConfigurationSource(connectionManager, table, project);
+            source.setIncremental(Boolean.parseBoolean(prop.getProperty(KEY_CONFIG_DB_INCREMENTAL)));
+            source.setDeletedColumn(prop.getProperty(KEY_CONFIG_DB_DELETED_COLUMN));
+
+            String fullSyncCycles = prop.getProperty(KEY_CONFIG_DB_FULL_SYNC_CYCLES);
+            if (notEmpty(fullSyncCycles))
+                source.setFullSyncCycles(Integer.parseInt(fullSyncCycles.trim()));
+
+            if (notEmpty(prop.getProperty(KEY_CONFIG_DB_FALLBACK_PROFILES))) {
+                source.setProfiles(profileChain(prop, profile));
+            } else if (Boolean.parseBoolean(prop.getProperty(KEY_CONFIG_DB_STREAMING))) {
+                source.setProfile(profile);
+            }
+
+            String fetchSize = prop.getProperty(KEY_CONFIG_DB_FETCH_SIZE);
+            if (notEmpty(fetchSize))
+                source.setFetchSize(Integer.parseInt(fetchSize.trim()));
+
+            source.setStaleWhileRevalidate(Boolean.parseBoolean(prop.getProperty(KEY_CONFIG_DB_STALE_WHILE_REVALIDATE)));
+            String revalidateTimeout = prop.getProperty(KEY_CONFIG_DB_REVALIDATE_TIMEOUT);
+            if (notEmpty(revalidateTimeout))
+                source.setRevalidateTimeoutMillis(TypedProperties.parseDuration(revalidateTimeout).toMillis());
+
+            final DatabaseConnectionManager manager = connectionManager;
+            return new Backend(source, profile, () -> {
+                String versionTable = prop.getProperty(KEY_CONFIG_DB_VERSION_TABLE, DEFAULT_DB_VERSION_TABLE);
+                Duration interval = TypedProperties.parseDuration(prop.getProperty(KEY_CONFIG_DB_VERSION_CHECK_INTERVAL, DEFAULT_DB_VERSION_CHECK_INTERVAL));
+                return new DatabaseVersionTrigger(manager, versionTable, project, interval.toMillis());
+            });
         }
 
         throw new IllegalArgumentException("illegal origin config");
     }
 
+    /**
+     * profile 及 db.fallbackProfiles 组成的回退链, 前面的优先
+     */
+    private List<String> profileChain(Properties prop, String profile) {
+        List<String> chain = new ArrayList<>();
+        chain.add(profile);
+        String fallbackProfiles = prop.getProperty(KEY_CONFIG_DB_FALLBACK_PROFILES);
+        if (notEmpty(fallbackProfiles)) {
+            for (String fallback : fallbackProfiles.split("[,;]")) {
+                fallback = fallback.trim();
+                if (!fallback.isEmpty() && !chain.contains(fallback))
+                    chain.add(fallback);
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * 同一数据库同一张表的项目共用一个 {@link SharedDatabaseLoader}, 批量查询的周期取第一个项目的 reload 间隔.
+     * 变更由批量查询的结果直接通知, 不再需要版本表; 支持 db.fallbackProfiles, 增量、流式加载等单项目选项在这个模式下不生效
+     */
+    private Backend newSharedDatabaseBackend(Properties prop, DatabaseConnectionManager connectionManager, String database,
+                                             String table, String project, String profile) {
+        String deletedColumn = prop.getProperty(KEY_CONFIG_DB_DELETED_COLUMN);
+        Duration interval = TypedProperties.parseDuration(prop.getProperty(KEY_CONFIG_RELOAD_INTERVAL, DEFAULT_RELOAD_INTERVAL));
+
+        SharedDatabaseLoader loader = SharedDatabaseLoader.acquire(database + "|" + table + "|" + (deletedColumn == null ? "" : deletedColumn),
+            connectionManager, table, deletedColumn, interval.toMillis());
+
+        List<String> profiles = profileChain(prop, profile);
+        log.info("load database configuration of {}:{} with {}", project, profiles, loader);
+        SharedDatabaseConfigurationSource source;
+        try {
+            source = new SharedDatabaseConfigurationSource(loader, project, profiles);
+        } catch (RuntimeException e) {
+            loader.release();
+            throw e;
+        }
+        return new Backend(source, profile, () -> loader.newTrigger(project), true);
+    }
+
+    private DataSource lookupDataSource(String jndi) {
+        log.info("lookup config datasource from jndi: {}", jndi);
+
+        try {
+            return (DataSource) new InitialContext().lookup(jndi);
+        } catch (NamingException | ClassCastException e) {
+            throw new IllegalArgumentException("cannot find datasource in jndi: " + jndi, e);
+        }
+    }
+
+    /**
+     * 创建基于 Consul KV 的配置源, 读取 project/profile 目录下的全部 key; 推送模式下通过阻塞查询监听变更
+     */
+    private Backend newConsulBackend(Properties prop) {
+        String url = prop.getProperty(KEY_CONFIG_CONSUL_URL, DEFAULT_CONSUL_URL);
+        String project = prop.getProperty(KEY_CONFIG_PROJECT);
+        String profile = prop.getProperty(KEY_CONFIG_PROFILE, "");
+
+        log.info("load consul configuration from {}, {}:{}", url, project, profile);
+        ConsulConfigurationSource source = new ConsulConfigurationSource(url, project, profile);
+        source.setToken(prop.getProperty(KEY_CONFIG_CONSUL_TOKEN));
+
+        // 默认使用阻塞查询推送变更
+        return new Backend(source, profile, () -> {
+            Duration wait = TypedProperties.parseDuration(prop.getProperty(KEY_CONFIG_CONSUL_WAIT, DEFAULT_CONSUL_WAIT));
+            return new ConsulWatchTrigger(source, wait.toMillis());
+        }, true);
+    }
+
     /**
      * 创建基于本地配置文件(在类路径中)的配置源
      *
      * @param prop
      * @return
      */
-    private ConfigurationProvider newLocalFileConfigurationProvider(Properties prop) {
+    private Backend newLocalFileBackend(Properties prop) {
         log.info("create file backend configuration provider");
 
         String project = prop.getProperty(KEY_CONFIG_PROJECT, "");
@@ -141,10 +494,37 @@ public class ConfigurationProviderFactoryImpl implements ConfigurationProviderFa
         if (profile != null && profile.length() > 0)
             envStr += "/" + profile;
 
-        return createProvider(source, envStr);
+        final String env = envStr;
+        return new Backend(source, envStr, () -> newClasspathFileWatchTrigger(env, files));
     }
 
-    private ConfigurationProvider newGitConfigurationProvider(Properties prop) {
+    /**
+     * 类路径中的配置文件位于文件系统上(而不是 jar 包中)时, 才能监听其变化
+     */
+    private ChangeTrigger newClasspathFileWatchTrigger(String env, String files) {
+        String prefix = env.startsWith("/") ? env.substring(1) : env;
+
+        List<Path> paths = new ArrayList<>();
+        for (String file : files.split("[,;]")) {
+            String resource = prefix.isEmpty() ? file.trim() : prefix + "/" + file.trim();
+            URL url = ConfigurationProviderFactoryImpl.class.getClassLoader().getResource(resource);
+            if (url == null || !"file".equals(url.getProtocol())) {
+                log.warn("cannot watch config file '{}' which is not in file system: {}", resource, url);
+                return null;
+            }
+
+            try {
+                paths.add(Paths.get(url.toURI()));
+            } catch (URISyntaxException e) {
+                log.warn("cannot watch config file: {}", url, e);
+                return null;
+            }
+        }
+
+        return new FileWatchTrigger(paths);
+    }
+
+    private Backend newGitBackend(Properties prop) {
         log.info("create git backend configuration provider");
 
         String configRepoPath = prop.getProperty(KEY_CONFIG_PROJECT);
@@ -155,30 +535,151 @@ public class ConfigurationProviderFactoryImpl implements ConfigurationProviderFa
             throw new IllegalArgumentException("config item 'files' cannot be empty");
 
         log.info("load git configuration from {}:{}, files '{}'", configRepoPath, configBranch, files);
-        ConfigFilesProvider configFilesProvider = () -> Arrays.stream(files.split("[,;]")).map(Paths::get).collect(Collectors.toList());
+        ConfigurationSource source;
+        String localPath = prop.getProperty(KEY_CONFIG_GIT_LOCAL_PATH);
+        if (notEmpty(localPath)) {
+            List<String> fileList = Arrays.stream(files.split("[,;]")).map(String::trim).collect(Collectors.toList());
+            source = new GitRepositoryConfigurationSource(configRepoPath, Paths.get(localPath), configBranch, fileList);
+        } else {
+            ConfigFilesProvider configFilesProvider = () -> Arrays.stream(files.split("[,;]")).map(Paths::get).collect(Collectors.toList());
+
+            source = new GitConfigurationSourceBuilder()
+                .withRepositoryURI(configRepoPath)
+                .withConfigFilesProvider(configFilesProvider)
+                .build();
+        }
 
-        ConfigurationSource source = new GitConfigurationSourceBuilder()
-            .withRepositoryURI(configRepoPath)
-            .withConfigFilesProvider(configFilesProvider)
-            .build();
+        return new Backend(source, configBranch, () -> {
+            String triggerFile = prop.getProperty(KEY_CONFIG_RELOAD_TRIGGER_FILE);
+            if (isEmpty(triggerFile)) {
+                log.warn("'{}' is required for git backend in push mode", KEY_CONFIG_RELOAD_TRIGGER_FILE);
+                return null;
+            }
+            return new FileWatchTrigger(Collections.singletonList(Paths.get(triggerFile)));
+        });
+    }
+
+    /**
+     * 默认按 reload 配置的间隔(默认 15 秒)轮询; 开启推送模式后由变更通知驱动 reload, 并以长周期轮询兜底.
+     * 无法创建变更通知时退回到轮询
+     */
+    private ReloadStrategy newReloadStrategy(Properties prop, Supplier<ChangeTrigger> triggerSupplier, boolean pushByDefault) {
+        if (Boolean.parseBoolean(prop.getProperty(KEY_CONFIG_RELOAD_PUSH, String.valueOf(pushByDefault)))) {
+            ChangeTrigger trigger = triggerSupplier.get();
+            if (trigger != null) {
+                Duration safetyInterval = TypedProperties.parseDuration(prop.getProperty(KEY_CONFIG_RELOAD_SAFETY_INTERVAL, DEFAULT_RELOAD_SAFETY_INTERVAL));
+                ReloadStrategy safetyNet = safetyInterval.isZero() ? null : newScheduledReloadStrategy(prop, safetyInterval);
+
+                log.info("reload on change with {}, safety interval: {}", trigger, safetyInterval);
+                return new PushReloadStrategy(trigger, safetyNet);
+            }
+
+            log.warn("cannot create change trigger, fall back to periodical reload");
+        }
 
-        return createProvider(source, configBranch);
+        Duration interval = TypedProperties.parseDuration(prop.getProperty(KEY_CONFIG_RELOAD_INTERVAL, DEFAULT_RELOAD_INTERVAL));
+        return newScheduledReloadStrategy(prop, interval);
     }
 
-    private ConfigurationProvider createProvider(ConfigurationSource source, String profile) {
+    private ReloadStrategy newScheduledReloadStrategy(Properties prop, Duration interval) {
+        String jitter = prop.getProperty(KEY_CONFIG_RELOAD_JITTER);
+        String maxBackoff = prop.getProperty(KEY_CONFIG_RELOAD_MAX_BACKOFF);
+
+        ScheduledReloadStrategy strategy = new ScheduledReloadStrategy(interval,
+            notEmpty(jitter) ? Double.parseDouble(jitter.trim()) : ScheduledReloadStrategy.DEFAULT_JITTER,
+            notEmpty(maxBackoff) ? TypedProperties.parseDuration(maxBackoff) : ScheduledReloadStrategy.DEFAULT_MAX_BACKOFF);
+
+        log.info("reload with {}", strategy);
+        return strategy;
+    }
+
+    private ManagedConfigurationProvider createProvider(ConfigType type, ConfigurationSource source, String profile, ReloadStrategy reloadStrategy, Properties prop) {
         Environment environment = new ImmutableEnvironment(profile);
 
+        SnapshotBackedConfigurationSource snapshotSource = null;
+        String snapshotFile = prop.getProperty(KEY_CONFIG_SNAPSHOT_FILE);
+        if (notEmpty(snapshotFile)) {
+            log.info("use local snapshot: {}", snapshotFile);
+            source = snapshotSource = new SnapshotBackedConfigurationSource(source, new LocalSnapshotStore(Paths.get(snapshotFile)), environment);
+        }
+
         ProviderAwareConfigurationSource sourceWrapper = new ProviderAwareConfigurationSource(source);
 
-        ConfigurationProvider provider = new ConfigurationProviderBuilder()
-            .withConfigurationSource(sourceWrapper)
-            .withEnvironment(environment)
-            .withReloadStrategy(new PeriodicalReloadStrategy(15, TimeUnit.SECONDS))
-            .build();
+        ConfigMetrics metrics = new ConfigMetrics(type.name(), prop.getProperty(KEY_CONFIG_PROJECT, "") + ":" + profile);
+        if (!"false".equalsIgnoreCase(prop.getProperty(KEY_CONFIG_METRICS_JMX, "true").trim()))
+            metrics.registerMBean();
+        sourceWrapper.setMetrics(metrics);
+
+        // 后端在后台就绪后立即 reload 一次, 使后端数据替换快照数据
+        if (snapshotSource != null)
+            snapshotSource.setOnReady(sourceWrapper::reload);
+
+        Supplier<ConfigurationProvider> builder = () -> {
+            ConfigurationProvider provider = new ConfigurationProviderBuilder()
+                .withConfigurationSource(sourceWrapper)
+                .withEnvironment(environment)
+                .withReloadStrategy(reloadStrategy)
+                .build();
+
+            sourceWrapper.setConfigurationProvider(provider);
+            return provider;
+        };
+
+        if (!Boolean.parseBoolean(prop.getProperty(KEY_CONFIG_INIT_ASYNC))) {
+            ConfigurationProvider provider = builder.get();
+            return new ManagedConfigurationProvider(provider, metrics, () -> {
+                reloadStrategy.deregister(sourceWrapper);
+                metrics.close();
+                sourceWrapper.close();
+            });
+        }
+
+        log.info("init provider of {}:{} in background", prop.getProperty(KEY_CONFIG_PROJECT, ""), profile);
+        CompletableFuture<ConfigurationProvider> future = CompletableFuture.supplyAsync(builder, r -> {
+            Thread t = new Thread(r, "cfg4j-init-" + type);
+            t.setDaemon(true);
+            t.start();
+        });
+
+        return new ManagedConfigurationProvider(new AsyncConfigurationProvider(future), metrics, () -> {
+            // 等待进行中的初始化结束, 初始化成功才会注册 reload
+            try {
+                future.join();
+                reloadStrategy.deregister(sourceWrapper);
+            } catch (CompletionException e) {
+                log.debug("provider is closed after a failed init", e);
+            }
+            metrics.close();
+            sourceWrapper.close();
+        });
+    }
+
+    /**
+     * 创建好的配置源, 及其所在的环境和推送模式下的变更通知
+     */
+    private static final class Backend {
+
+        private final ConfigurationSource source;
+
+        private final String environment;
 
-        sourceWrapper.setConfigurationProvider(provider);
+        private final Supplier<ChangeTrigger> triggerSupplier;
 
-        return provider;
+        /**
+         * 没有配置 reload.push 时是否使用推送模式
+         */
+        private final boolean pushByDefault;
+
+        private Backend(ConfigurationSource source, String environment, Supplier<ChangeTrigger> triggerSupplier) {
+            this(source, environment, triggerSupplier, false);
+        }
+
+        private Backend(ConfigurationSource source, String environment, Supplier<ChangeTrigger> triggerSupplier, boolean pushByDefault) {
+            this.source = source;
+            this.environment = environment;
+            this.triggerSupplier = triggerSupplier;
+            this.pushByDefault = pushByDefault;
+        }
     }
 
     private boolean isEmpty(String str) {
@@ -0,0 +1,195 @@
+package cm.cfg4j.spring.config;
+
+import cm.cfg4j.spring.metrics.ConfigMetrics;
+import org.cfg4j.provider.ConfigurationProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+/**
+ * 进程内共享的 ConfigurationProvider 注册表
+ * <p>
+ * 以规范化后的原始配置(type, project, profile, files, db.url 等)作为 key, 相同来源的多个容器(如父子容器)
+ * 共享同一个 provider 及其 reload 循环. 通过引用计数管理生命周期, 最后一个使用者释放时关闭 provider.
+ * <p>
+ * 锁只保护 key 到条目的映射, provider 的创建(可能同步加载远端配置)在锁外进行, 不同来源的创建互不阻塞,
+ * 同一来源的并发获取者等待第一个创建者的结果.
+ */
+public class ConfigurationProviderRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigurationProviderRegistry.class);
+
+    /**
+     * 决定配置来源的原始配置项, 其余配置项(reload 间隔等)以第一个创建者为准
+     */
+    private static final String[] ORIGIN_KEYS = {"type", "project", "profile", "files", "db.url", "db.user", "db.jndi", "db.table", "db.shared", "db.fallbackProfiles", "consul.url"};
+
+    private static final ConfigurationProviderRegistry SHARED = new ConfigurationProviderRegistry(new ConfigurationProviderFactoryImpl());
+
+    private final ConfigurationProviderFactory factory;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public ConfigurationProviderRegistry(ConfigurationProviderFactory factory) {
+        this.factory = factory;
+    }
+
+    public static ConfigurationProviderRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * 规范化原始配置: 去掉首尾空白, files 按 [,;] 拆分后重新拼接
+     */
+    public static String keyOf(Properties prop) {
+        StringBuilder key = new StringBuilder();
+        appendOrigin(key, prop, "");
+
+        // 组合模式下各层的来源也是 key 的一部分
+        String layers = prop.getProperty("layers");
+        if (layers != null) {
+            for (String layer : layers.split("[,;]")) {
+                layer = layer.trim();
+                if (!layer.isEmpty()) {
+                    key.append("layer=").append(layer).append('\n');
+                    appendOrigin(key, prop, "layer." + layer + ".");
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    private static void appendOrigin(StringBuilder key, Properties prop, String prefix) {
+        for (String name : ORIGIN_KEYS) {
+            String value = prop.getProperty(prefix + name);
+            if (value == null)
+                continue;
+
+            value = value.trim();
+            if ("files".equals(name))
+                value = Arrays.stream(value.split("[,;]")).map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.joining(","));
+
+            if (!value.isEmpty())
+                key.append(prefix).append(name).append('=').append(value).append('\n');
+        }
+    }
+
+    /**
+     * 获取(必要时创建)原始配置对应的 provider, 并增加引用计数. 返回值用于之后的 {@link #get} 与 {@link #release}
+     */
+    public String acquire(Properties prop) {
+        String key = keyOf(prop);
+
+        Entry entry;
+        boolean creator = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(prop);
+                entries.put(key, entry);
+                creator = true;
+            } else if (!entry.origin.equals(prop)) {
+                log.warn("share provider created with {}, ignore different settings in {}", entry.origin, prop);
+            }
+
+            entry.references++;
+            log.info("acquire provider [{}], references: {}", key.replace('\n', ' ').trim(), entry.references);
+        }
+
+        if (creator) {
+            try {
+                entry.managed.complete(factory.createManaged(prop));
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    entries.remove(key, entry);
+                }
+                entry.managed.completeExceptionally(e);
+                throw e;
+            }
+        } else {
+            await(entry);
+        }
+        return key;
+    }
+
+    public ConfigurationProvider get(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null)
+            throw new IllegalStateException("ConfigurationProvider is not init or already released");
+        return await(entry).getProvider();
+    }
+
+    public ConfigMetrics getMetrics(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        return entry == null ? null : await(entry).getMetrics();
+    }
+
+    /**
+     * 减少引用计数, 最后一个使用者释放时关闭 provider
+     */
+    public void release(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null)
+                return;
+
+            if (--entry.references > 0)
+                return;
+
+            entries.remove(key);
+        }
+
+        log.info("close provider [{}]", key.replace('\n', ' ').trim());
+        try {
+            await(entry).close();
+        } catch (IOException | RuntimeException e) {
+            log.warn("failed to close provider", e);
+        }
+    }
+
+    synchronized int references(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.references;
+    }
+
+    /**
+     * 等待条目的创建者完成创建, 创建失败时抛出创建者遇到的异常
+     */
+    private static ManagedConfigurationProvider await(Entry entry) {
+        try {
+            return entry.managed.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("failed to create ConfigurationProvider", e.getCause());
+        }
+    }
+
+    private static final class Entry {
+
+        private final CompletableFuture<ManagedConfigurationProvider> managed = new CompletableFuture<>();
+
+        private final Properties origin;
+
+        private int references;
+
+        private Entry(Properties origin) {
+            this.origin = origin;
+        }
+    }
+}
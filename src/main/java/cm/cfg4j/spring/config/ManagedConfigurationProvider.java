@@ -0,0 +1,45 @@
+package cm.cfg4j.spring.config;
+
+import cm.cfg4j.spring.metrics.ConfigMetrics;
+import org.cfg4j.provider.ConfigurationProvider;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * ConfigurationProvider 及其指标和关闭动作(停止 reload, 释放后端连接等)
+ */
+public final class ManagedConfigurationProvider implements Closeable {
+
+    private final ConfigurationProvider provider;
+
+    private final ConfigMetrics metrics;
+
+    private final Closeable closer;
+
+    public ManagedConfigurationProvider(ConfigurationProvider provider, Closeable closer) {
+        this(provider, null, closer);
+    }
+
+    public ManagedConfigurationProvider(ConfigurationProvider provider, ConfigMetrics metrics, Closeable closer) {
+        this.provider = provider;
+        this.metrics = metrics;
+        this.closer = closer;
+    }
+
+    public ConfigurationProvider getProvider() {
+        return provider;
+    }
+
+    /**
+     * @return 指标, 可能为 null
+     */
+    public ConfigMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closer.close();
+    }
+}
@@ -0,0 +1,159 @@
+package cm.cfg4j.spring.listener;
+
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 配置变更监听器的注册与通知
+ * <p>
+ * 每次 reload 只计算一次差异, 再按监听前缀过滤后分发. 通知在有界线程池中异步执行, reload 线程只负责入队:
+ * 每个监听器有自己的待处理队列并串行消费, 慢的监听器只会积压自己的通知, 不影响 reload 和其他监听器;
+ * 积压超过上限的通知会被丢弃并记录告警.
+ */
+public class ConfigChangeDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigChangeDispatcher.class);
+
+    private static final int POOL_SIZE = 2;
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private static final int MAX_PENDING_PER_LISTENER = 64;
+
+    private static volatile ConfigChangeDispatcher shared;
+
+    private final ExecutorService executor;
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public ConfigChangeDispatcher() {
+        this(newExecutor());
+    }
+
+    public ConfigChangeDispatcher(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return reload 流程默认使用的全局 dispatcher
+     */
+    public static ConfigChangeDispatcher shared() {
+        ConfigChangeDispatcher dispatcher = shared;
+        if (dispatcher == null) {
+            synchronized (ConfigChangeDispatcher.class) {
+                dispatcher = shared;
+                if (dispatcher == null) {
+                    shared = dispatcher = new ConfigChangeDispatcher();
+                }
+            }
+        }
+        return dispatcher;
+    }
+
+    private static ExecutorService newExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+            Thread t = new Thread(r, "cfg4j-change-listener-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @param prefix   只关注以此开头的属性, 为空时关注全部属性
+     * @param listener 监听器
+     */
+    public void addListener(String prefix, ConfigChangeListener listener) {
+        subscriptions.add(new Subscription(prefix == null ? "" : prefix, listener));
+    }
+
+    public void removeListener(ConfigChangeListener listener) {
+        subscriptions.removeIf(s -> s.listener == listener);
+    }
+
+    /**
+     * 计算两个快照的差异并通知相关的监听器, 只在调用线程中做比较和入队
+     *
+     * @return 计算得到的差异
+     */
+    public ConfigChangeEvent publish(PropertiesSnapshot oldSnapshot, PropertiesSnapshot newSnapshot) {
+        ConfigChangeEvent event = ConfigChangeEvent.between(oldSnapshot, newSnapshot);
+        publish(event);
+        return event;
+    }
+
+    public void publish(ConfigChangeEvent event) {
+        if (event.isEmpty())
+            return;
+
+        log.debug("publish config changes: {}", event);
+        for (Subscription subscription : subscriptions) {
+            ConfigChangeEvent filtered = event.filter(subscription.prefix);
+            if (!filtered.isEmpty())
+                subscription.offer(filtered);
+        }
+    }
+
+    private class Subscription implements Runnable {
+        private final String prefix;
+        private final ConfigChangeListener listener;
+
+        private final Queue<ConfigChangeEvent> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Subscription(String prefix, ConfigChangeListener listener) {
+            this.prefix = prefix;
+            this.listener = listener;
+        }
+
+        void offer(ConfigChangeEvent event) {
+            if (pendingCount.incrementAndGet() > MAX_PENDING_PER_LISTENER) {
+                pendingCount.decrementAndGet();
+                log.warn("too many pending config changes for listener {}, drop event: {}", listener, event);
+                return;
+            }
+
+            pending.add(event);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // 下一次 publish 时重试
+                    scheduled.set(false);
+                    log.warn("config change listener executor is saturated, delay notifying {}", listener);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                ConfigChangeEvent event;
+                while ((event = pending.poll()) != null) {
+                    pendingCount.decrementAndGet();
+                    try {
+                        listener.onChange(event);
+                    } catch (RuntimeException e) {
+                        log.warn("config change listener {} failed", listener, e);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+
+            // 处理与上面 finally 之间新入队的事件
+            schedule();
+        }
+    }
+}
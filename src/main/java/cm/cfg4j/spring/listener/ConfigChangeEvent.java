@@ -0,0 +1,149 @@
+package cm.cfg4j.spring.listener;
+
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 两次快照之间的结构化差异, 变更按属性名字典序排列
+ */
+public final class ConfigChangeEvent {
+
+    public enum ChangeType {
+        ADDED, REMOVED, MODIFIED
+    }
+
+    /**
+     * 单个属性的变化, 新增时 oldValue 为 null, 删除时 newValue 为 null
+     */
+    public static final class Change {
+        private final String key;
+        private final String oldValue;
+        private final String newValue;
+
+        Change(String key, String oldValue, String newValue) {
+            this.key = key;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getOldValue() {
+            return oldValue;
+        }
+
+        public String getNewValue() {
+            return newValue;
+        }
+
+        public ChangeType getType() {
+            if (oldValue == null)
+                return ChangeType.ADDED;
+            if (newValue == null)
+                return ChangeType.REMOVED;
+            return ChangeType.MODIFIED;
+        }
+
+        @Override
+        public String toString() {
+            return getType() + " " + key;
+        }
+    }
+
+    private final PropertiesSnapshot oldSnapshot;
+
+    private final PropertiesSnapshot newSnapshot;
+
+    private final List<Change> changes;
+
+    private ConfigChangeEvent(PropertiesSnapshot oldSnapshot, PropertiesSnapshot newSnapshot, List<Change> changes) {
+        this.oldSnapshot = oldSnapshot;
+        this.newSnapshot = newSnapshot;
+        this.changes = changes;
+    }
+
+    /**
+     * 对两个快照按属性名做一次归并比较, O(n + m)
+     */
+    public static ConfigChangeEvent between(PropertiesSnapshot oldSnapshot, PropertiesSnapshot newSnapshot) {
+        List<Change> changes = new ArrayList<>();
+
+        int i = 0, j = 0;
+        int n = oldSnapshot.size(), m = newSnapshot.size();
+        while (i < n || j < m) {
+            int cmp = i == n ? 1 : j == m ? -1 : oldSnapshot.nameAt(i).compareTo(newSnapshot.nameAt(j));
+            if (cmp < 0) {
+                changes.add(new Change(oldSnapshot.nameAt(i), oldSnapshot.valueAt(i), null));
+                i++;
+            } else if (cmp > 0) {
+                changes.add(new Change(newSnapshot.nameAt(j), null, newSnapshot.valueAt(j)));
+                j++;
+            } else {
+                if (!oldSnapshot.valueAt(i).equals(newSnapshot.valueAt(j)))
+                    changes.add(new Change(oldSnapshot.nameAt(i), oldSnapshot.valueAt(i), newSnapshot.valueAt(j)));
+                i++;
+                j++;
+            }
+        }
+
+        return new ConfigChangeEvent(oldSnapshot, newSnapshot, Collections.unmodifiableList(changes));
+    }
+
+    /**
+     * @return 只包含以 prefix 开头的属性变更的事件, 二分定位, O(log n + k)
+     */
+    public ConfigChangeEvent filter(String prefix) {
+        if (prefix == null || prefix.isEmpty())
+            return this;
+
+        int from = lowerBound(prefix);
+        int to = from;
+        while (to < changes.size() && changes.get(to).getKey().startsWith(prefix))
+            to++;
+
+        return new ConfigChangeEvent(oldSnapshot, newSnapshot, changes.subList(from, to));
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0, hi = changes.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (changes.get(mid).getKey().compareTo(key) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    public boolean isChanged(String key) {
+        int idx = lowerBound(key);
+        return idx < changes.size() && changes.get(idx).getKey().equals(key);
+    }
+
+    public PropertiesSnapshot getOldSnapshot() {
+        return oldSnapshot;
+    }
+
+    public PropertiesSnapshot getNewSnapshot() {
+        return newSnapshot;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigChangeEvent" + changes;
+    }
+}
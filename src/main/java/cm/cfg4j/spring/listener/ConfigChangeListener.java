@@ -0,0 +1,15 @@
+package cm.cfg4j.spring.listener;
+
+/**
+ * 配置变更监听器, 通过 {@link ConfigChangeDispatcher#addListener(String, ConfigChangeListener)} 注册
+ */
+@FunctionalInterface
+public interface ConfigChangeListener {
+
+    /**
+     * 在 dispatcher 的通知线程中异步调用, 同一个监听器的通知按顺序串行送达
+     *
+     * @param event 只包含监听前缀下的变更
+     */
+    void onChange(ConfigChangeEvent event);
+}
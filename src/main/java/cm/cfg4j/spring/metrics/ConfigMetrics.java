@@ -0,0 +1,306 @@
+package cm.cfg4j.spring.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个 provider 的配置加载指标: reload 耗时直方图, 加载的 key 数与字节数, 变更 key 数, 失败次数,
+ * 距上次成功加载的时间, 以及 Environment 查询次数.
+ * <p>
+ * 计数使用 {@link LongAdder}, 直方图为固定分桶的 {@link AtomicLongArray}, 记录时不分配对象;
+ * 查询路径上只有一次 LongAdder 自增.
+ * <p>
+ * 创建后加入全局列表供 {@link ConfigMetricsBinder} 绑定, 可选注册为 JMX MBean; 关闭时移除并注销.
+ */
+public class ConfigMetrics implements ConfigMetricsMXBean, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigMetrics.class);
+
+    private static final String JMX_DOMAIN = "cm.cfg4j.spring";
+
+    private static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+    private static final Collection<ConfigMetrics> LIVE = new CopyOnWriteArrayList<>();
+
+    private final String backend;
+
+    private final String name;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+
+    private final LongAdder reloads = new LongAdder();
+
+    private final LongAdder reloadFailures = new LongAdder();
+
+    private final LongAdder reloadNanos = new LongAdder();
+
+    private final LongAdder appliedReloads = new LongAdder();
+
+    private final LongAdder skippedReloads = new LongAdder();
+
+    private final LongAdder changedKeys = new LongAdder();
+
+    private final LongAdder lookups = new LongAdder();
+
+    private final LongAdder lookupMisses = new LongAdder();
+
+    private volatile long maxReloadNanos;
+
+    private volatile int keyCount;
+
+    private volatile long byteCount;
+
+    private volatile int lastChangedKeyCount;
+
+    private volatile long lastSuccessMillis = -1;
+
+    private ObjectName objectName;
+
+    public ConfigMetrics(String backend, String name) {
+        this.backend = backend;
+        this.name = name;
+        LIVE.add(this);
+    }
+
+    /**
+     * 当前所有未关闭的指标
+     */
+    public static Collection<ConfigMetrics> live() {
+        return Collections.unmodifiableCollection(new ArrayList<>(LIVE));
+    }
+
+    /**
+     * 注册到平台 MBeanServer, 同名已存在时追加序号
+     */
+    public synchronized void registerMBean() {
+        if (objectName != null)
+            return;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (int i = 0; i < 100; i++) {
+            try {
+                String quoted = ObjectName.quote(i == 0 ? name : name + "#" + i);
+                ObjectName candidate = new ObjectName(JMX_DOMAIN + ":type=ConfigMetrics,backend=" + ObjectName.quote(backend) + ",name=" + quoted);
+                server.registerMBean(this, candidate);
+                objectName = candidate;
+                log.info("register config metrics mbean: {}", candidate);
+                return;
+            } catch (InstanceAlreadyExistsException e) {
+                // 换一个序号重试
+            } catch (JMException e) {
+                log.warn("failed to register config metrics mbean", e);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        LIVE.remove(this);
+
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.warn("failed to unregister config metrics mbean: {}", objectName, e);
+            }
+            objectName = null;
+        }
+    }
+
+    public void recordReloadSuccess(long nanos) {
+        recordReload(nanos);
+        lastSuccessMillis = System.currentTimeMillis();
+    }
+
+    public void recordReloadFailure(long nanos) {
+        recordReload(nanos);
+        reloadFailures.increment();
+    }
+
+    public void recordSkipped() {
+        skippedReloads.increment();
+    }
+
+    public void recordApplied(int keys, long bytes, int changed) {
+        appliedReloads.increment();
+        keyCount = keys;
+        byteCount = bytes;
+        lastChangedKeyCount = changed;
+        changedKeys.add(changed);
+    }
+
+    public void recordLookup(boolean hit) {
+        lookups.increment();
+        if (!hit)
+            lookupMisses.increment();
+    }
+
+    private void recordReload(long nanos) {
+        reloads.increment();
+        reloadNanos.add(nanos);
+        if (nanos > maxReloadNanos)
+            maxReloadNanos = nanos;
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket])
+            bucket++;
+        buckets.incrementAndGet(bucket);
+    }
+
+    @Override
+    public String getBackend() {
+        return backend;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getReloadCount() {
+        return reloads.sum();
+    }
+
+    @Override
+    public long getReloadFailureCount() {
+        return reloadFailures.sum();
+    }
+
+    @Override
+    public long getAppliedReloadCount() {
+        return appliedReloads.sum();
+    }
+
+    @Override
+    public long getSkippedReloadCount() {
+        return skippedReloads.sum();
+    }
+
+    public long getReloadTotalNanos() {
+        return reloadNanos.sum();
+    }
+
+    @Override
+    public double getReloadMeanMillis() {
+        long count = reloads.sum();
+        return count == 0 ? 0 : reloadNanos.sum() / 1e6 / count;
+    }
+
+    @Override
+    public long getReloadMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxReloadNanos);
+    }
+
+    @Override
+    public long[] getReloadBucketBoundsMillis() {
+        return BUCKET_BOUNDS_MILLIS.clone();
+    }
+
+    @Override
+    public long[] getReloadBucketCounts() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = buckets.get(i);
+        return counts;
+    }
+
+    /**
+     * 第 i 个桶中的次数, i 等于上界数组长度时为溢出桶
+     */
+    public long getReloadBucketCount(int i) {
+        return buckets.get(i);
+    }
+
+    @Override
+    public long getReloadP50Millis() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public long getReloadP99Millis() {
+        return percentile(0.99);
+    }
+
+    /**
+     * 按桶的上界估算分位数, 落在溢出桶时取最大值
+     */
+    long percentile(double q) {
+        long[] counts = getReloadBucketCounts();
+        long total = 0;
+        for (long c : counts)
+            total += c;
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return BUCKET_BOUNDS_MILLIS[i];
+        }
+        return getReloadMaxMillis();
+    }
+
+    @Override
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    @Override
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    @Override
+    public long getChangedKeyCount() {
+        return changedKeys.sum();
+    }
+
+    @Override
+    public int getLastChangedKeyCount() {
+        return lastChangedKeyCount;
+    }
+
+    @Override
+    public long getMillisSinceLastSuccess() {
+        long last = lastSuccessMillis;
+        return last < 0 ? -1 : System.currentTimeMillis() - last;
+    }
+
+    @Override
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    @Override
+    public long getLookupMissCount() {
+        return lookupMisses.sum();
+    }
+
+    static long[] bucketBounds() {
+        return BUCKET_BOUNDS_MILLIS;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigMetrics{backend='" + backend + "', name='" + name + "'}";
+    }
+}
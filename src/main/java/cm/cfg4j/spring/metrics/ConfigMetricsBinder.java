@@ -0,0 +1,67 @@
+package cm.cfg4j.spring.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可选的 Micrometer 绑定, 只在类路径中存在 micrometer-core 时可用.
+ * <p>
+ * 无参构造时绑定所有当前存在的 {@link ConfigMetrics}, 适合在容器启动后声明为 bean 交给 Micrometer 自动绑定.
+ */
+public class ConfigMetricsBinder implements MeterBinder {
+
+    private final Collection<ConfigMetrics> metrics;
+
+    public ConfigMetricsBinder() {
+        this(null);
+    }
+
+    public ConfigMetricsBinder(ConfigMetrics metrics) {
+        this.metrics = metrics == null ? null : Collections.singletonList(metrics);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (ConfigMetrics m : metrics != null ? metrics : ConfigMetrics.live())
+            bind(registry, m);
+    }
+
+    private void bind(MeterRegistry registry, ConfigMetrics m) {
+        Tags tags = Tags.of("backend", m.getBackend(), "name", m.getName());
+
+        FunctionTimer.builder("cfg4j.reload", m, ConfigMetrics::getReloadCount, ConfigMetrics::getReloadTotalNanos, TimeUnit.NANOSECONDS)
+            .tags(tags).description("configuration reload duration").register(registry);
+        TimeGauge.builder("cfg4j.reload.max", m, TimeUnit.MILLISECONDS, ConfigMetrics::getReloadMaxMillis)
+            .tags(tags).register(registry);
+
+        long[] bounds = ConfigMetrics.bucketBounds();
+        for (int i = 0; i <= bounds.length; i++) {
+            final int bucket = i;
+            String le = i < bounds.length ? String.valueOf(bounds[i]) : "+Inf";
+            FunctionCounter.builder("cfg4j.reload.duration.bucket", m, x -> x.getReloadBucketCount(bucket))
+                .tags(tags).tag("le", le).baseUnit("reloads").register(registry);
+        }
+
+        FunctionCounter.builder("cfg4j.reload.failures", m, ConfigMetrics::getReloadFailureCount).tags(tags).register(registry);
+        FunctionCounter.builder("cfg4j.reload.applied", m, ConfigMetrics::getAppliedReloadCount).tags(tags).register(registry);
+        FunctionCounter.builder("cfg4j.reload.skipped", m, ConfigMetrics::getSkippedReloadCount).tags(tags).register(registry);
+        FunctionCounter.builder("cfg4j.keys.changed", m, ConfigMetrics::getChangedKeyCount).tags(tags).register(registry);
+
+        Gauge.builder("cfg4j.keys", m, ConfigMetrics::getKeyCount).tags(tags).register(registry);
+        Gauge.builder("cfg4j.bytes", m, ConfigMetrics::getByteCount).tags(tags).baseUnit("bytes").register(registry);
+        TimeGauge.builder("cfg4j.reload.since.success", m, TimeUnit.MILLISECONDS, ConfigMetrics::getMillisSinceLastSuccess)
+            .tags(tags).register(registry);
+
+        FunctionCounter.builder("cfg4j.lookups", m, ConfigMetrics::getLookupCount).tags(tags).register(registry);
+        FunctionCounter.builder("cfg4j.lookups.miss", m, ConfigMetrics::getLookupMissCount).tags(tags).register(registry);
+    }
+}
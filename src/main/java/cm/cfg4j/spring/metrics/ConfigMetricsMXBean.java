@@ -0,0 +1,54 @@
+package cm.cfg4j.spring.metrics;
+
+/**
+ * 配置加载指标的 JMX 视图
+ */
+public interface ConfigMetricsMXBean {
+
+    String getBackend();
+
+    String getName();
+
+    long getReloadCount();
+
+    long getReloadFailureCount();
+
+    long getAppliedReloadCount();
+
+    long getSkippedReloadCount();
+
+    double getReloadMeanMillis();
+
+    long getReloadMaxMillis();
+
+    /**
+     * reload 耗时直方图各桶的上界(毫秒), 最后一个桶没有上界
+     */
+    long[] getReloadBucketBoundsMillis();
+
+    /**
+     * reload 耗时直方图各桶的次数, 比上界数组多一个溢出桶
+     */
+    long[] getReloadBucketCounts();
+
+    long getReloadP50Millis();
+
+    long getReloadP99Millis();
+
+    int getKeyCount();
+
+    long getByteCount();
+
+    long getChangedKeyCount();
+
+    int getLastChangedKeyCount();
+
+    /**
+     * 距上一次成功加载的毫秒数, 从未成功时为 -1
+     */
+    long getMillisSinceLastSuccess();
+
+    long getLookupCount();
+
+    long getLookupMissCount();
+}
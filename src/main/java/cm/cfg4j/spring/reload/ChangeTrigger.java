@@ -0,0 +1,17 @@
+package cm.cfg4j.spring.reload;
+
+/**
+ * 配置变更通知, 后端数据发生变化时回调, 用于替代固定周期的轮询
+ */
+public interface ChangeTrigger {
+
+    /**
+     * 开始监听, 检测到变更时调用 onChange. 回调在触发器自己的线程中执行
+     */
+    void start(Runnable onChange);
+
+    /**
+     * 停止监听并释放资源
+     */
+    void stop();
+}
@@ -0,0 +1,36 @@
+package cm.cfg4j.spring.reload;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 组合多个变更通知, 任意一个检测到变更时回调
+ */
+public class CompositeChangeTrigger implements ChangeTrigger {
+
+    private final List<ChangeTrigger> triggers;
+
+    public CompositeChangeTrigger(Collection<ChangeTrigger> triggers) {
+        if (triggers == null || triggers.isEmpty())
+            throw new IllegalArgumentException("triggers cannot be empty");
+        this.triggers = new ArrayList<>(triggers);
+    }
+
+    @Override
+    public void start(Runnable onChange) {
+        for (ChangeTrigger trigger : triggers)
+            trigger.start(onChange);
+    }
+
+    @Override
+    public void stop() {
+        for (ChangeTrigger trigger : triggers)
+            trigger.stop();
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeChangeTrigger" + triggers;
+    }
+}
@@ -0,0 +1,96 @@
+package cm.cfg4j.spring.reload;
+
+import cm.cfg4j.spring.source.ConsulConfigurationSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于 Consul 阻塞查询的变更通知
+ * <p>
+ * 在独立线程中以上次的 X-Consul-Index 循环发起阻塞查询, 数据变化时立即回调, 没有变化时每个等待周期只有一次请求.
+ * 查询失败后按指数退避重试; 两次查询之间至少间隔 {@link #MIN_INTERVAL_MILLIS}, 避免索引异常时空转.
+ */
+public class ConsulWatchTrigger implements ChangeTrigger {
+
+    private final Logger log = LoggerFactory.getLogger(ConsulWatchTrigger.class);
+
+    private static final long MIN_INTERVAL_MILLIS = 100L;
+
+    private static final long MAX_BACKOFF_MILLIS = 60000L;
+
+    private final ConsulConfigurationSource source;
+
+    private final long waitMillis;
+
+    private Thread watchThread;
+
+    /**
+     * @param waitMillis 每次阻塞查询的最长等待时间, Consul 的上限为 10 分钟
+     */
+    public ConsulWatchTrigger(ConsulConfigurationSource source, long waitMillis) {
+        if (waitMillis <= 0)
+            throw new IllegalArgumentException("waitMillis must be positive: " + waitMillis);
+
+        this.source = source;
+        this.waitMillis = waitMillis;
+    }
+
+    @Override
+    public synchronized void start(Runnable onChange) {
+        if (watchThread != null)
+            throw new IllegalStateException("trigger is already started");
+
+        watchThread = new Thread(() -> watch(onChange), "cfg4j-consul-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void watch(Runnable onChange) {
+        int failures = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long start = System.currentTimeMillis();
+                try {
+                    boolean changed = source.watch(waitMillis);
+                    failures = 0;
+
+                    if (changed) {
+                        try {
+                            onChange.run();
+                        } catch (RuntimeException e) {
+                            log.warn("failed to handle consul change", e);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failures++;
+                    long backoff = Math.min(MAX_BACKOFF_MILLIS, 1000L << Math.min(failures - 1, 16));
+                    log.warn("blocking query to {} failed {} times, retry in {} ms", source, failures, backoff, e);
+                    Thread.sleep(backoff);
+                    continue;
+                }
+
+                long elapsed = System.currentTimeMillis() - start;
+                if (elapsed < MIN_INTERVAL_MILLIS)
+                    Thread.sleep(MIN_INTERVAL_MILLIS - elapsed);
+            }
+        } catch (InterruptedException e) {
+            log.debug("stop watching {}", source);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConsulWatchTrigger{" +
+            "source=" + source +
+            ", waitMillis=" + waitMillis +
+            '}';
+    }
+}
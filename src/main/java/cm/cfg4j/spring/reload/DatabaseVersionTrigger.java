@@ -0,0 +1,171 @@
+package cm.cfg4j.spring.reload;
+
+import cm.cfg4j.spring.source.DatabaseConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于版本表的数据库变更通知
+ * <p>
+ * 配置表上的触发器(见 config.sql)在每次增删改时递增版本表中对应项目的版本号,
+ * 这里只按主键读取这一行, 版本号变化时才触发真正的 reload, 代价远低于周期性地查询整张配置表.
+ * <p>
+ * 与 {@link ScheduledReloadStrategy} 相同, 共享的 {@link ReloadScheduler} 只负责计时, 版本查询和触发的 reload 都在
+ * {@link ReloadScheduler#workers()} 中执行, 完成后才调度下一次检查, 数据库挂起时不会堆积查询, 也不会占住调度线程.
+ * 首次检查的相位和每次的间隔都带有随机抖动, 大量实例不会同步地查询版本表.
+ * <p>
+ * 基线版本号在 {@link #start} 中同步读取, 启动之后、首次检查之前的变更同样会被发现; 读取失败时首次成功的检查总会触发一次 reload.
+ */
+public class DatabaseVersionTrigger implements ChangeTrigger {
+
+    private final Logger log = LoggerFactory.getLogger(DatabaseVersionTrigger.class);
+
+    private static final String SQL = "SELECT `version` FROM %s WHERE project = ?";
+
+    private final DatabaseConnectionManager connectionManager;
+
+    private final String sql;
+
+    private final String project;
+
+    private final long intervalMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Executor workers;
+
+    private Task task;
+
+    private volatile Long lastVersion;
+
+    public DatabaseVersionTrigger(DatabaseConnectionManager connectionManager, String versionTable, String project, long intervalMillis) {
+        this(connectionManager, versionTable, project, intervalMillis, ReloadScheduler.shared(), ReloadScheduler.workers());
+    }
+
+    DatabaseVersionTrigger(DatabaseConnectionManager connectionManager, String versionTable, String project, long intervalMillis,
+                           ScheduledExecutorService scheduler, Executor workers) {
+        if (intervalMillis <= 0)
+            throw new IllegalArgumentException("intervalMillis must be positive: " + intervalMillis);
+
+        this.connectionManager = connectionManager;
+        this.sql = String.format(SQL, versionTable);
+        this.project = project;
+        this.intervalMillis = intervalMillis;
+        this.scheduler = scheduler;
+        this.workers = workers;
+    }
+
+    @Override
+    public synchronized void start(Runnable onChange) {
+        if (task != null)
+            throw new IllegalStateException("trigger is already started");
+
+        try {
+            lastVersion = readVersion();
+        } catch (RuntimeException e) {
+            lastVersion = null;
+            log.warn("failed to read the initial config version of project {}, reload on the first check", project, e);
+        }
+
+        task = new Task(onChange);
+        task.schedule(ThreadLocalRandom.current().nextLong(intervalMillis) + 1);
+    }
+
+    private Long readVersion() {
+        return connectionManager.execute(sql, ps -> {
+            ps.setString(1, project);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        });
+    }
+
+    private void check(Runnable onChange) {
+        try {
+            Long version = readVersion();
+            Long last = lastVersion;
+            lastVersion = version;
+            if (!version.equals(last)) {
+                log.info("config version of project {} is changed: {} -> {}", project, last, version);
+                onChange.run();
+            }
+        } catch (RuntimeException e) {
+            log.warn("failed to check config version of project {}", project, e);
+        }
+    }
+
+    /**
+     * 在 ±{@link ScheduledReloadStrategy#DEFAULT_JITTER} 范围内随机的检查间隔
+     */
+    private long nextDelay() {
+        double jitter = ScheduledReloadStrategy.DEFAULT_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(1, intervalMillis + (long) (intervalMillis * jitter));
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseVersionTrigger{project=" + project + ", interval=" + intervalMillis + "ms}";
+    }
+
+    private class Task implements Runnable {
+
+        private final Runnable onChange;
+
+        private volatile boolean cancelled;
+
+        private ScheduledFuture<?> future;
+
+        Task(Runnable onChange) {
+            this.onChange = onChange;
+        }
+
+        /**
+         * 在调度线程上触发, 交给 worker 执行
+         */
+        @Override
+        public void run() {
+            if (cancelled)
+                return;
+
+            try {
+                workers.execute(() -> {
+                    if (cancelled)
+                        return;
+
+                    check(onChange);
+                    schedule(nextDelay());
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("reload worker rejected the version check of project {}, retry later", project, e);
+                schedule(nextDelay());
+            }
+        }
+
+        synchronized void schedule(long delayMillis) {
+            if (!cancelled)
+                future = scheduler.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (future != null)
+                future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package cm.cfg4j.spring.reload;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * 基于 {@link WatchService} 的文件变更通知
+ * <p>
+ * 监听文件所在的目录, 只有被关注的文件发生创建、修改或删除时才回调.
+ * 编辑器保存文件时往往会产生一连串事件, 这里会在短暂的静默期后合并为一次回调.
+ */
+public class FileWatchTrigger implements ChangeTrigger {
+
+    private final Logger log = LoggerFactory.getLogger(FileWatchTrigger.class);
+
+    private static final long DEBOUNCE_MILLIS = 100L;
+
+    /**
+     * 目录 -> 该目录下被关注的文件名
+     */
+    private final Map<Path, Set<Path>> watchedFiles = new HashMap<>();
+
+    private WatchService watchService;
+
+    private Thread watchThread;
+
+    public FileWatchTrigger(Collection<Path> files) {
+        for (Path file : files) {
+            Path absolute = file.toAbsolutePath().normalize();
+            Path dir = absolute.getParent();
+            if (dir == null)
+                throw new IllegalArgumentException("cannot watch file: " + file);
+
+            watchedFiles.computeIfAbsent(dir, k -> new HashSet<>()).add(absolute.getFileName());
+        }
+    }
+
+    @Override
+    public synchronized void start(Runnable onChange) {
+        if (watchService != null)
+            throw new IllegalStateException("trigger is already started");
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path dir : watchedFiles.keySet()) {
+                Files.createDirectories(dir);
+                dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                log.info("watch config files {} in {}", watchedFiles.get(dir), dir);
+            }
+        } catch (IOException e) {
+            stop();
+            throw new IllegalStateException("failed to watch config files: " + watchedFiles, e);
+        }
+
+        final WatchService ws = watchService;
+        watchThread = new Thread(() -> watch(ws, onChange), "cfg4j-file-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void watch(WatchService ws, Runnable onChange) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!isWatchedChange(ws.take()))
+                    continue;
+
+                // 合并静默期内的后续事件
+                WatchKey key;
+                while ((key = ws.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+                    isWatchedChange(key);
+
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    log.warn("failed to handle config file change", e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("stop watching config files");
+        }
+    }
+
+    private boolean isWatchedChange(WatchKey key) {
+        boolean matched = false;
+
+        Set<Path> names = watchedFiles.get((Path) key.watchable());
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // 事件溢出时无法确定具体文件, 按发生变更处理
+            if (event.kind() == OVERFLOW || (names != null && names.contains((Path) event.context())))
+                matched = true;
+        }
+        key.reset();
+
+        return matched;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("failed to close watch service", e);
+            }
+            watchService = null;
+        }
+    }
+}
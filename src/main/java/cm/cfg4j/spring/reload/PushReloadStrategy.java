@@ -0,0 +1,92 @@
+package cm.cfg4j.spring.reload;
+
+import org.cfg4j.source.reload.ReloadStrategy;
+import org.cfg4j.source.reload.Reloadable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 由 {@link ChangeTrigger} 驱动的 reload 策略
+ * <p>
+ * 后端发生变化时立即 reload, 空闲时没有任何轮询开销. 可以额外指定一个长周期的兜底策略,
+ * 防止通知丢失时配置长期得不到更新. 同一个 Reloadable 的通知 reload 与兜底 reload 串行执行.
+ */
+public class PushReloadStrategy implements ReloadStrategy {
+
+    private final Logger log = LoggerFactory.getLogger(PushReloadStrategy.class);
+
+    private final ChangeTrigger trigger;
+
+    private final ReloadStrategy safetyNet;
+
+    private final Map<Reloadable, Reloadable> registered = new ConcurrentHashMap<>();
+
+    /**
+     * @param trigger   变更通知
+     * @param safetyNet 兜底的轮询策略, 可以为 null
+     */
+    public PushReloadStrategy(ChangeTrigger trigger, ReloadStrategy safetyNet) {
+        this.trigger = trigger;
+        this.safetyNet = safetyNet;
+    }
+
+    @Override
+    public synchronized void register(Reloadable reloadable) {
+        log.debug("register reloadable {} with change trigger {}", reloadable, trigger);
+
+        Reloadable serialized = new SerializedReloadable(reloadable);
+        registered.put(reloadable, serialized);
+
+        if (safetyNet != null)
+            safetyNet.register(serialized);
+        else
+            serialized.reload();
+
+        if (registered.size() == 1)
+            trigger.start(this::reloadAll);
+    }
+
+    private void reloadAll() {
+        for (Reloadable reloadable : registered.values()) {
+            try {
+                reloadable.reload();
+            } catch (RuntimeException e) {
+                log.warn("failed to reload configuration on change", e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void deregister(Reloadable reloadable) {
+        Reloadable serialized = registered.remove(reloadable);
+        if (serialized == null)
+            return;
+
+        if (safetyNet != null)
+            safetyNet.deregister(serialized);
+
+        if (registered.isEmpty())
+            trigger.stop();
+    }
+
+    @Override
+    public String toString() {
+        return "PushReloadStrategy{trigger=" + trigger + ", safetyNet=" + safetyNet + '}';
+    }
+
+    private static final class SerializedReloadable implements Reloadable {
+        private final Reloadable delegate;
+
+        SerializedReloadable(Reloadable delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void reload() {
+            delegate.reload();
+        }
+    }
+}
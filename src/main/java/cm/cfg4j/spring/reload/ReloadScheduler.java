@@ -0,0 +1,80 @@
+package cm.cfg4j.spring.reload;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 所有配置源共用的 reload 调度线程池, 避免每个 provider 各自创建一个定时器线程
+ * <p>
+ * 调度线程只负责计时, 不能执行查询数据库、拉取 git 这类可能阻塞的操作, 这些操作提交到 {@link #workers()} 中执行.
+ * 提交者应保证同一个 provider 同时只有一个任务在执行, 一个挂起的后端最多占住一个 worker, 不会拖住其他 provider 的 reload.
+ */
+public final class ReloadScheduler {
+
+    private static final int POOL_SIZE = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final int WORKER_POOL_SIZE = 16;
+
+    private static volatile ScheduledExecutorService shared;
+
+    private static volatile ExecutorService workers;
+
+    private ReloadScheduler() {
+    }
+
+    public static ScheduledExecutorService shared() {
+        ScheduledExecutorService scheduler = shared;
+        if (scheduler == null) {
+            synchronized (ReloadScheduler.class) {
+                scheduler = shared;
+                if (scheduler == null) {
+                    shared = scheduler = newScheduler();
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * @return 执行阻塞 reload 的共享线程池, 空闲线程会被回收
+     */
+    public static ExecutorService workers() {
+        ExecutorService executor = workers;
+        if (executor == null) {
+            synchronized (ReloadScheduler.class) {
+                executor = workers;
+                if (executor == null) {
+                    workers = executor = newWorkers();
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ExecutorService newWorkers() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKER_POOL_SIZE, WORKER_POOL_SIZE, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "cfg4j-reload-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        AtomicInteger counter = new AtomicInteger();
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(POOL_SIZE, r -> {
+            Thread t = new Thread(r, "cfg4j-reload-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
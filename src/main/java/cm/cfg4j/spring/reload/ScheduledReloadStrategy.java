@@ -0,0 +1,173 @@
+package cm.cfg4j.spring.reload;
+
+import org.cfg4j.source.reload.ReloadStrategy;
+import org.cfg4j.source.reload.Reloadable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在共享调度线程池上周期性 reload
+ * <p>
+ * 与 {@link org.cfg4j.source.reload.strategy.PeriodicalReloadStrategy} 相比:
+ * <ul>
+ * <li>所有 provider 共用 {@link ReloadScheduler} 中的线程, 而不是每个 provider 一个定时器线程</li>
+ * <li>每次的间隔都加入随机抖动, 首次调度的相位也是随机的, 大量实例同时启动时不会同步地访问后端</li>
+ * <li>reload 失败后按指数退避延长间隔(不超过 maxBackoff), 成功后恢复正常间隔</li>
+ * </ul>
+ * 调度线程只负责计时, reload 在 {@link ReloadScheduler#workers()} 中执行; 每次执行完成后才调度下一次,
+ * 同一个 Reloadable 不会并发 reload, 一个挂起的后端也不会阻塞其他 provider 的 reload.
+ */
+public class ScheduledReloadStrategy implements ReloadStrategy {
+
+    private final Logger log = LoggerFactory.getLogger(ScheduledReloadStrategy.class);
+
+    public static final double DEFAULT_JITTER = 0.1;
+
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofMinutes(5);
+
+    private final long intervalMillis;
+
+    private final double jitter;
+
+    private final long maxBackoffMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Executor workers;
+
+    private final Map<Reloadable, Task> tasks = new ConcurrentHashMap<>();
+
+    public ScheduledReloadStrategy(long interval, TimeUnit unit) {
+        this(Duration.ofMillis(unit.toMillis(interval)), DEFAULT_JITTER, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * @param interval   reload 间隔
+     * @param jitter     间隔的随机抖动比例, 取值 [0, 1), 例如 0.1 表示在 ±10% 范围内随机
+     * @param maxBackoff 失败退避的最大间隔
+     */
+    public ScheduledReloadStrategy(Duration interval, double jitter, Duration maxBackoff) {
+        this(interval, jitter, maxBackoff, ReloadScheduler.shared(), ReloadScheduler.workers());
+    }
+
+    ScheduledReloadStrategy(Duration interval, double jitter, Duration maxBackoff, ScheduledExecutorService scheduler, Executor workers) {
+        if (interval.isNegative() || interval.isZero())
+            throw new IllegalArgumentException("reload interval must be positive: " + interval);
+        if (jitter < 0 || jitter >= 1)
+            throw new IllegalArgumentException("jitter must be in [0, 1): " + jitter);
+
+        this.intervalMillis = interval.toMillis();
+        this.jitter = jitter;
+        this.maxBackoffMillis = Math.max(intervalMillis, maxBackoff.toMillis());
+        this.scheduler = scheduler;
+        this.workers = workers;
+    }
+
+    @Override
+    public void register(Reloadable reloadable) {
+        log.debug("register reloadable {} every {}ms, jitter {}", reloadable, intervalMillis, jitter);
+
+        Task task = new Task(reloadable);
+        if (tasks.putIfAbsent(reloadable, task) != null)
+            return;
+
+        // 与 PeriodicalReloadStrategy 一致, 注册时立即加载一次; 之后的首次调度取随机相位
+        task.reloadOnce();
+        task.schedule(task.failures == 0 ? ThreadLocalRandom.current().nextLong(intervalMillis) + 1 : nextDelay(task.failures));
+    }
+
+    @Override
+    public void deregister(Reloadable reloadable) {
+        Task task = tasks.remove(reloadable);
+        if (task != null)
+            task.cancel();
+    }
+
+    /**
+     * 失败后按 interval * 2^failures 退避, 再叠加随机抖动
+     */
+    long nextDelay(int failures) {
+        long delay = intervalMillis;
+        for (int i = 0; i < failures && delay < maxBackoffMillis; i++)
+            delay *= 2;
+        delay = Math.min(delay, maxBackoffMillis);
+
+        if (jitter > 0)
+            delay += (long) (delay * jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1));
+
+        return Math.max(1, delay);
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduledReloadStrategy{interval=" + intervalMillis + "ms, jitter=" + jitter + ", maxBackoff=" + maxBackoffMillis + "ms}";
+    }
+
+    private class Task implements Runnable {
+
+        private final Reloadable reloadable;
+
+        private volatile int failures;
+
+        private volatile boolean cancelled;
+
+        private ScheduledFuture<?> future;
+
+        Task(Reloadable reloadable) {
+            this.reloadable = reloadable;
+        }
+
+        /**
+         * 在调度线程上触发, 交给 worker 执行
+         */
+        @Override
+        public void run() {
+            if (cancelled)
+                return;
+
+            try {
+                workers.execute(() -> {
+                    if (cancelled)
+                        return;
+
+                    reloadOnce();
+                    schedule(nextDelay(failures));
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("reload worker rejected the task, retry later", e);
+                schedule(nextDelay(failures));
+            }
+        }
+
+        void reloadOnce() {
+            try {
+                reloadable.reload();
+                failures = 0;
+            } catch (Exception e) {
+                failures++;
+                log.warn("failed to reload configuration, {} consecutive failures", failures, e);
+            }
+        }
+
+        synchronized void schedule(long delayMillis) {
+            if (!cancelled)
+                future = scheduler.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (future != null)
+                future.cancel(false);
+        }
+    }
+}
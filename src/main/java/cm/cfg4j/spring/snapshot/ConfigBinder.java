@@ -0,0 +1,405 @@
+package cm.cfg4j.spring.snapshot;
+
+import cm.cfg4j.spring.Cfg4jPropertyPlaceholderConfigurer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 基于属性快照的配置接口绑定, 代替 {@code ConfigurationProvider.bind} 返回的动态代理
+ * <p>
+ * 为每个接口生成两个类: 值类以 final 字段保存每个方法转换好的返回值, 实现类实现接口, 方法体只是读取当前值对象的字段.
+ * 快照替换后第一次调用时重新转换并整体替换值对象, 同一个值对象内的各字段总是来自同一个快照; 相关的原始字符串都未变化时沿用原值对象.
+ * 调用时没有反射、key 拼接或字符串转换.
+ * <p>
+ * 方法名即属性名, 如 bind("db", DbConfig.class) 的 url() 读取 db.url; 方法必须没有参数, 返回值支持基本类型及其包装类型、
+ * String、{@link Duration}、List&lt;String&gt; 和枚举. 绑定时属性缺失或无法转换将抛出异常;
+ * reload 后的值无法转换时记录告警并继续使用之前的值.
+ */
+public class ConfigBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigBinder.class);
+
+    private static final String BOUND_NAME = Type.getInternalName(Bound.class);
+
+    private static final String BINDING_DESC = Type.getDescriptor(Binding.class);
+
+    private final AtomicReference<PropertiesSnapshot> holder;
+
+    /**
+     * 已生成的类, 每个接口只生成一次
+     */
+    private final Map<Class<?>, Generated> generated = new ConcurrentHashMap<>();
+
+    public ConfigBinder() {
+        this(Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder);
+    }
+
+    public ConfigBinder(AtomicReference<PropertiesSnapshot> holder) {
+        this.holder = holder;
+    }
+
+    /**
+     * @param prefix 属性名前缀, 为空时方法名即属性名
+     * @param type   配置接口, 必须是 public 的
+     */
+    public <T> T bind(String prefix, Class<T> type) {
+        Generated classes = generated.computeIfAbsent(type, ConfigBinder::generate);
+
+        String[] keys = new String[classes.methods.length];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = prefix == null || prefix.isEmpty() ? classes.methods[i].getName() : prefix + "." + classes.methods[i].getName();
+
+        Binding binding = new Binding(type.getName(), holder, keys, classes.converters, classes.valuesConstructor);
+        try {
+            return type.cast(classes.boundConstructor.invoke(binding));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("cannot create binding of " + type.getName(), e);
+        }
+    }
+
+    private static Generated generate(Class<?> type) {
+        if (!type.isInterface() || !Modifier.isPublic(type.getModifiers()))
+            throw new IllegalArgumentException("only public interfaces can be bound: " + type.getName());
+
+        List<Method> methods = new ArrayList<>();
+        List<Function<String, ?>> converters = new ArrayList<>();
+        for (Method method : type.getMethods()) {
+            if (method.isDefault() || Modifier.isStatic(method.getModifiers()))
+                continue;
+            if (method.getParameterCount() > 0 || method.getReturnType() == void.class)
+                throw new IllegalArgumentException("configuration method should have no parameters and return a value: " + method);
+
+            methods.add(method);
+            converters.add(converter(method));
+        }
+
+        String valuesName = type.getName() + "$$Cfg4jValues";
+        String boundName = type.getName() + "$$Cfg4jBinding";
+
+        GeneratingClassLoader loader = new GeneratingClassLoader(type.getClassLoader());
+        Class<?> valuesClass = loader.define(valuesName, generateValues(valuesName, methods));
+        Class<?> boundClass = loader.define(boundName, generateBound(boundName, valuesName, type, methods));
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle valuesConstructor = lookup.findConstructor(valuesClass, MethodType.methodType(void.class, Object[].class))
+                .asType(MethodType.methodType(Object.class, Object[].class));
+            MethodHandle boundConstructor = lookup.findConstructor(boundClass, MethodType.methodType(void.class, Binding.class))
+                .asType(MethodType.methodType(Object.class, Binding.class));
+
+            log.debug("generate binding class {} with {} properties", boundName, methods.size());
+            return new Generated(methods.toArray(new Method[0]), converters.toArray(new Function<?, ?>[0]), valuesConstructor, boundConstructor);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot load generated binding of " + type.getName(), e);
+        }
+    }
+
+    private static Function<String, ?> converter(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == String.class)
+            return Function.identity();
+        if (type == int.class || type == Integer.class)
+            return raw -> Integer.valueOf(raw.trim());
+        if (type == long.class || type == Long.class)
+            return raw -> Long.valueOf(raw.trim());
+        if (type == double.class || type == Double.class)
+            return raw -> Double.valueOf(raw.trim());
+        if (type == float.class || type == Float.class)
+            return raw -> Float.valueOf(raw.trim());
+        if (type == short.class || type == Short.class)
+            return raw -> Short.valueOf(raw.trim());
+        if (type == byte.class || type == Byte.class)
+            return raw -> Byte.valueOf(raw.trim());
+        if (type == boolean.class || type == Boolean.class)
+            return TypedProperties::parseBoolean;
+        if (type == Duration.class)
+            return TypedProperties::parseDuration;
+        if (type.isEnum())
+            return raw -> parseEnum(type, raw);
+        if (type == List.class && isStringList(method))
+            return TypedProperties::parseList;
+
+        throw new IllegalArgumentException("unsupported return type: " + method);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parseEnum(Class<?> type, String raw) {
+        return TypedProperties.parseEnum((Class) type, raw);
+    }
+
+    private static boolean isStringList(Method method) {
+        java.lang.reflect.Type generic = method.getGenericReturnType();
+        return generic == List.class
+            || generic instanceof ParameterizedType && ((ParameterizedType) generic).getActualTypeArguments()[0] == String.class;
+    }
+
+    /**
+     * public final class Xxx$$Cfg4jValues { public final T0 f0; ...; public Xxx$$Cfg4jValues(Object[] values) }
+     */
+    private static byte[] generateValues(String className, List<Method> methods) {
+        String internalName = className.replace('.', '/');
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null);
+
+        for (int i = 0; i < methods.size(); i++)
+            cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, "f" + i, Type.getDescriptor(methods.get(i).getReturnType()), null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        for (int i = 0; i < methods.size(); i++) {
+            Class<?> returnType = methods.get(i).getReturnType();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitLdcInsn(i);
+            mv.visitInsn(Opcodes.AALOAD);
+            unboxOrCast(mv, returnType);
+            mv.visitFieldInsn(Opcodes.PUTFIELD, internalName, "f" + i, Type.getDescriptor(returnType));
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * public final class Xxx$$Cfg4jBinding extends Bound implements Xxx, 方法体为 ((Xxx$$Cfg4jValues) cfg4jValues()).fN
+     */
+    private static byte[] generateBound(String className, String valuesName, Class<?> type, List<Method> methods) {
+        String internalName = className.replace('.', '/');
+        String valuesInternalName = valuesName.replace('.', '/');
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, internalName, null, BOUND_NAME,
+            new String[]{Type.getInternalName(type)});
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(" + BINDING_DESC + ")V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, BOUND_NAME, "<init>", "(" + BINDING_DESC + ")V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        for (int i = 0; i < methods.size(); i++) {
+            Method method = methods.get(i);
+            Type returnType = Type.getType(method.getReturnType());
+
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method.getName(), Type.getMethodDescriptor(method), null, null);
+            mv.visitCode();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, internalName, "cfg4jValues", "()Ljava/lang/Object;", false);
+            mv.visitTypeInsn(Opcodes.CHECKCAST, valuesInternalName);
+            mv.visitFieldInsn(Opcodes.GETFIELD, valuesInternalName, "f" + i, returnType.getDescriptor());
+            mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void unboxOrCast(MethodVisitor mv, Class<?> type) {
+        if (!type.isPrimitive()) {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+            return;
+        }
+
+        Class<?> wrapper = type == int.class ? Integer.class
+            : type == long.class ? Long.class
+            : type == double.class ? Double.class
+            : type == float.class ? Float.class
+            : type == short.class ? Short.class
+            : type == byte.class ? Byte.class
+            : Boolean.class;
+        mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(wrapper));
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(wrapper), type.getName() + "Value", "()" + Type.getDescriptor(type), false);
+    }
+
+    /**
+     * 生成类的基类, 负责在快照替换后重新转换并替换值对象
+     */
+    public abstract static class Bound {
+
+        private final Binding binding;
+
+        private volatile State state;
+
+        protected Bound(Binding binding) {
+            this.binding = binding;
+
+            PropertiesSnapshot snapshot = binding.holder.get();
+            String[] raws = binding.raws(snapshot);
+            this.state = new State(snapshot, raws, binding.convert(raws));
+        }
+
+        /**
+         * @return 当前快照对应的值对象
+         */
+        protected final Object cfg4jValues() {
+            State s = state;
+            PropertiesSnapshot snapshot = binding.holder.get();
+            if (s.snapshot != snapshot)
+                s = refresh(s, snapshot);
+            return s.values;
+        }
+
+        private State refresh(State s, PropertiesSnapshot snapshot) {
+            State next;
+            String[] raws = binding.raws(snapshot);
+            if (Arrays.equals(raws, s.raws)) {
+                next = new State(snapshot, s.raws, s.values);
+            } else {
+                try {
+                    next = new State(snapshot, raws, binding.convert(raws));
+                } catch (IllegalArgumentException e) {
+                    log.warn("cannot refresh binding of {}, keep previous values", binding.typeName, e);
+                    next = new State(snapshot, s.raws, s.values);
+                }
+            }
+
+            state = next;
+            return next;
+        }
+
+        @Override
+        public String toString() {
+            return binding.typeName + "$$Cfg4jBinding{keys=" + Arrays.toString(binding.keys) + "}";
+        }
+    }
+
+    /**
+     * 一个绑定的属性名及转换方式
+     */
+    public static final class Binding {
+
+        private final String typeName;
+
+        private final AtomicReference<PropertiesSnapshot> holder;
+
+        private final String[] keys;
+
+        private final Function<String, ?>[] converters;
+
+        private final MethodHandle valuesConstructor;
+
+        private Binding(String typeName, AtomicReference<PropertiesSnapshot> holder, String[] keys, Function<String, ?>[] converters,
+                        MethodHandle valuesConstructor) {
+            this.typeName = typeName;
+            this.holder = holder;
+            this.keys = keys;
+            this.converters = converters;
+            this.valuesConstructor = valuesConstructor;
+        }
+
+        private String[] raws(PropertiesSnapshot snapshot) {
+            String[] raws = new String[keys.length];
+            for (int i = 0; i < keys.length; i++)
+                raws[i] = snapshot.get(keys[i]);
+            return raws;
+        }
+
+        private Object convert(String[] raws) {
+            Object[] values = new Object[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                if (raws[i] == null)
+                    throw new IllegalArgumentException("missing property '" + keys[i] + "' for " + typeName);
+                try {
+                    values[i] = Objects.requireNonNull(converters[i].apply(raws[i]));
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException("illegal value of '" + keys[i] + "': " + raws[i], e);
+                }
+            }
+
+            try {
+                return valuesConstructor.invoke(values);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("cannot create values of " + typeName, e);
+            }
+        }
+    }
+
+    /**
+     * 某个快照下的原始值及转换后的值对象
+     */
+    private static final class State {
+
+        private final PropertiesSnapshot snapshot;
+
+        private final String[] raws;
+
+        private final Object values;
+
+        private State(PropertiesSnapshot snapshot, String[] raws, Object values) {
+            this.snapshot = snapshot;
+            this.raws = raws;
+            this.values = values;
+        }
+    }
+
+    private static final class Generated {
+
+        private final Method[] methods;
+
+        private final Function<String, ?>[] converters;
+
+        private final MethodHandle valuesConstructor;
+
+        private final MethodHandle boundConstructor;
+
+        @SuppressWarnings("unchecked")
+        private Generated(Method[] methods, Function<?, ?>[] converters, MethodHandle valuesConstructor, MethodHandle boundConstructor) {
+            this.methods = methods;
+            this.converters = (Function<String, ?>[]) converters;
+            this.valuesConstructor = valuesConstructor;
+            this.boundConstructor = boundConstructor;
+        }
+    }
+
+    /**
+     * 以接口所在的类加载器为父加载器定义生成的类, 父加载器看不到本库时(本库位于子加载器中)从本库的类加载器加载
+     */
+    private static final class GeneratingClassLoader extends ClassLoader {
+
+        private GeneratingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            return ConfigBinder.class.getClassLoader().loadClass(name);
+        }
+    }
+}
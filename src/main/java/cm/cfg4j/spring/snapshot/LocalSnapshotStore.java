@@ -0,0 +1,129 @@
+package cm.cfg4j.spring.snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * 本地配置快照文件
+ * <p>
+ * 文件第一行是校验头 "#cfg4j-snapshot sha256=...", 其后是标准的 properties 内容.
+ * 写入时先写临时文件再原子替换, 读取时校验失败的文件被视为不存在.
+ */
+public class LocalSnapshotStore {
+
+    private final Logger log = LoggerFactory.getLogger(LocalSnapshotStore.class);
+
+    private static final String HEADER_PREFIX = "#cfg4j-snapshot sha256=";
+
+    private final Path file;
+
+    public LocalSnapshotStore(Path file) {
+        this.file = file.toAbsolutePath();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return 快照中的属性, 文件不存在或校验失败时返回 null
+     */
+    public Properties read() {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            log.info("local snapshot {} does not exist", file);
+            return null;
+        } catch (IOException e) {
+            log.warn("failed to read local snapshot {}", file, e);
+            return null;
+        }
+
+        int eol = indexOf(bytes, (byte) '\n');
+        String header = eol < 0 ? "" : new String(bytes, 0, eol, StandardCharsets.ISO_8859_1);
+        if (!header.startsWith(HEADER_PREFIX)) {
+            log.warn("local snapshot {} has no checksum header, ignore it", file);
+            return null;
+        }
+
+        String checksum = sha256(bytes, eol + 1, bytes.length - eol - 1);
+        if (!checksum.equals(header.substring(HEADER_PREFIX.length()).trim())) {
+            log.warn("checksum of local snapshot {} mismatch, ignore it", file);
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try {
+            properties.load(new ByteArrayInputStream(bytes, eol + 1, bytes.length - eol - 1));
+        } catch (IOException e) {
+            log.warn("failed to parse local snapshot {}", file, e);
+            return null;
+        }
+        return properties;
+    }
+
+    public void write(Properties properties) {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            properties.store(body, null);
+            byte[] bytes = body.toByteArray();
+
+            byte[] header = (HEADER_PREFIX + sha256(bytes, 0, bytes.length) + "\n").getBytes(StandardCharsets.ISO_8859_1);
+
+            Path dir = file.getParent();
+            if (dir != null)
+                Files.createDirectories(dir);
+
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                byte[] content = new byte[header.length + bytes.length];
+                System.arraycopy(header, 0, content, 0, header.length);
+                System.arraycopy(bytes, 0, content, header.length, bytes.length);
+                Files.write(tmp, content);
+
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+
+            log.debug("write {} properties to local snapshot {}", properties.size(), file);
+        } catch (IOException e) {
+            log.warn("failed to write local snapshot {}", file, e);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte b) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == b)
+                return i;
+        }
+        return -1;
+    }
+
+    private static String sha256(byte[] bytes, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes, offset, length);
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest())
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+}
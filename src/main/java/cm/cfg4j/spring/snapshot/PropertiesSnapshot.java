@@ -0,0 +1,424 @@
+package cm.cfg4j.spring.snapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 每次 reload 后构建一次的只读属性快照
+ * <p>
+ * 使用开放寻址(线性探测)的数组表存储, 键在构建时 intern 并预先计算哈希, 构建完成后不再修改,
+ * 因此读取无锁、无分配, 不会像 {@link Properties}(同步的 Hashtable) 那样在高并发读时产生监视器竞争.
+ */
+public final class PropertiesSnapshot {
+
+    private static final PropertiesSnapshot EMPTY = new PropertiesSnapshot(new String[0], new String[0]);
+
+    /**
+     * 开放寻址表, 空槽位的 key 为 null
+     */
+    private final String[] keys;
+    private final String[] values;
+    private final int[] hashes;
+    private final int mask;
+
+    /**
+     * 排序后的属性名及对应的值, 用于枚举、比较和按命名空间查找子树
+     */
+    private final String[] names;
+    private final String[] namedValues;
+
+    private PropertiesSnapshot(String[] names, String[] namedValues) {
+        int capacity = tableSizeFor(names.length);
+
+        this.keys = new String[capacity];
+        this.values = new String[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+        this.names = names;
+        this.namedValues = namedValues;
+
+        for (int i = 0; i < names.length; i++) {
+            int h = spread(names[i].hashCode());
+            int idx = h & mask;
+            while (keys[idx] != null)
+                idx = (idx + 1) & mask;
+
+            keys[idx] = names[i];
+            values[idx] = namedValues[i];
+            hashes[idx] = h;
+        }
+    }
+
+    public static PropertiesSnapshot empty() {
+        return EMPTY;
+    }
+
+    public static PropertiesSnapshot of(Properties properties) {
+        if (properties == null || properties.isEmpty())
+            return EMPTY;
+
+        Set<String> propertyNames = properties.stringPropertyNames();
+        String[] names = new String[propertyNames.size()];
+
+        int n = 0;
+        for (String name : propertyNames)
+            names[n++] = name.intern();
+        Arrays.sort(names);
+
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++)
+            values[i] = properties.getProperty(names[i]);
+
+        return new PropertiesSnapshot(names, values);
+    }
+
+    /**
+     * 流式构建快照, 适合从数据库游标等来源逐条读取的场景, 不需要先物化成 {@link Properties}
+     */
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    /**
+     * @return 属性值, 不存在时返回 null
+     */
+    public String get(String name) {
+        if (name == null)
+            return null;
+
+        int h = spread(name.hashCode());
+        int idx = h & mask;
+        String k;
+        while ((k = keys[idx]) != null) {
+            if (hashes[idx] == h && (k == name || k.equals(name)))
+                return values[idx];
+            idx = (idx + 1) & mask;
+        }
+        return null;
+    }
+
+    public String get(String name, String defaultValue) {
+        String value = get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    public boolean containsKey(String name) {
+        return get(name) != null;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    /**
+     * @return 按字典序排列的第 index 个属性名
+     */
+    public String nameAt(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return 按字典序排列的第 index 个属性值
+     */
+    public String valueAt(int index) {
+        return namedValues[index];
+    }
+
+    /**
+     * @return 按字典序排列的属性名副本
+     */
+    public String[] getPropertyNames() {
+        return names.clone();
+    }
+
+    /**
+     * 名称以 namespace + "." 开头的属性组成的子树视图, 在排序的属性名上二分查找出范围, 不复制数据
+     *
+     * @param namespace 如 databasePool, 为空时返回全部属性
+     */
+    public SubTree subTree(String namespace) {
+        if (namespace == null || namespace.isEmpty())
+            return new SubTree(this, "", 0, names.length);
+
+        String prefix = namespace.endsWith(".") ? namespace : namespace + ".";
+
+        // 以 prefix 开头的名称在排序后连续, 且都不小于 prefix
+        int from = lowerBound(prefix);
+        int lo = from, hi = names.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (names[mid].startsWith(prefix))
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return new SubTree(this, prefix, from, lo);
+    }
+
+    private int lowerBound(String name) {
+        int lo = 0, hi = names.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (names[mid].compareTo(name) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * 转换为可修改的 {@link Properties}, 供需要旧接口的地方使用
+     */
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        for (int i = 0; i < names.length; i++)
+            properties.setProperty(names[i], namedValues[i]);
+        return properties;
+    }
+
+    @Override
+    public String toString() {
+        return "PropertiesSnapshot{size=" + names.length + "}";
+    }
+
+    /**
+     * 快照中某个命名空间下的属性, 属性名为去掉命名空间前缀后的相对名称, 按字典序排列
+     */
+    public static final class SubTree {
+
+        private final PropertiesSnapshot snapshot;
+
+        private final String prefix;
+
+        private final int from;
+
+        private final int to;
+
+        private SubTree(PropertiesSnapshot snapshot, String prefix, int from, int to) {
+            this.snapshot = snapshot;
+            this.prefix = prefix;
+            this.from = from;
+            this.to = to;
+        }
+
+        public PropertiesSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * @return 命名空间前缀, 如 databasePool., 全部属性时为空串
+         */
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public int size() {
+            return to - from;
+        }
+
+        public boolean isEmpty() {
+            return to == from;
+        }
+
+        /**
+         * @param name 相对名称
+         * @return 属性值, 不存在时返回 null
+         */
+        public String get(String name) {
+            return name == null ? null : snapshot.get(prefix + name);
+        }
+
+        /**
+         * @return 第 index 个属性的相对名称
+         */
+        public String nameAt(int index) {
+            return snapshot.names[checkIndex(index)].substring(prefix.length());
+        }
+
+        public String valueAt(int index) {
+            return snapshot.namedValues[checkIndex(index)];
+        }
+
+        /**
+         * @return 按字典序排列的相对名称
+         */
+        public String[] getPropertyNames() {
+            String[] result = new String[to - from];
+            for (int i = from; i < to; i++)
+                result[i - from] = snapshot.names[i].substring(prefix.length());
+            return result;
+        }
+
+        /**
+         * @return 下一级的名称, 如 databasePool 下的 primary.url 和 primary.user 只给出 primary
+         */
+        public List<String> getChildNames() {
+            // 同一个子节点的名称不一定相邻, a 和 a.b 之间可能隔着 a-b 这样的名称
+            Set<String> children = new LinkedHashSet<>();
+            for (int i = from; i < to; i++) {
+                String name = snapshot.names[i];
+                int dot = name.indexOf('.', prefix.length());
+                children.add(dot < 0 ? name.substring(prefix.length()) : name.substring(prefix.length(), dot));
+            }
+            return new ArrayList<>(children);
+        }
+
+        /**
+         * @param namespace 相对于当前命名空间的下一级命名空间
+         */
+        public SubTree subTree(String namespace) {
+            if (namespace == null || namespace.isEmpty())
+                return this;
+            return snapshot.subTree(prefix + namespace);
+        }
+
+        /**
+         * @return 以相对名称为 key 的 {@link Properties}
+         */
+        public Properties toProperties() {
+            Properties properties = new Properties();
+            for (int i = from; i < to; i++)
+                properties.setProperty(snapshot.names[i].substring(prefix.length()), snapshot.namedValues[i]);
+            return properties;
+        }
+
+        private int checkIndex(int index) {
+            if (index < 0 || index >= to - from)
+                throw new IndexOutOfBoundsException("index: " + index + ", size: " + (to - from));
+            return from + index;
+        }
+
+        @Override
+        public String toString() {
+            return "SubTree{prefix='" + prefix + "', size=" + (to - from) + "}";
+        }
+    }
+
+    /**
+     * 快照构建器, 按加入顺序记录属性, 同名属性以后加入的为准. 构建后不能再使用
+     */
+    public static final class Builder {
+
+        private static final int INSERTION_SORT_THRESHOLD = 16;
+
+        private String[] names;
+        private String[] values;
+        private int size;
+
+        private Builder(int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            this.names = new String[capacity];
+            this.values = new String[capacity];
+        }
+
+        public Builder put(String name, String value) {
+            if (name == null || value == null)
+                throw new IllegalArgumentException("name and value cannot be null");
+
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            names[size] = name.intern();
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public PropertiesSnapshot build() {
+            if (size == 0)
+                return EMPTY;
+
+            // 稳定排序, 同名属性保持加入顺序, 去重时保留最后一个
+            mergeSort(names, values, new String[size], new String[size], 0, size);
+
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (n > 0 && names[n - 1].equals(names[i]))
+                    n--;
+                names[n] = names[i];
+                values[n] = values[i];
+                n++;
+            }
+
+            String[] sortedNames = n == names.length ? names : Arrays.copyOf(names, n);
+            String[] sortedValues = n == values.length ? values : Arrays.copyOf(values, n);
+            names = null;
+            values = null;
+            return new PropertiesSnapshot(sortedNames, sortedValues);
+        }
+
+        private static void mergeSort(String[] k, String[] v, String[] tk, String[] tv, int from, int to) {
+            if (to - from <= INSERTION_SORT_THRESHOLD) {
+                for (int i = from + 1; i < to; i++) {
+                    String key = k[i];
+                    String value = v[i];
+                    int j = i - 1;
+                    while (j >= from && k[j].compareTo(key) > 0) {
+                        k[j + 1] = k[j];
+                        v[j + 1] = v[j];
+                        j--;
+                    }
+                    k[j + 1] = key;
+                    v[j + 1] = value;
+                }
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            mergeSort(k, v, tk, tv, from, mid);
+            mergeSort(k, v, tk, tv, mid, to);
+            if (k[mid - 1].compareTo(k[mid]) <= 0)
+                return;
+
+            System.arraycopy(k, from, tk, from, to - from);
+            System.arraycopy(v, from, tv, from, to - from);
+            int i = from, j = mid, o = from;
+            while (i < mid && j < to) {
+                if (tk[i].compareTo(tk[j]) <= 0) {
+                    k[o] = tk[i];
+                    v[o++] = tv[i++];
+                } else {
+                    k[o] = tk[j];
+                    v[o++] = tv[j++];
+                }
+            }
+            while (i < mid) {
+                k[o] = tk[i];
+                v[o++] = tv[i++];
+            }
+            while (j < to) {
+                k[o] = tk[j];
+                v[o++] = tv[j++];
+            }
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 装载因子不超过 0.5 的 2 的幂
+     */
+    private static int tableSizeFor(int size) {
+        int capacity = 2;
+        while (capacity < size * 2)
+            capacity <<= 1;
+        return capacity;
+    }
+}
@@ -0,0 +1,399 @@
+package cm.cfg4j.spring.snapshot;
+
+import cm.cfg4j.spring.Cfg4jPropertyPlaceholderConfigurer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 基于属性快照的类型化访问
+ * <p>
+ * 通过 {@link #intProperty(String, int)} 等方法获取属性句柄, 句柄会缓存针对某个快照解析好的值:
+ * 快照未替换时, 读取只是一次引用比较和字段读取, 没有查找、解析或装箱; 快照替换后只在原始字符串确实变化时才重新解析.
+ * 句柄应当作为字段长期持有, 而不是在每次读取时重新获取.
+ * <p>
+ * 解析失败时记录告警并使用默认值, 每个快照只解析一次.
+ */
+public class TypedProperties {
+
+    private final Logger log = LoggerFactory.getLogger(TypedProperties.class);
+
+    private final AtomicReference<PropertiesSnapshot> holder;
+
+    public TypedProperties() {
+        this(Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder);
+    }
+
+    public TypedProperties(AtomicReference<PropertiesSnapshot> holder) {
+        this.holder = holder;
+    }
+
+    public IntProperty intProperty(String key, int defaultValue) {
+        return new IntProperty(key, defaultValue);
+    }
+
+    public LongProperty longProperty(String key, long defaultValue) {
+        return new LongProperty(key, defaultValue);
+    }
+
+    public DoubleProperty doubleProperty(String key, double defaultValue) {
+        return new DoubleProperty(key, defaultValue);
+    }
+
+    public BooleanProperty booleanProperty(String key, boolean defaultValue) {
+        return new BooleanProperty(key, defaultValue);
+    }
+
+    public ObjectProperty<String> stringProperty(String key, String defaultValue) {
+        return property(key, Function.identity(), defaultValue);
+    }
+
+    /**
+     * @see #parseDuration(String)
+     */
+    public ObjectProperty<Duration> durationProperty(String key, Duration defaultValue) {
+        return property(key, TypedProperties::parseDuration, defaultValue);
+    }
+
+    /**
+     * @see #parseList(String)
+     */
+    public ObjectProperty<List<String>> listProperty(String key) {
+        return property(key, TypedProperties::parseList, Collections.emptyList());
+    }
+
+    public <E extends Enum<E>> ObjectProperty<E> enumProperty(String key, Class<E> enumType, E defaultValue) {
+        return property(key, raw -> parseEnum(enumType, raw), defaultValue);
+    }
+
+    /**
+     * 使用自定义的解析函数, 解析结果应当是不可变对象
+     */
+    public <T> ObjectProperty<T> property(String key, Function<String, T> parser, T defaultValue) {
+        return new ObjectProperty<>(key, parser, defaultValue);
+    }
+
+    /**
+     * 解析时长, 支持 ISO-8601 格式(如 PT15S)以及 500ms, 15s, 5m, 1h, 1d 这样的简写, 不带单位时按毫秒处理
+     */
+    public static Duration parseDuration(String value) {
+        String str = value.trim();
+        if (str.startsWith("P") || str.startsWith("p"))
+            return Duration.parse(str);
+
+        int i = 0;
+        while (i < str.length() && Character.isDigit(str.charAt(i)))
+            i++;
+        if (i == 0)
+            throw new IllegalArgumentException("illegal duration: " + value);
+
+        long amount = Long.parseLong(str.substring(0, i));
+        String unit = str.substring(i).trim().toLowerCase();
+        switch (unit) {
+            case "":
+            case "ms":
+                return Duration.ofMillis(amount);
+            case "s":
+                return Duration.ofSeconds(amount);
+            case "m":
+                return Duration.ofMinutes(amount);
+            case "h":
+                return Duration.ofHours(amount);
+            case "d":
+                return Duration.ofDays(amount);
+            default:
+                throw new IllegalArgumentException("illegal duration unit: " + value);
+        }
+    }
+
+    /**
+     * 按逗号分隔, 去除首尾空白并忽略空项, 返回不可修改的列表
+     */
+    public static List<String> parseList(String value) {
+        List<String> list = new ArrayList<>();
+        for (String item : value.split(",")) {
+            String trimmed = item.trim();
+            if (trimmed.length() > 0)
+                list.add(trimmed);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    static <E extends Enum<E>> E parseEnum(Class<E> enumType, String value) {
+        String name = value.trim();
+        for (E e : enumType.getEnumConstants()) {
+            if (e.name().equalsIgnoreCase(name))
+                return e;
+        }
+        throw new IllegalArgumentException("no enum constant " + enumType.getName() + "." + name);
+    }
+
+    static boolean parseBoolean(String value) {
+        String str = value.trim();
+        if ("true".equalsIgnoreCase(str))
+            return true;
+        if ("false".equalsIgnoreCase(str))
+            return false;
+        throw new IllegalArgumentException("illegal boolean: " + value);
+    }
+
+    /**
+     * 某个快照下的解析结果
+     */
+    static class State {
+        final PropertiesSnapshot snapshot;
+        final String raw;
+
+        State(PropertiesSnapshot snapshot, String raw) {
+            this.snapshot = snapshot;
+            this.raw = raw;
+        }
+    }
+
+    abstract class AbstractProperty<S extends State> {
+
+        final String key;
+
+        private volatile S state;
+
+        AbstractProperty(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        final S current() {
+            S s = state;
+            PropertiesSnapshot snapshot = holder.get();
+            if (s == null || s.snapshot != snapshot)
+                s = refresh(s, snapshot);
+            return s;
+        }
+
+        private S refresh(S s, PropertiesSnapshot snapshot) {
+            String raw = snapshot.get(key);
+
+            S next;
+            if (s != null && Objects.equals(raw, s.raw)) {
+                next = rebind(s, snapshot);
+            } else if (raw == null) {
+                next = defaultState(snapshot, raw);
+            } else {
+                try {
+                    next = parse(snapshot, raw);
+                } catch (RuntimeException e) {
+                    log.warn("illegal value of '{}': {}, use default value", key, raw, e);
+                    next = defaultState(snapshot, raw);
+                }
+            }
+
+            state = next;
+            return next;
+        }
+
+        abstract S parse(PropertiesSnapshot snapshot, String raw);
+
+        abstract S defaultState(PropertiesSnapshot snapshot, String raw);
+
+        /**
+         * 原始值未变化, 只需要把已解析的值关联到新的快照上
+         */
+        abstract S rebind(S s, PropertiesSnapshot snapshot);
+    }
+
+    static final class IntState extends State {
+        final int value;
+
+        IntState(PropertiesSnapshot snapshot, String raw, int value) {
+            super(snapshot, raw);
+            this.value = value;
+        }
+    }
+
+    public final class IntProperty extends AbstractProperty<IntState> {
+        private final int defaultValue;
+
+        IntProperty(String key, int defaultValue) {
+            super(key);
+            this.defaultValue = defaultValue;
+        }
+
+        public int get() {
+            return current().value;
+        }
+
+        @Override
+        IntState parse(PropertiesSnapshot snapshot, String raw) {
+            return new IntState(snapshot, raw, Integer.parseInt(raw.trim()));
+        }
+
+        @Override
+        IntState defaultState(PropertiesSnapshot snapshot, String raw) {
+            return new IntState(snapshot, raw, defaultValue);
+        }
+
+        @Override
+        IntState rebind(IntState s, PropertiesSnapshot snapshot) {
+            return new IntState(snapshot, s.raw, s.value);
+        }
+    }
+
+    static final class LongState extends State {
+        final long value;
+
+        LongState(PropertiesSnapshot snapshot, String raw, long value) {
+            super(snapshot, raw);
+            this.value = value;
+        }
+    }
+
+    public final class LongProperty extends AbstractProperty<LongState> {
+        private final long defaultValue;
+
+        LongProperty(String key, long defaultValue) {
+            super(key);
+            this.defaultValue = defaultValue;
+        }
+
+        public long get() {
+            return current().value;
+        }
+
+        @Override
+        LongState parse(PropertiesSnapshot snapshot, String raw) {
+            return new LongState(snapshot, raw, Long.parseLong(raw.trim()));
+        }
+
+        @Override
+        LongState defaultState(PropertiesSnapshot snapshot, String raw) {
+            return new LongState(snapshot, raw, defaultValue);
+        }
+
+        @Override
+        LongState rebind(LongState s, PropertiesSnapshot snapshot) {
+            return new LongState(snapshot, s.raw, s.value);
+        }
+    }
+
+    static final class DoubleState extends State {
+        final double value;
+
+        DoubleState(PropertiesSnapshot snapshot, String raw, double value) {
+            super(snapshot, raw);
+            this.value = value;
+        }
+    }
+
+    public final class DoubleProperty extends AbstractProperty<DoubleState> {
+        private final double defaultValue;
+
+        DoubleProperty(String key, double defaultValue) {
+            super(key);
+            this.defaultValue = defaultValue;
+        }
+
+        public double get() {
+            return current().value;
+        }
+
+        @Override
+        DoubleState parse(PropertiesSnapshot snapshot, String raw) {
+            return new DoubleState(snapshot, raw, Double.parseDouble(raw.trim()));
+        }
+
+        @Override
+        DoubleState defaultState(PropertiesSnapshot snapshot, String raw) {
+            return new DoubleState(snapshot, raw, defaultValue);
+        }
+
+        @Override
+        DoubleState rebind(DoubleState s, PropertiesSnapshot snapshot) {
+            return new DoubleState(snapshot, s.raw, s.value);
+        }
+    }
+
+    static final class BooleanState extends State {
+        final boolean value;
+
+        BooleanState(PropertiesSnapshot snapshot, String raw, boolean value) {
+            super(snapshot, raw);
+            this.value = value;
+        }
+    }
+
+    public final class BooleanProperty extends AbstractProperty<BooleanState> {
+        private final boolean defaultValue;
+
+        BooleanProperty(String key, boolean defaultValue) {
+            super(key);
+            this.defaultValue = defaultValue;
+        }
+
+        public boolean get() {
+            return current().value;
+        }
+
+        @Override
+        BooleanState parse(PropertiesSnapshot snapshot, String raw) {
+            return new BooleanState(snapshot, raw, parseBoolean(raw));
+        }
+
+        @Override
+        BooleanState defaultState(PropertiesSnapshot snapshot, String raw) {
+            return new BooleanState(snapshot, raw, defaultValue);
+        }
+
+        @Override
+        BooleanState rebind(BooleanState s, PropertiesSnapshot snapshot) {
+            return new BooleanState(snapshot, s.raw, s.value);
+        }
+    }
+
+    static final class ObjectState<T> extends State {
+        final T value;
+
+        ObjectState(PropertiesSnapshot snapshot, String raw, T value) {
+            super(snapshot, raw);
+            this.value = value;
+        }
+    }
+
+    public final class ObjectProperty<T> extends AbstractProperty<ObjectState<T>> {
+        private final Function<String, T> parser;
+        private final T defaultValue;
+
+        ObjectProperty(String key, Function<String, T> parser, T defaultValue) {
+            super(key);
+            this.parser = parser;
+            this.defaultValue = defaultValue;
+        }
+
+        public T get() {
+            return current().value;
+        }
+
+        @Override
+        ObjectState<T> parse(PropertiesSnapshot snapshot, String raw) {
+            return new ObjectState<>(snapshot, raw, parser.apply(raw));
+        }
+
+        @Override
+        ObjectState<T> defaultState(PropertiesSnapshot snapshot, String raw) {
+            return new ObjectState<>(snapshot, raw, defaultValue);
+        }
+
+        @Override
+        ObjectState<T> rebind(ObjectState<T> s, PropertiesSnapshot snapshot) {
+            return new ObjectState<>(snapshot, s.raw, s.value);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package cm.cfg4j.spring.source;
+
+import org.cfg4j.source.ConfigurationSource;
+import org.cfg4j.source.context.environment.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 由多个配置源分层组合而成的配置源
+ * <p>
+ * 启动和每次 reload 时, 各层在有界线程池中并行加载, 总耗时取决于最慢的一层而不是各层之和.
+ * 加载完成后按层的顺序合并, 后面的层覆盖前面的层, 如 git 默认值 -> 数据库 -> 本地文件.
+ * <p>
+ * 某一层加载失败或超时不影响其他层, 该层沿用上一次成功加载的数据(启动时为空), 并在下一次 reload 时重试;
+ * 所有层都失败时 reload 才算失败. 上一轮仍未结束的层在本轮直接跳过, 避免同一个配置源被并发加载.
+ */
+public class CompositeConfigurationSource implements ConfigurationSource, FingerprintAware, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(CompositeConfigurationSource.class);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final List<Layer> layers;
+
+    private final ThreadPoolExecutor executor;
+
+    private final long timeoutMillis;
+
+    private volatile Properties merged = new Properties();
+
+    private volatile String fingerprint;
+
+    /**
+     * @param layers        按优先级从低到高排列的各层
+     * @param threads       并行加载的线程数上限
+     * @param timeoutMillis 每一轮加载等待各层的最长时间
+     */
+    public CompositeConfigurationSource(List<Layer> layers, int threads, long timeoutMillis) {
+        if (layers == null || layers.isEmpty())
+            throw new IllegalArgumentException("layers cannot be empty");
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        if (timeoutMillis <= 0)
+            throw new IllegalArgumentException("timeout must be positive: " + timeoutMillis);
+
+        this.layers = new ArrayList<>(layers);
+        this.timeoutMillis = timeoutMillis;
+
+        int poolSize = Math.min(threads, layers.size());
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(layers.size()), r -> {
+            Thread t = new Thread(r, "cfg4j-composite-" + THREAD_COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public Properties getConfiguration(Environment environment) {
+        Properties prop = new Properties();
+        prop.putAll(merged);
+        return prop;
+    }
+
+    @Override
+    public void init() {
+        loadLayers();
+    }
+
+    @Override
+    public void reload() {
+        loadLayers();
+    }
+
+    @Override
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+
+        for (Layer layer : layers) {
+            if (layer.source instanceof Closeable) {
+                try {
+                    ((Closeable) layer.source).close();
+                } catch (IOException e) {
+                    log.warn("failed to close config layer [{}]", layer.name, e);
+                }
+            }
+        }
+    }
+
+    private synchronized void loadLayers() {
+        List<Future<?>> futures = new ArrayList<>(layers.size());
+        for (Layer layer : layers) {
+            if (layer.loading.compareAndSet(false, true)) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        layer.load();
+                    } finally {
+                        layer.loading.set(false);
+                    }
+                }));
+            } else {
+                log.warn("config layer [{}] is still loading, skip it in this round", layer.name);
+                futures.add(null);
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int succeeded = 0;
+        RuntimeException failure = null;
+        for (int i = 0; i < layers.size(); i++) {
+            Future<?> future = futures.get(i);
+            if (future == null)
+                continue;
+
+            Layer layer = layers.get(i);
+            try {
+                future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                succeeded++;
+            } catch (TimeoutException e) {
+                log.error("config layer [{}] is not loaded in {} ms, use last loaded data", layer.name, timeoutMillis);
+                if (failure == null)
+                    failure = new IllegalStateException("config layer [" + layer.name + "] timed out");
+            } catch (ExecutionException e) {
+                log.error("failed to load config layer [{}], use last loaded data", layer.name, e.getCause());
+                if (failure == null)
+                    failure = new IllegalStateException("failed to load config layer [" + layer.name + "]", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while loading config layers", e);
+            }
+        }
+
+        if (succeeded == 0 && failure != null)
+            throw failure;
+
+        Properties result = new Properties();
+        StringBuilder fp = new StringBuilder();
+        for (Layer layer : layers) {
+            result.putAll(layer.properties);
+            fp.append(layer.fingerprint).append('/');
+        }
+
+        merged = result;
+        fingerprint = fp.toString();
+    }
+
+    /**
+     * 组合中的一层
+     */
+    public static final class Layer {
+
+        private final String name;
+
+        private final ConfigurationSource source;
+
+        private final Environment environment;
+
+        private final AtomicBoolean loading = new AtomicBoolean();
+
+        private boolean initialized;
+
+        private volatile Properties properties = new Properties();
+
+        private volatile String fingerprint = "";
+
+        public Layer(String name, ConfigurationSource source, Environment environment) {
+            this.name = name;
+            this.source = source;
+            this.environment = environment;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 未成功初始化的层在下一轮重试初始化
+         */
+        private void load() {
+            if (initialized) {
+                source.reload();
+            } else {
+                source.init();
+                initialized = true;
+            }
+
+            Properties prop = source.getConfiguration(environment);
+            String fp = source instanceof FingerprintAware ? ((FingerprintAware) source).getFingerprint() : null;
+
+            properties = prop == null ? new Properties() : prop;
+            fingerprint = fp != null ? fp : ContentFingerprint.of(properties);
+        }
+
+        @Override
+        public String toString() {
+            return name + "=" + source;
+        }
+    }
+}
@@ -3,12 +3,14 @@ package cm.cfg4j.spring.source;
 import org.cfg4j.source.ConfigurationSource;
 import org.cfg4j.source.context.environment.Environment;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Properties;
 
 /**
  * Created by Yang Tengfei on 9/23/16.
  */
-public class ConfigurationSourceWrapper implements ConfigurationSource {
+public class ConfigurationSourceWrapper implements ConfigurationSource, Closeable {
 
     private final ConfigurationSource wrapped;
 
@@ -16,6 +18,10 @@ public class ConfigurationSourceWrapper implements ConfigurationSource {
         this.wrapped = wrapped;
     }
 
+    protected ConfigurationSource getWrapped() {
+        return wrapped;
+    }
+
     @Override
     public Properties getConfiguration(Environment environment) {
         return wrapped.getConfiguration(environment);
@@ -36,4 +42,13 @@ public class ConfigurationSourceWrapper implements ConfigurationSource {
     protected void afterReload() {
 
     }
+
+    /**
+     * 关闭被包装的配置源(如果它持有需要释放的资源)
+     */
+    @Override
+    public void close() throws IOException {
+        if (wrapped instanceof Closeable)
+            ((Closeable) wrapped).close();
+    }
 }
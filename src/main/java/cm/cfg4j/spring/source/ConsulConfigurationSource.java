@@ -0,0 +1,258 @@
+package cm.cfg4j.spring.source;
+
+import org.cfg4j.source.ConfigurationSource;
+import org.cfg4j.source.context.environment.Environment;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Properties;
+
+/**
+ * 基于 Consul KV 的配置源
+ * <p>
+ * 通过 Consul 的 HTTP API 一次递归读取 project/profile 下的全部 key, 去掉前缀并把 '/' 换成 '.' 作为属性名,
+ * 如 demo/prod/db/url -&gt; db.url. 不依赖 cfg4j-consul: 它每次都拉取整个 KV 存储, 也不支持阻塞查询.
+ * <p>
+ * {@link #watch(long)} 以上次读取到的 X-Consul-Index 发起阻塞查询, 数据没有变化时请求一直挂起直到超时,
+ * 空闲节点几乎没有流量; 有变化时立即返回, 返回的数据留给下一次 {@link #reload()} 直接使用, 不需要再请求一次.
+ */
+public class ConsulConfigurationSource implements ConfigurationSource, FingerprintAware {
+
+    private final Logger log = LoggerFactory.getLogger(ConsulConfigurationSource.class);
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+    private final String url;
+
+    private final String prefix;
+
+    private String token;
+
+    private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+    private int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+
+    private volatile KvTree current;
+
+    /**
+     * 阻塞查询读到的新数据, 由下一次 reload 使用
+     */
+    private volatile KvTree prefetched;
+
+    /**
+     * @param url     Consul agent 地址, 如 http://localhost:8500
+     * @param project 项目, KV 中的第一级目录
+     * @param profile 环境, 项目下的目录, 可以为空
+     */
+    public ConsulConfigurationSource(String url, String project, String profile) {
+        if (url == null || url.trim().isEmpty())
+            throw new IllegalArgumentException("consul url cannot be empty");
+        if (project == null || project.trim().isEmpty())
+            throw new IllegalArgumentException("project cannot be empty");
+
+        this.url = url.trim().replaceAll("/+$", "");
+
+        String path = trimSlashes(project);
+        String env = profile == null ? "" : trimSlashes(profile);
+        this.prefix = env.isEmpty() ? path + "/" : path + "/" + env + "/";
+    }
+
+    /**
+     * ACL token, 通过 X-Consul-Token 请求头发送
+     */
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * 普通查询的读超时, 阻塞查询在等待时间之上另加这个时间
+     */
+    public void setReadTimeoutMillis(int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public Properties getConfiguration(Environment environment) {
+        KvTree tree = current;
+        if (tree == null)
+            throw new IllegalStateException("Configuration source has to be successfully initialized before you request configuration.");
+
+        Properties prop = new Properties();
+        prop.putAll(tree.properties);
+        return prop;
+    }
+
+    @Override
+    public void init() {
+        current = fetch(0L, 0L);
+    }
+
+    @Override
+    public void reload() {
+        KvTree tree = prefetched;
+        if (tree != null) {
+            prefetched = null;
+            if (current == null || tree.index >= current.index) {
+                current = tree;
+                return;
+            }
+        }
+
+        current = fetch(0L, 0L);
+    }
+
+    @Override
+    public String getFingerprint() {
+        KvTree tree = current;
+        return tree == null ? null : tree.fingerprint;
+    }
+
+    /**
+     * 发起一次阻塞查询, 直到数据发生变化或等待超时
+     *
+     * @return 数据是否发生了变化
+     */
+    public boolean watch(long waitMillis) {
+        KvTree tree = prefetched != null ? prefetched : current;
+        long index = tree == null ? 0L : tree.index;
+
+        KvTree fetched = fetch(index, waitMillis);
+        if (fetched.index == index)
+            return false;
+
+        prefetched = fetched;
+        return tree == null || !fetched.fingerprint.equals(tree.fingerprint);
+    }
+
+    private KvTree fetch(long index, long waitMillis) {
+        StringBuilder query = new StringBuilder(url).append("/v1/kv/").append(encodePath(prefix)).append("?recurse=true");
+        if (index > 0)
+            query.append("&index=").append(index).append("&wait=").append(Math.max(1L, waitMillis / 1000L)).append('s');
+
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(query.toString()).openConnection();
+            conn.setConnectTimeout(connectTimeoutMillis);
+            // Consul 会在等待时间上增加最多 1/16 的随机抖动
+            conn.setReadTimeout((int) Math.min(Integer.MAX_VALUE, readTimeoutMillis + (index > 0 ? waitMillis + waitMillis / 16 : 0L)));
+            if (token != null && token.length() > 0)
+                conn.setRequestProperty("X-Consul-Token", token);
+
+            int status = conn.getResponseCode();
+            long newIndex = parseIndex(conn.getHeaderField("X-Consul-Index"));
+
+            // 前缀下没有任何 key
+            if (status == HttpURLConnection.HTTP_NOT_FOUND)
+                return new KvTree(newIndex, new Properties());
+            if (status != HttpURLConnection.HTTP_OK)
+                throw new IllegalStateException("unexpected response from consul " + query + ": " + status);
+
+            try (InputStream in = conn.getInputStream()) {
+                return new KvTree(newIndex, parse(readFully(in)));
+            }
+        } catch (IOException | JSONException e) {
+            throw new IllegalStateException("Unable to load configuration from consul: " + query, e);
+        } finally {
+            if (conn != null)
+                conn.disconnect();
+        }
+    }
+
+    private Properties parse(String body) {
+        Properties prop = new Properties();
+
+        JSONArray entries = new JSONArray(body);
+        for (int i = 0; i < entries.length(); i++) {
+            JSONObject entry = entries.getJSONObject(i);
+            String key = entry.getString("Key");
+            if (!key.startsWith(prefix) || key.endsWith("/") || entry.isNull("Value"))
+                continue;
+
+            String value = new String(Base64.getDecoder().decode(entry.getString("Value")), StandardCharsets.UTF_8);
+            prop.setProperty(key.substring(prefix.length()).replace('/', '.'), value);
+        }
+        return prop;
+    }
+
+    /**
+     * 缺少或无法解析 X-Consul-Index 时返回 0, 之后的查询不会阻塞
+     */
+    private long parseIndex(String header) {
+        if (header == null)
+            return 0L;
+        try {
+            return Math.max(0L, Long.parseLong(header.trim()));
+        } catch (NumberFormatException e) {
+            log.warn("invalid X-Consul-Index: {}", header);
+            return 0L;
+        }
+    }
+
+    private static String encodePath(String path) {
+        StringBuilder sb = new StringBuilder();
+        for (String segment : path.split("/")) {
+            try {
+                sb.append(URLEncoder.encode(segment, "UTF-8").replace("+", "%20")).append('/');
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1)
+            out.write(buf, 0, n);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String trimSlashes(String str) {
+        return str.trim().replaceAll("^/+|/+$", "");
+    }
+
+    @Override
+    public String toString() {
+        return "ConsulConfigurationSource{" +
+            "url='" + url + '\'' +
+            ", prefix='" + prefix + '\'' +
+            '}';
+    }
+
+    /**
+     * 一次查询的结果
+     */
+    private static final class KvTree {
+
+        private final long index;
+
+        private final Properties properties;
+
+        private final String fingerprint;
+
+        private KvTree(long index, Properties properties) {
+            this.index = index;
+            this.properties = properties;
+            this.fingerprint = ContentFingerprint.of(properties);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package cm.cfg4j.spring.source;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 与顺序无关的 64 位内容指纹: 每个条目单独哈希后求和, 因此可以在增删改单个条目时增量维护.
+ * <p>
+ * 字符串使用 FNV-1a 64 位哈希, 不依赖 {@link String#hashCode()}, 避免 "Aa"/"BB" 这类 32 位哈希碰撞导致的变更被忽略.
+ */
+public final class ContentFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long value;
+
+    public ContentFingerprint() {
+    }
+
+    public ContentFingerprint(long value) {
+        this.value = value;
+    }
+
+    public void add(String scope, String key, String value) {
+        this.value += entryHash(scope, key, value);
+    }
+
+    public void remove(String scope, String key, String value) {
+        this.value -= entryHash(scope, key, value);
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toHexString(value);
+    }
+
+    public static String of(Properties properties) {
+        ContentFingerprint fingerprint = new ContentFingerprint();
+        if (properties != null) {
+            for (Map.Entry<Object, Object> e : properties.entrySet())
+                fingerprint.add(null, String.valueOf(e.getKey()), String.valueOf(e.getValue()));
+        }
+        return fingerprint.toString();
+    }
+
+    static long entryHash(String scope, String key, String value) {
+        long h = FNV_OFFSET;
+        h = hash(h, scope);
+        h = hash(h, key);
+        h = hash(h, value);
+        return mix(h);
+    }
+
+    private static long hash(long h, String s) {
+        if (s == null)
+            return (h ^ 0xff) * FNV_PRIME;
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            h = (h ^ (c & 0xff)) * FNV_PRIME;
+            h = (h ^ (c >>> 8)) * FNV_PRIME;
+        }
+        // 分隔符, 保证 ("ab", "c") 与 ("a", "bc") 的哈希不同
+        return (h ^ 0x100) * FNV_PRIME;
+    }
+
+    /**
+     * murmur3 的 64 位终结函数, 使求和后的结果分布更均匀
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,79 +1,618 @@
 package cm.cfg4j.spring.source;
 
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
 import org.cfg4j.source.ConfigurationSource;
 import org.cfg4j.source.context.environment.Environment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.*;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  * 基于数据库的配置源
  * <p>
+ * 默认每次 reload 都全量查询; 开启增量模式后, 以 UPDATE_AT 作为水位线只拉取变更过的行,
+ * 软删除的行会从结果中移除, 并且每隔 N 次增量加载做一次全量同步, 以兜底物理删除等无法增量感知的变更.
+ * <p>
+ * 连接由 {@link DatabaseConnectionManager} 管理, 可以注入外部的 {@link DataSource}, 否则使用内置的单连接保活模式.
+ * <p>
+ * 指定 profile 后进入流式模式: 只查询该 profile 的行, 以只读游标按 fetchSize 分批读取, 逐行直接写入
+ * {@link PropertiesSnapshot.Builder}, 一次遍历得到最终的只读快照, 并通过 {@link SnapshotAware} 交给上层,
+ * 中间不产生 {@link Properties}. 只有通过 cfg4j 接口读取配置时, 才按需从快照物化一份 Properties.
+ * MySQL 驱动需要在 url 中加上 useCursorFetch=true, fetchSize 才会生效.
+ * <p>
+ * 还可以指定回退链, 如 prod -&gt; default: 通过 profile IN (...) 一次查询链上所有 profile, 每个 profile 单独成层,
+ * 前面的 profile 覆盖后面的. 各层与合并后的快照共享同一批字符串, 只多出引用数组的开销.
+ * <p>
+ * 同一时刻最多只有一次加载在执行, 并发的首次读取和 reload 共享同一个进行中的 {@link CompletableFuture}, 不会重复查询.
+ * 已有数据后读取只读取当前快照, 从不等待加载. 开启 stale-while-revalidate 后加载在后台线程执行,
+ * reload 最多等待 revalidateTimeout, 超时后继续使用旧数据返回, 查询在后台完成后下一次读取即可看到新数据.
+ * <p>
  * Created by Yang Tengfei on 9/25/16.
  */
-public class DatabaseConfigurationSource implements ConfigurationSource {
+public class DatabaseConfigurationSource implements ConfigurationSource, FingerprintAware, SnapshotAware, Closeable {
 
     private final Logger log = LoggerFactory.getLogger(DatabaseConfigurationSource.class);
 
-    private final String driver;
-    private final String url;
-    private final String user;
-    private final String password;
+    private final DatabaseConnectionManager connectionManager;
+
     private final String tableName;
 
     private final String project;
 
     private final AtomicReference<Map<String, Properties>> propertiesHolder = new AtomicReference<>();
 
-    private static final String SQL = "SELECT `profile`, `key`, `value` " +
+    private static final String SQL = "SELECT `profile`, `key`, `value`, `update_at` " +
         " FROM %s where project = ?";
 
+    private static final String DELTA_SQL = "SELECT `profile`, `key`, `value`, `update_at`%s " +
+        " FROM %s where project = ? and update_at >= ?";
+
+    private static final String PROFILE_SQL = "SELECT `profile`, `key`, `value`, `update_at` " +
+        " FROM %s where project = ? and profile IN (%s)";
+
+    private static final String PROFILE_DELTA_SQL = "SELECT `profile`, `key`, `value`, `update_at`%s " +
+        " FROM %s where project = ? and profile IN (%s) and update_at >= ?";
+
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * 增量查询时水位线向前回退的时间, 避免同一秒内或晚提交的事务中的更新被漏掉
+     */
+    private static final long DELTA_OVERLAP_MILLIS = 5000L;
+
+    private static final int DEFAULT_FULL_SYNC_CYCLES = 20;
+
+    private static final long DEFAULT_REVALIDATE_TIMEOUT_MILLIS = 1000L;
+
+    /**
+     * 是否开启基于 UPDATE_AT 的增量加载
+     */
+    private boolean incremental;
+
+    /**
+     * 每隔多少次增量加载做一次全量同步
+     */
+    private int fullSyncCycles = DEFAULT_FULL_SYNC_CYCLES;
+
+    /**
+     * 软删除标记列, 值不为 0 表示该行已删除; 为空时不处理软删除
+     */
+    private String deletedColumn;
+
+    /**
+     * 已加载数据中最大的 UPDATE_AT
+     */
+    private volatile Timestamp watermark;
+
+    private int deltaCycles;
+
+    /**
+     * 当前已加载数据(所有 profile)的内容指纹, 在加载过程中顺带计算, 增量加载时增量维护
+     */
+    private volatile long fingerprint;
+
+    private volatile boolean loaded;
+
+    /**
+     * 流式模式下加载的 profile 回退链, 优先级从高到低; 为空时加载项目下所有 profile
+     */
+    private List<String> profiles = Collections.emptyList();
+
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /**
+     * 流式模式下当前的快照, 及按需物化的 Properties
+     */
+    private volatile Loaded current;
+
+    /**
+     * 进行中的加载, 没有加载时为 null
+     */
+    private final AtomicReference<CompletableFuture<Void>> inFlight = new AtomicReference<>();
+
+    private boolean staleWhileRevalidate;
+
+    private long revalidateTimeoutMillis = DEFAULT_REVALIDATE_TIMEOUT_MILLIS;
+
+    /**
+     * stale-while-revalidate 模式下执行加载的后台线程
+     */
+    private ExecutorService loader;
+
     public DatabaseConfigurationSource(String driver, String url, String user, String password, String tableName, String project) {
-        this.driver = driver;
-        this.url = url;
-        this.user = user;
-        this.password = password;
+        this(new DatabaseConnectionManager(driver, url, user, password), tableName, project);
+    }
+
+    public DatabaseConfigurationSource(DataSource dataSource, String tableName, String project) {
+        this(new DatabaseConnectionManager(dataSource), tableName, project);
+    }
+
+    public DatabaseConfigurationSource(DatabaseConnectionManager connectionManager, String tableName, String project) {
+        this.connectionManager = connectionManager;
         this.tableName = tableName;
         this.project = project;
     }
 
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public void setFullSyncCycles(int fullSyncCycles) {
+        if (fullSyncCycles <= 0)
+            throw new IllegalArgumentException("fullSyncCycles must be positive: " + fullSyncCycles);
+        this.fullSyncCycles = fullSyncCycles;
+    }
+
+    public void setDeletedColumn(String deletedColumn) {
+        this.deletedColumn = deletedColumn;
+    }
+
+    /**
+     * 只加载指定 profile 并开启流式模式
+     */
+    public void setProfile(String profile) {
+        setProfiles(profile == null || profile.isEmpty() ? Collections.emptyList() : Collections.singletonList(profile));
+    }
+
+    /**
+     * 只加载指定的 profile 回退链并开启流式模式, 如 [prod, default], 前面的 profile 优先
+     */
+    public void setProfiles(List<String> profiles) {
+        // 配置表的 profile 列通常使用不区分大小写的排序规则, 只有大小写不同的 profile 会匹配相同的行
+        if (profiles != null && profiles.stream().map(p -> p.toLowerCase(Locale.ROOT)).collect(Collectors.toSet()).size() != profiles.size())
+            throw new IllegalArgumentException("duplicate profile in fallback chain: " + profiles);
+        this.profiles = profiles == null ? Collections.emptyList() : new ArrayList<>(profiles);
+    }
+
+    /**
+     * 开启后加载在后台线程执行, 已有数据时 reload 最多等待 revalidateTimeout
+     */
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    public void setRevalidateTimeoutMillis(long revalidateTimeoutMillis) {
+        if (revalidateTimeoutMillis < 0)
+            throw new IllegalArgumentException("revalidateTimeout cannot be negative: " + revalidateTimeoutMillis);
+        this.revalidateTimeoutMillis = revalidateTimeoutMillis;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 0)
+            throw new IllegalArgumentException("fetchSize cannot be negative: " + fetchSize);
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public PropertiesSnapshot getSnapshot() {
+        Loaded loaded = current;
+        return loaded == null ? null : loaded.snapshot;
+    }
+
+    @Override
+    public String getFingerprint() {
+        return loaded ? Long.toHexString(fingerprint) : null;
+    }
+
     @Override
     public Properties getConfiguration(Environment environment) {
-        Map<String, Properties> prop = propertiesHolder.get();
-        if (prop == null) {
-            synchronized (propertiesHolder) {
-                propertiesHolder.set(loadFromDatabase());
+        if (isStreaming())
+            return getStreamingConfiguration(environment);
+
+        Map<String, Properties> all = propertiesHolder.get();
+        if (all == null) {
+            await(load());
+            all = propertiesHolder.get();
+        }
+
+        return all.get(environment.getName());
+    }
+
+    private Properties getStreamingConfiguration(Environment environment) {
+        if (!profiles.get(0).equals(environment.getName()))
+            throw new IllegalArgumentException("only profile " + profiles + " is loaded, cannot serve: " + environment.getName());
+
+        Loaded loaded = current;
+        if (loaded == null) {
+            await(load());
+            loaded = current;
+        }
+
+        return loaded.toProperties();
+    }
+
+    private boolean hasData() {
+        return isStreaming() ? current != null : propertiesHolder.get() != null;
+    }
+
+    /**
+     * 发起一次加载; 已有进行中的加载时直接返回它, 不再重复查询
+     */
+    private CompletableFuture<Void> load() {
+        while (true) {
+            CompletableFuture<Void> running = inFlight.get();
+            if (running != null)
+                return running;
+
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            if (!inFlight.compareAndSet(null, future))
+                continue;
+
+            Runnable task = () -> {
+                try {
+                    loadFromDatabase();
+                    // 先清除再完成, 之后发起的 reload 一定会重新查询
+                    inFlight.compareAndSet(future, null);
+                    future.complete(null);
+                } catch (Throwable e) {
+                    inFlight.compareAndSet(future, null);
+                    future.completeExceptionally(e);
+                }
+            };
+
+            if (!staleWhileRevalidate) {
+                task.run();
+                return future;
+            }
+
+            try {
+                loader().execute(task);
+            } catch (RejectedExecutionException e) {
+                inFlight.compareAndSet(future, null);
+                future.completeExceptionally(new IllegalStateException("configuration source of project " + project + " is closed", e));
+            }
+            return future;
+        }
+    }
+
+    private ExecutorService loader() {
+        synchronized (inFlight) {
+            if (loader == null) {
+                loader = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "cfg4j-db-loader-" + project);
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return loader;
+        }
+    }
+
+    private void await(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException("failed to load configuration of project " + project, cause);
+        }
+    }
+
+    private synchronized Map<String, Properties> loadFromDatabase() {
+        boolean delta = incremental && watermark != null && deltaCycles < fullSyncCycles;
+
+        if (isStreaming()) {
+            if (delta && current != null) {
+                deltaCycles++;
+                loadProfileDelta(current);
+            } else {
+                deltaCycles = 0;
+                loadProfile();
+            }
+            return null;
+        }
+
+        Map<String, Properties> all = propertiesHolder.get();
+        if (delta && all != null) {
+            deltaCycles++;
+            return loadDelta(all);
+        }
+
+        deltaCycles = 0;
+        return loadAll();
+    }
+
+    private boolean isStreaming() {
+        return !profiles.isEmpty();
+    }
+
+    private String profilePlaceholders() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < profiles.size(); i++)
+            sb.append(i == 0 ? "?" : ", ?");
+        return sb.toString();
+    }
+
+    /**
+     * 流式全量加载 profile 回退链, 逐行写入所属 profile 的快照构建器
+     */
+    private void loadProfile() {
+        String sql = String.format(PROFILE_SQL, tableName, profilePlaceholders());
+        if (hasDeletedColumn())
+            sql += " and `" + deletedColumn + "` = 0";
+
+        ContentFingerprint fp = new ContentFingerprint();
+        PropertiesSnapshot.Builder[] builders = new PropertiesSnapshot.Builder[profiles.size()];
+        for (int i = 0; i < builders.length; i++)
+            builders[i] = PropertiesSnapshot.builder(current == null ? 0 : current.layers[i].size());
+
+        watermark = connectionManager.execute(sql, ps -> {
+            ps.setFetchSize(fetchSize);
+            ps.setString(1, project);
+            for (int i = 0; i < profiles.size(); i++)
+                ps.setString(2 + i, profiles.get(i));
+
+            Timestamp maxUpdateAt = null;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String profile = rs.getString(1);
+                    String key = rs.getString(2);
+                    String value = rs.getString(3);
+
+                    int layer = layerOf(profile);
+                    if (layer < 0)
+                        continue;
+
+                    builders[layer].put(key, value);
+                    fp.add(profiles.get(layer), key, value);
+                    maxUpdateAt = max(maxUpdateAt, rs.getTimestamp(4));
+                }
             }
+            return maxUpdateAt;
+        });
+
+        log.debug("loaded profiles {} of project {}", profiles, project);
+
+        // 内容未变化时沿用旧快照, 省去排序和建表
+        if (current == null || fp.getValue() != fingerprint) {
+            PropertiesSnapshot[] layers = new PropertiesSnapshot[builders.length];
+            for (int i = 0; i < builders.length; i++)
+                layers[i] = builders[i].build();
+            current = new Loaded(layers);
         }
+        fingerprint = fp.getValue();
+        loaded = true;
+    }
+
+    /**
+     * 流式增量加载 profile 回退链, 只重建有变化的层, 再合并各层
+     */
+    private void loadProfileDelta(Loaded previous) {
+        final Timestamp since = watermark;
+        ContentFingerprint fp = new ContentFingerprint(fingerprint);
 
-        return propertiesHolder.get().get(environment.getName());
+        // 每一层变更的 key, 值为 null 表示删除
+        List<Map<String, String>> changed = new ArrayList<>(profiles.size());
+        for (int i = 0; i < profiles.size(); i++)
+            changed.add(new HashMap<>());
+
+        String sql = String.format(PROFILE_DELTA_SQL, hasDeletedColumn() ? ", `" + deletedColumn + "` AS deleted" : "", tableName, profilePlaceholders());
+        watermark = connectionManager.execute(sql, ps -> {
+            ps.setFetchSize(fetchSize);
+            ps.setString(1, project);
+            for (int i = 0; i < profiles.size(); i++)
+                ps.setString(2 + i, profiles.get(i));
+            ps.setTimestamp(2 + profiles.size(), new Timestamp(since.getTime() - DELTA_OVERLAP_MILLIS));
+
+            Timestamp maxUpdateAt = since;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String profile = rs.getString(1);
+                    String key = rs.getString(2);
+                    String value = rs.getString(3);
+                    boolean deleted = hasDeletedColumn() && rs.getInt(5) != 0;
+
+                    int layer = layerOf(profile);
+                    if (layer < 0)
+                        continue;
+
+                    profile = profiles.get(layer);
+                    Map<String, String> layerChanges = changed.get(layer);
+                    String oldValue = layerChanges.containsKey(key) ? layerChanges.get(key) : previous.layers[layer].get(key);
+                    if (deleted ? oldValue != null : !value.equals(oldValue)) {
+                        if (oldValue != null)
+                            fp.remove(profile, key, oldValue);
+
+                        if (deleted) {
+                            layerChanges.put(key, null);
+                        } else {
+                            layerChanges.put(key, value);
+                            fp.add(profile, key, value);
+                        }
+                    }
+
+                    maxUpdateAt = max(maxUpdateAt, rs.getTimestamp(4));
+                }
+            }
+            return maxUpdateAt;
+        });
+
+        PropertiesSnapshot[] layers = previous.layers.clone();
+        boolean anyChanged = false;
+        for (int i = 0; i < layers.length; i++) {
+            Map<String, String> layerChanges = changed.get(i);
+            if (layerChanges.isEmpty())
+                continue;
+
+            log.debug("{} keys of project {} profile {} changed since {}", layerChanges.size(), project, profiles.get(i), since);
+            layers[i] = applyChanges(layers[i], layerChanges);
+            anyChanged = true;
+        }
+
+        if (!anyChanged)
+            return;
+
+        fingerprint = fp.getValue();
+        current = new Loaded(layers);
     }
 
-    private Map<String, Properties> loadFromDatabase() {
+    private static PropertiesSnapshot applyChanges(PropertiesSnapshot old, Map<String, String> changes) {
+        PropertiesSnapshot.Builder builder = PropertiesSnapshot.builder(old.size() + changes.size());
+        for (int i = 0; i < old.size(); i++) {
+            String key = old.nameAt(i);
+            if (!changes.containsKey(key))
+                builder.put(key, old.valueAt(i));
+        }
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() != null)
+                builder.put(e.getKey(), e.getValue());
+        }
+        return builder.build();
+    }
+
+    private Map<String, Properties> loadAll() {
         Map<String, Properties> propMap = new ConcurrentHashMap<>();
 
         String sql = String.format(SQL, tableName);
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+        if (hasDeletedColumn())
+            sql += " and `" + deletedColumn + "` = 0";
+
+        ContentFingerprint fp = new ContentFingerprint();
+        watermark = connectionManager.execute(sql, ps -> {
             ps.setString(1, project);
 
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                addToMap(propMap, rs.getString("profile"), rs.getString("key"), rs.getString("value"));
+            Timestamp maxUpdateAt = null;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String profile = rs.getString("profile");
+                    String key = rs.getString("key");
+                    String value = rs.getString("value");
+
+                    addToMap(propMap, profile, key, value);
+                    fp.add(profile, key, value);
+                    maxUpdateAt = max(maxUpdateAt, rs.getTimestamp("update_at"));
+                }
             }
-            rs.close();
-        } catch (SQLException e) {
-            throw new IllegalStateException("failed to execute sql", e);
-        }
+            return maxUpdateAt;
+        });
 
+        fingerprint = fp.getValue();
+        loaded = true;
         propertiesHolder.set(propMap);
         return propMap;
     }
 
+    /**
+     * 只拉取水位线之后变更的行, 并以写时复制的方式应用到受影响的 profile 上, 正在读取旧快照的调用方不受影响.
+     * 重叠窗口内重复读到的未变化的行不会产生新的快照
+     */
+    private Map<String, Properties> loadDelta(Map<String, Properties> current) {
+        Map<String, Properties> changed = new ConcurrentHashMap<>();
+        final Timestamp since = watermark;
+        ContentFingerprint fp = new ContentFingerprint(fingerprint);
+
+        String sql = String.format(DELTA_SQL, hasDeletedColumn() ? ", `" + deletedColumn + "` AS deleted" : "", tableName);
+        watermark = connectionManager.execute(sql, ps -> {
+            ps.setString(1, project);
+            ps.setTimestamp(2, new Timestamp(since.getTime() - DELTA_OVERLAP_MILLIS));
+
+            Timestamp maxUpdateAt = since;
+            int rows = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String profile = rs.getString("profile");
+                    String key = rs.getString("key");
+                    String value = rs.getString("value");
+                    boolean deleted = hasDeletedColumn() && rs.getInt("deleted") != 0;
+
+                    Properties prop = changed.get(profile);
+                    Properties view = prop != null ? prop : current.get(profile);
+                    String old = view == null ? null : view.getProperty(key);
+
+                    if (deleted ? old != null : !value.equals(old)) {
+                        if (prop == null) {
+                            prop = new Properties();
+                            if (view != null)
+                                prop.putAll(view);
+                            changed.put(profile, prop);
+                        }
+
+                        if (old != null)
+                            fp.remove(profile, key, old);
+
+                        if (deleted) {
+                            prop.remove(key);
+                        } else {
+                            prop.setProperty(key, value);
+                            fp.add(profile, key, value);
+                        }
+                    }
+
+                    maxUpdateAt = max(maxUpdateAt, rs.getTimestamp("update_at"));
+                    rows++;
+                }
+            }
+
+            log.debug("loaded {} changed rows of project {} since {}", rows, project, since);
+            return maxUpdateAt;
+        });
+
+        if (changed.isEmpty())
+            return current;
+
+        fingerprint = fp.getValue();
+        Map<String, Properties> propMap = new ConcurrentHashMap<>(current);
+        propMap.putAll(changed);
+
+        propertiesHolder.set(propMap);
+        return propMap;
+    }
+
+    /**
+     * 查询结果中的 profile 对应回退链中的第几层. 数据库按排序规则匹配 profile IN (...), 不区分大小写时返回的
+     * profile 可能与配置的写法不同, 此时按忽略大小写匹配; 仍然匹配不上的行被忽略
+     */
+    private int layerOf(String profile) {
+        int layer = profiles.indexOf(profile);
+        if (layer >= 0)
+            return layer;
+
+        for (int i = 0; i < profiles.size(); i++) {
+            if (profiles.get(i).equalsIgnoreCase(profile))
+                return i;
+        }
+
+        log.warn("ignore rows of unexpected profile '{}', project {} loads profiles {}", profile, project, profiles);
+        return -1;
+    }
+
+    private boolean hasDeletedColumn() {
+        return deletedColumn != null && deletedColumn.length() > 0;
+    }
+
+    private static Timestamp max(Timestamp a, Timestamp b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        return a.after(b) ? a : b;
+    }
+
     private void addToMap(Map<String, Properties> propMap, String profile, String key, String value) {
         Properties prop = propMap.get(profile);
         if (prop == null) {
@@ -91,15 +630,70 @@ public class DatabaseConfigurationSource implements ConfigurationSource {
 
     @Override
     public void reload() {
-        loadFromDatabase();
-    }
+        CompletableFuture<Void> future = load();
+        if (!staleWhileRevalidate || !hasData()) {
+            await(future);
+            return;
+        }
 
-    private Connection getConnection() {
         try {
-            Class.forName(driver);
-            return DriverManager.getConnection(url, user, password);
-        } catch (ClassNotFoundException | SQLException e) {
-            throw new IllegalArgumentException("please check properties from config file", e);
+            future.get(revalidateTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("reload of project {} is still running after {} ms, keep serving the previous configuration", project, revalidateTimeoutMillis);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException("failed to reload configuration of project " + project, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (inFlight) {
+            if (loader != null)
+                loader.shutdownNow();
+        }
+        connectionManager.close();
+    }
+
+    /**
+     * 流式模式下加载的各层快照及合并后的快照, cfg4j 接口需要 Properties 时才物化一次
+     */
+    private static final class Loaded {
+
+        private final PropertiesSnapshot[] layers;
+
+        private final PropertiesSnapshot snapshot;
+
+        private volatile Properties properties;
+
+        private Loaded(PropertiesSnapshot[] layers) {
+            this.layers = layers;
+            this.snapshot = layers.length == 1 ? layers[0] : merge(layers);
+        }
+
+        /**
+         * 从优先级最低的层开始加入, 同名属性以后加入的为准
+         */
+        private static PropertiesSnapshot merge(PropertiesSnapshot[] layers) {
+            int size = 0;
+            for (PropertiesSnapshot layer : layers)
+                size += layer.size();
+
+            PropertiesSnapshot.Builder builder = PropertiesSnapshot.builder(size);
+            for (int i = layers.length - 1; i >= 0; i--) {
+                for (int j = 0; j < layers[i].size(); j++)
+                    builder.put(layers[i].nameAt(j), layers[i].valueAt(j));
+            }
+            return builder.build();
+        }
+
+        private Properties toProperties() {
+            Properties prop = properties;
+            if (prop == null)
+                properties = prop = snapshot.toProperties();
+            return prop;
         }
     }
 }
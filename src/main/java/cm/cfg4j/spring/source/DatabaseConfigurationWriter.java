@@ -0,0 +1,202 @@
+package cm.cfg4j.spring.source;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * 批量写入数据库配置
+ * <p>
+ * 一组变更(某个项目下某个 profile 的多个 key)在同一个事务中通过 JDBC 批处理写入, 提交前读取方看不到其中任何一行,
+ * 提交后一次全部可见, 不会读到只应用了一部分的中间状态. UPDATE_AT 取数据库的 CURRENT_TIMESTAMP, 与增量加载的水位线
+ * 使用同一个时钟, 不受应用服务器时钟偏差影响; 值未变化的行保留原来的 UPDATE_AT, 增量加载只会拉取真正变化的行.
+ * <p>
+ * 版本号只由配置表上的触发器(见 config.sql)递增, 这里不再重复递增, 人工修改配置表也同样会被推送模式感知.
+ * 事务开始时用 SELECT ... FOR UPDATE 锁定版本表中该项目的行, 并发写入同一个项目的事务因此串行执行;
+ * 推送模式下读取方通过版本号变化感知这次写入, 在事务提交之后才做增量查询. 增量读取方要完整看到每次写入必须配置版本表,
+ * 见 {@link #setVersionTable}.
+ * <p>
+ * 配置了软删除列时删除操作只做标记, 否则物理删除; 物理删除无法被增量加载感知, 要等到下一次全量同步.
+ * MySQL 驱动需要在 url 中加上 rewriteBatchedStatements=true, 批处理才会合并成多值语句.
+ */
+public class DatabaseConfigurationWriter {
+
+    private final Logger log = LoggerFactory.getLogger(DatabaseConfigurationWriter.class);
+
+    private static final String UPSERT_SQL = "INSERT INTO %1$s (project, profile, `key`, `value`, update_at%2$s) VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP%3$s)" +
+        " ON DUPLICATE KEY UPDATE update_at = CASE WHEN `value` = VALUES(`value`)%4$s THEN update_at ELSE VALUES(update_at) END," +
+        " `value` = VALUES(`value`)%5$s";
+
+    private static final String SOFT_DELETE_SQL = "UPDATE %s SET `%s` = 1, update_at = CURRENT_TIMESTAMP WHERE project = ? and profile = ? and `key` = ? and `%2$s` = 0";
+
+    private static final String DELETE_SQL = "DELETE FROM %s WHERE project = ? and profile = ? and `key` = ?";
+
+    private static final String LOCK_VERSION_SQL = "SELECT version FROM %s WHERE project = ? FOR UPDATE";
+
+    private static final String INIT_VERSION_SQL = "INSERT IGNORE INTO %s (project, version) VALUES (?, 0)";
+
+    private static final String VERSION_SQL = "SELECT version FROM %s WHERE project = ?";
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final DatabaseConnectionManager connectionManager;
+
+    private final String tableName;
+
+    private String versionTable = "TB_CONFIG_VERSION";
+
+    private String deletedColumn;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public DatabaseConfigurationWriter(DataSource dataSource, String tableName) {
+        this(new DatabaseConnectionManager(dataSource), tableName);
+    }
+
+    public DatabaseConfigurationWriter(DatabaseConnectionManager connectionManager, String tableName) {
+        this.connectionManager = connectionManager;
+        this.tableName = tableName;
+    }
+
+    /**
+     * 版本表, 为 null 时不锁定版本行
+     * <p>
+     * 不维护版本号时写入不再串行, 增量读取方也只能按周期轮询: UPDATE_AT 是语句执行的时间而不是提交的时间,
+     * 提交晚于水位线回退窗口的事务中的行会被增量加载漏掉, 直到下一次全量同步才可见. 只有全量读取方时才可以不配置.
+     */
+    public void setVersionTable(String versionTable) {
+        if (versionTable == null || versionTable.isEmpty())
+            log.warn("no version table for {}, incremental readers may miss late committed changes until the next full sync", tableName);
+        this.versionTable = versionTable;
+    }
+
+    /**
+     * 软删除标记列, 为空时物理删除
+     */
+    public void setDeletedColumn(String deletedColumn) {
+        this.deletedColumn = deletedColumn;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 在一个事务中应用一组变更
+     *
+     * @param changes key -&gt; 新的值, 值为 null 表示删除该 key
+     * @return 写入后项目的版本号(包含触发器在本事务中的递增), 未配置版本表时返回 0
+     */
+    public long apply(String project, String profile, Map<String, String> changes) {
+        if (project == null || project.isEmpty())
+            throw new IllegalArgumentException("project cannot be empty");
+        if (profile == null || profile.isEmpty())
+            throw new IllegalArgumentException("profile cannot be empty");
+
+        long start = System.nanoTime();
+        long version = connectionManager.executeInTransaction(conn -> {
+            // 先锁定版本行, 同一个项目的写入串行执行
+            if (hasVersionTable())
+                lockVersion(conn, project);
+
+            int puts = 0;
+            int removes = 0;
+            try (PreparedStatement upsert = conn.prepareStatement(upsertSql());
+                 PreparedStatement delete = conn.prepareStatement(deleteSql())) {
+                for (Map.Entry<String, String> e : changes.entrySet()) {
+                    if (e.getKey() == null)
+                        throw new IllegalArgumentException("key cannot be null");
+
+                    if (e.getValue() != null) {
+                        upsert.setString(1, project);
+                        upsert.setString(2, profile);
+                        upsert.setString(3, e.getKey());
+                        upsert.setString(4, e.getValue());
+                        upsert.addBatch();
+                        if (++puts % batchSize == 0)
+                            upsert.executeBatch();
+                    } else {
+                        delete.setString(1, project);
+                        delete.setString(2, profile);
+                        delete.setString(3, e.getKey());
+                        delete.addBatch();
+                        if (++removes % batchSize == 0)
+                            delete.executeBatch();
+                    }
+                }
+
+                if (puts % batchSize != 0)
+                    upsert.executeBatch();
+                if (removes % batchSize != 0)
+                    delete.executeBatch();
+            }
+
+            return hasVersionTable() ? readVersion(conn, project) : 0L;
+        });
+
+        log.info("applied {} changes to {}:{} in {} ms, version: {}", changes.size(), project, profile,
+            (System.nanoTime() - start) / 1000000L, version);
+        return version;
+    }
+
+    /**
+     * 锁定项目的版本行, 行不存在时先以版本号 0 插入
+     * <p>
+     * 项目的第一次写入并发发生时插入可能死锁, 数据库会回滚其中一个事务, 调用方重试即可.
+     */
+    private void lockVersion(Connection conn, String project) throws SQLException {
+        try (PreparedStatement lock = conn.prepareStatement(String.format(LOCK_VERSION_SQL, versionTable))) {
+            lock.setString(1, project);
+            try (ResultSet rs = lock.executeQuery()) {
+                if (rs.next())
+                    return;
+            }
+
+            try (PreparedStatement init = conn.prepareStatement(String.format(INIT_VERSION_SQL, versionTable))) {
+                init.setString(1, project);
+                init.executeUpdate();
+            }
+            try (ResultSet rs = lock.executeQuery()) {
+                if (!rs.next())
+                    throw new IllegalStateException("version row of project " + project + " is missing in " + versionTable);
+            }
+        }
+    }
+
+    private long readVersion(Connection conn, String project) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(String.format(VERSION_SQL, versionTable))) {
+            ps.setString(1, project);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        }
+    }
+
+    private String upsertSql() {
+        if (!hasDeletedColumn())
+            return String.format(UPSERT_SQL, tableName, "", "", "", "");
+
+        String column = "`" + deletedColumn + "`";
+        return String.format(UPSERT_SQL, tableName, ", " + column, ", 0", " and " + column + " = 0", ", " + column + " = 0");
+    }
+
+    private String deleteSql() {
+        return hasDeletedColumn() ? String.format(SOFT_DELETE_SQL, tableName, deletedColumn) : String.format(DELETE_SQL, tableName);
+    }
+
+    private boolean hasVersionTable() {
+        return versionTable != null && versionTable.length() > 0;
+    }
+
+    private boolean hasDeletedColumn() {
+        return deletedColumn != null && deletedColumn.length() > 0;
+    }
+}
@@ -0,0 +1,216 @@
+package cm.cfg4j.spring.source;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 数据库配置源使用的连接管理
+ * <p>
+ * 有两种模式:
+ * <ul>
+ * <li>注入 {@link DataSource}: 每次执行时从连接池借出连接, 用完归还, 连接保活和语句缓存交由连接池负责</li>
+ * <li>driver/url/user/password: 内置的单连接保活模式, 连接在多次 reload 之间复用, 使用前通过 {@link Connection#isValid(int)} 校验,
+ * 并缓存 PreparedStatement, 连接失效时才重新建立</li>
+ * </ul>
+ * 调用方需要保证同一时刻只有一个线程在使用(数据库配置源的加载本身是串行的).
+ */
+public class DatabaseConnectionManager implements Closeable {
+
+    private final Logger log = LoggerFactory.getLogger(DatabaseConnectionManager.class);
+
+    private static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final DataSource dataSource;
+
+    private final String driver;
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private int validationTimeoutSeconds = DEFAULT_VALIDATION_TIMEOUT_SECONDS;
+
+    private boolean driverLoaded;
+
+    /**
+     * 保活模式下复用的连接及其语句缓存
+     */
+    private Connection connection;
+
+    private final Map<String, PreparedStatement> statementCache = new HashMap<>();
+
+    public DatabaseConnectionManager(DataSource dataSource) {
+        if (dataSource == null)
+            throw new IllegalArgumentException("dataSource cannot be null");
+
+        this.dataSource = dataSource;
+        this.driver = null;
+        this.url = null;
+        this.user = null;
+        this.password = null;
+    }
+
+    public DatabaseConnectionManager(String driver, String url, String user, String password) {
+        this.dataSource = null;
+        this.driver = driver;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        if (validationTimeoutSeconds < 0)
+            throw new IllegalArgumentException("validationTimeoutSeconds cannot be negative: " + validationTimeoutSeconds);
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * 使用(缓存的)预编译语句执行回调. 回调中不能关闭传入的语句.
+     */
+    public synchronized <T> T execute(String sql, StatementCallback<T> callback) {
+        if (dataSource != null)
+            return executeWithDataSource(sql, callback);
+
+        try {
+            return callback.doInStatement(prepare(sql));
+        } catch (SQLException e) {
+            // 出错后连接状态未知, 直接丢弃, 下次使用时重建
+            closeConnection();
+            throw new IllegalStateException("failed to execute sql", e);
+        }
+    }
+
+    /**
+     * 在同一个连接的事务中执行回调, 回调正常返回时提交, 否则回滚. 回调中自行创建和关闭语句
+     */
+    public synchronized <T> T executeInTransaction(ConnectionCallback<T> callback) {
+        if (dataSource != null) {
+            try (Connection conn = dataSource.getConnection()) {
+                return doInTransaction(conn, callback);
+            } catch (SQLException e) {
+                throw new IllegalStateException("failed to execute transaction", e);
+            }
+        }
+
+        try {
+            return doInTransaction(getConnection(), callback);
+        } catch (SQLException e) {
+            closeConnection();
+            throw new IllegalStateException("failed to execute transaction", e);
+        }
+    }
+
+    private <T> T doInTransaction(Connection conn, ConnectionCallback<T> callback) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            T result = callback.doInConnection(conn);
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException re) {
+                e.addSuppressed(re);
+            }
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private <T> T executeWithDataSource(String sql, StatementCallback<T> callback) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            return callback.doInStatement(ps);
+        } catch (SQLException e) {
+            throw new IllegalStateException("failed to execute sql", e);
+        }
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        Connection conn = getConnection();
+
+        PreparedStatement ps = statementCache.get(sql);
+        if (ps == null) {
+            ps = conn.prepareStatement(sql);
+            statementCache.put(sql, ps);
+        } else {
+            ps.clearParameters();
+        }
+
+        return ps;
+    }
+
+    private Connection getConnection() {
+        if (connection != null) {
+            try {
+                if (connection.isValid(validationTimeoutSeconds))
+                    return connection;
+            } catch (SQLException e) {
+                log.debug("failed to validate connection", e);
+            }
+
+            log.info("connection to {} is no longer valid, reconnect", url);
+            closeConnection();
+        }
+
+        try {
+            if (!driverLoaded) {
+                Class.forName(driver);
+                driverLoaded = true;
+            }
+            connection = DriverManager.getConnection(url, user, password);
+        } catch (ClassNotFoundException | SQLException e) {
+            throw new IllegalArgumentException("please check properties from config file", e);
+        }
+
+        return connection;
+    }
+
+    private void closeConnection() {
+        for (PreparedStatement ps : statementCache.values()) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                log.debug("failed to close statement", e);
+            }
+        }
+        statementCache.clear();
+
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.debug("failed to close connection", e);
+            }
+            connection = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closeConnection();
+    }
+
+    /**
+     * 在预编译语句上执行的回调
+     */
+    public interface StatementCallback<T> {
+        T doInStatement(PreparedStatement ps) throws SQLException;
+    }
+
+    /**
+     * 在事务中的连接上执行的回调. 回调中不能提交, 回滚或关闭连接.
+     */
+    public interface ConnectionCallback<T> {
+        T doInConnection(Connection conn) throws SQLException;
+    }
+}
@@ -0,0 +1,14 @@
+package cm.cfg4j.spring.source;
+
+/**
+ * 能够廉价地给出当前数据指纹的配置源, 例如内容哈希、git commit id 等.
+ * <p>
+ * 指纹相同即认为数据未变化, reload 时会跳过后续的属性物化和快照替换.
+ */
+public interface FingerprintAware {
+
+    /**
+     * @return 最近一次加载的数据指纹, 尚未加载时返回 null
+     */
+    String getFingerprint();
+}
@@ -0,0 +1,291 @@
+package cm.cfg4j.spring.source;
+
+import org.cfg4j.source.ConfigurationSource;
+import org.cfg4j.source.context.environment.Environment;
+import org.cfg4j.source.context.propertiesprovider.JsonBasedPropertiesProvider;
+import org.cfg4j.source.context.propertiesprovider.PropertiesProviderSelector;
+import org.cfg4j.source.context.propertiesprovider.PropertyBasedPropertiesProvider;
+import org.cfg4j.source.context.propertiesprovider.YamlBasedPropertiesProvider;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 基于本地持久化 git 仓库的配置源
+ * <p>
+ * 与 cfg4j 自带的 git 配置源(每次启动在临时目录完整 clone 并检出工作区)不同:
+ * <ul>
+ * <li>本地仓库目录由外部指定, 重启后直接复用, 只需增量 fetch 新的对象</li>
+ * <li>仓库为 bare 仓库, 只 fetch 当前 profile 对应的单个分支, 不拉取 tag</li>
+ * <li>配置文件直接从提交的 tree 中读取 blob, 只有 blob id 发生变化的文件才会重新解析</li>
+ * </ul>
+ * 分支与路径的划分沿用 cfg4j 的约定: profile 的第一段为分支名, 其余部分为分支内的目录.
+ * <p>
+ * 当前使用的 jgit 版本不支持浅克隆(depth), 首次 fetch 仍会拉取该分支的完整历史, 之后的 fetch 都是增量的.
+ */
+public class GitRepositoryConfigurationSource implements ConfigurationSource, FingerprintAware, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(GitRepositoryConfigurationSource.class);
+
+    private static final String REMOTE_NAME = "origin";
+
+    private static final String DEFAULT_BRANCH = "master";
+
+    /**
+     * 同一进程内共享同一个本地仓库目录的配置源, 通过该锁串行 fetch
+     */
+    private static final ConcurrentMap<Path, Object> REPOSITORY_LOCKS = new ConcurrentHashMap<>();
+
+    private final String repositoryURI;
+
+    private final Path localPath;
+
+    private final String branch;
+
+    private final String path;
+
+    private final List<String> files;
+
+    private final PropertiesProviderSelector propertiesProviderSelector = new PropertiesProviderSelector(
+        new PropertyBasedPropertiesProvider(), new YamlBasedPropertiesProvider(), new JsonBasedPropertiesProvider()
+    );
+
+    private final Object lock;
+
+    private Repository repository;
+
+    /**
+     * 上次加载的提交
+     */
+    private ObjectId commitId;
+
+    /**
+     * 每个配置文件上次加载时的 blob id 与解析结果
+     */
+    private Map<String, LoadedFile> loadedFiles = Collections.emptyMap();
+
+    private volatile Properties properties;
+
+    private volatile String fingerprint;
+
+    private volatile boolean initialized;
+
+    /**
+     * @param repositoryURI 远程仓库地址
+     * @param localPath     本地仓库目录, 不存在时自动创建
+     * @param profile       环境, 第一段为分支名, 其余部分为分支内的目录, 如 master/app/dev
+     * @param files         配置文件, 相对于 profile 对应的目录
+     */
+    public GitRepositoryConfigurationSource(String repositoryURI, Path localPath, String profile, List<String> files) {
+        if (repositoryURI == null || repositoryURI.isEmpty())
+            throw new IllegalArgumentException("repositoryURI cannot be empty");
+        if (files == null || files.isEmpty())
+            throw new IllegalArgumentException("files cannot be empty");
+
+        this.repositoryURI = repositoryURI;
+        this.localPath = localPath.toAbsolutePath().normalize();
+        this.files = new ArrayList<>(files);
+        this.lock = REPOSITORY_LOCKS.computeIfAbsent(this.localPath, p -> new Object());
+
+        String env = profile == null ? "" : profile.trim();
+        while (env.startsWith("/"))
+            env = env.substring(1);
+
+        int idx = env.indexOf('/');
+        this.branch = idx < 0 ? (env.isEmpty() ? DEFAULT_BRANCH : env) : env.substring(0, idx);
+        this.path = idx < 0 ? "" : env.substring(idx + 1).replaceAll("/+$", "");
+    }
+
+    @Override
+    public Properties getConfiguration(Environment environment) {
+        if (!initialized)
+            throw new IllegalStateException("Configuration source has to be successfully initialized before you request configuration.");
+
+        Properties prop = new Properties();
+        prop.putAll(properties);
+        return prop;
+    }
+
+    @Override
+    public void init() {
+        synchronized (lock) {
+            try {
+                repository = openOrCreateRepository();
+                fetch();
+            } catch (IOException | GitAPIException e) {
+                throw new IllegalStateException("Unable to init git repository " + repositoryURI + " at " + localPath, e);
+            }
+        }
+
+        initialized = true;
+    }
+
+    @Override
+    public void reload() {
+        if (!initialized)
+            throw new IllegalStateException("Configuration source has to be successfully initialized before reload.");
+
+        synchronized (lock) {
+            try {
+                fetch();
+            } catch (IOException | GitAPIException e) {
+                throw new IllegalStateException("Unable to fetch git repository " + repositoryURI + " at " + localPath, e);
+            }
+        }
+    }
+
+    @Override
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (repository != null) {
+                repository.close();
+                repository = null;
+            }
+        }
+    }
+
+    private Repository openOrCreateRepository() throws IOException, GitAPIException {
+        File dir = localPath.toFile();
+
+        if (Files.exists(localPath.resolve("objects")) && Files.exists(localPath.resolve("HEAD"))) {
+            Git git = Git.open(dir);
+            String url = git.getRepository().getConfig().getString("remote", REMOTE_NAME, "url");
+            if (!repositoryURI.equals(url)) {
+                git.close();
+                throw new IllegalStateException("local repository " + localPath + " belongs to " + url + ", not " + repositoryURI);
+            }
+
+            log.info("reuse local git repository: {}", localPath);
+            return git.getRepository();
+        }
+
+        log.info("create local git repository {} for {}", localPath, repositoryURI);
+        Git git = Git.init().setBare(true).setDirectory(dir).call();
+
+        StoredConfig config = git.getRepository().getConfig();
+        config.setString("remote", REMOTE_NAME, "url", repositoryURI);
+        config.save();
+
+        return git.getRepository();
+    }
+
+    /**
+     * 只 fetch 当前分支, 提交未变化时什么也不做, 否则只重新解析 blob id 变化的文件
+     */
+    private void fetch() throws IOException, GitAPIException {
+        String remoteRef = "refs/remotes/" + REMOTE_NAME + "/" + branch;
+
+        new Git(repository).fetch()
+            .setRemote(REMOTE_NAME)
+            .setRefSpecs(new RefSpec("+refs/heads/" + branch + ":" + remoteRef))
+            .setTagOpt(TagOpt.NO_TAGS)
+            .call();
+
+        Ref ref = repository.exactRef(remoteRef);
+        if (ref == null)
+            throw new IllegalStateException("branch '" + branch + "' not found in " + repositoryURI);
+
+        ObjectId newCommitId = ref.getObjectId();
+        if (newCommitId.equals(commitId))
+            return;
+
+        Map<String, LoadedFile> newFiles = new HashMap<>();
+        Properties newProperties = new Properties();
+        StringBuilder blobs = new StringBuilder();
+        int parsed = 0;
+
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            RevTree tree = revWalk.parseCommit(newCommitId).getTree();
+
+            for (String file : files) {
+                String filePath = path.isEmpty() ? file : path + "/" + file;
+
+                ObjectId blobId;
+                try (TreeWalk treeWalk = TreeWalk.forPath(repository, filePath, tree)) {
+                    if (treeWalk == null)
+                        throw new IllegalStateException("Unable to load properties from file: " + filePath);
+                    blobId = treeWalk.getObjectId(0);
+                }
+
+                LoadedFile loaded = loadedFiles.get(filePath);
+                if (loaded == null || !loaded.blobId.equals(blobId)) {
+                    loaded = new LoadedFile(blobId, parse(filePath, blobId));
+                    parsed++;
+                }
+
+                newFiles.put(filePath, loaded);
+                newProperties.putAll(loaded.properties);
+                blobs.append(blobId.name());
+            }
+        }
+
+        log.info("git repository {} moved to {}, {} of {} files reloaded", repositoryURI, newCommitId.name(), parsed, files.size());
+
+        loadedFiles = newFiles;
+        properties = newProperties;
+        commitId = newCommitId;
+        fingerprint = blobs.toString();
+    }
+
+    private Properties parse(String filePath, ObjectId blobId) throws IOException {
+        try (InputStream in = repository.open(blobId).openStream()) {
+            String fileName = filePath.substring(filePath.lastIndexOf('/') + 1);
+            return propertiesProviderSelector.getProvider(fileName).getProperties(in);
+        } catch (IllegalStateException e) {
+            throw new IllegalStateException("Unable to load properties from file: " + filePath, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GitRepositoryConfigurationSource{" +
+            "repositoryURI='" + repositoryURI + '\'' +
+            ", localPath=" + localPath +
+            ", branch='" + branch + '\'' +
+            ", path='" + path + '\'' +
+            ", files=" + files +
+            '}';
+    }
+
+    private static final class LoadedFile {
+
+        private final ObjectId blobId;
+
+        private final Properties properties;
+
+        private LoadedFile(ObjectId blobId, Properties properties) {
+            this.blobId = blobId;
+            this.properties = properties;
+        }
+    }
+}
@@ -3,21 +3,50 @@ package cm.cfg4j.spring.source;
 /**
  * 将 配置源 与 配置接口绑定
  * <p>
+ * reload 后先比较配置源的数据指纹, 指纹未变化时跳过属性物化和快照替换.
+ * 配置源实现了 {@link FingerprintAware} 并给出指纹时直接使用, 否则对物化后的属性计算内容指纹.
+ * 配置源实现了 {@link SnapshotAware} 时直接使用其快照, 不再通过 provider 物化和复制属性.
+ * 快照替换后计算新旧快照的差异, 交给 {@link ConfigChangeDispatcher} 通知监听器.
+ * 设置了 {@link ConfigMetrics} 时记录加载耗时, 失败次数, 加载的 key 数与变更的 key 数;
+ * 后端尚未就绪、仍在使用本地快照时的 reload 记为失败.
+ * <p>
+ * reload 互斥执行: 除了 reload 策略, 快照配置源在后端就绪时也会从 worker 线程发起 reload, 被包装的配置源不必自己处理并发.
+ * <p>
  * Created by Yang Tengfei on 9/24/16.
  */
 
 import cm.cfg4j.spring.Cfg4jPropertyPlaceholderConfigurer;
+import cm.cfg4j.spring.listener.ConfigChangeDispatcher;
+import cm.cfg4j.spring.listener.ConfigChangeEvent;
+import cm.cfg4j.spring.metrics.ConfigMetrics;
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
 import org.cfg4j.provider.ConfigurationProvider;
 import org.cfg4j.source.ConfigurationSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class ProviderAwareConfigurationSource extends ConfigurationSourceWrapper {
 
     private final Logger log = LoggerFactory.getLogger(ProviderAwareConfigurationSource.class);
 
     private ConfigurationProvider configurationProvider;
 
+    private ConfigChangeDispatcher changeDispatcher = ConfigChangeDispatcher.shared();
+
+    private ConfigMetrics metrics;
+
+    /**
+     * 最近一次生效的数据指纹
+     */
+    private volatile String lastFingerprint;
+
+    private final AtomicLong appliedReloads = new AtomicLong();
+
+    private final AtomicLong skippedReloads = new AtomicLong();
+
     public ProviderAwareConfigurationSource(ConfigurationSource wrapped) {
         super(wrapped);
     }
@@ -26,14 +55,126 @@ public class ProviderAwareConfigurationSource extends ConfigurationSourceWrapper
         this.configurationProvider = configurationProvider;
     }
 
+    public void setChangeDispatcher(ConfigChangeDispatcher changeDispatcher) {
+        this.changeDispatcher = changeDispatcher;
+    }
+
+    public void setMetrics(ConfigMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void init() {
+        long start = System.nanoTime();
+        try {
+            super.init();
+        } catch (RuntimeException e) {
+            if (metrics != null)
+                metrics.recordReloadFailure(System.nanoTime() - start);
+            throw e;
+        }
+
+        if (metrics != null)
+            metrics.recordReloadSuccess(System.nanoTime() - start);
+    }
+
+    @Override
+    public synchronized void reload() {
+        long start = System.nanoTime();
+        try {
+            super.reload();
+        } catch (RuntimeException e) {
+            if (metrics != null)
+                metrics.recordReloadFailure(System.nanoTime() - start);
+            throw e;
+        }
+
+        if (metrics != null) {
+            if (isServingSnapshot())
+                metrics.recordReloadFailure(System.nanoTime() - start);
+            else
+                metrics.recordReloadSuccess(System.nanoTime() - start);
+        }
+    }
+
+    private boolean isServingSnapshot() {
+        return getWrapped() instanceof SnapshotBackedConfigurationSource
+            && ((SnapshotBackedConfigurationSource) getWrapped()).isServingSnapshot();
+    }
+
+    /**
+     * @return 数据发生变化并已刷新快照的 reload 次数
+     */
+    public long getAppliedReloadCount() {
+        return appliedReloads.get();
+    }
+
+    /**
+     * @return 数据未变化而被跳过的 reload 次数
+     */
+    public long getSkippedReloadCount() {
+        return skippedReloads.get();
+    }
+
     @Override
-    protected void afterReload() {
-        log.info("configuration is reloaded");
+    protected synchronized void afterReload() {
+        if (configurationProvider == null)
+            return;
+
+        Properties properties = null;
+        PropertiesSnapshot snapshot = null;
+        String fingerprint = null;
+        if (getWrapped() instanceof FingerprintAware)
+            fingerprint = ((FingerprintAware) getWrapped()).getFingerprint();
+
+        if (fingerprint == null) {
+            properties = configurationProvider.allConfigurationAsProperties();
+            fingerprint = ContentFingerprint.of(properties);
+        }
 
-        if (configurationProvider != null) {
-            log.debug("refresh Cfg4jPropertyPlaceholderConfigurer config source");
-            Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.set(configurationProvider.allConfigurationAsProperties());
+        if (fingerprint != null && fingerprint.equals(lastFingerprint)) {
+            skippedReloads.incrementAndGet();
+            if (metrics != null)
+                metrics.recordSkipped();
+            log.debug("configuration is not changed, fingerprint: {}", fingerprint);
+            return;
         }
 
+        log.info("configuration is reloaded, fingerprint: {}", fingerprint);
+
+        if (properties == null && getWrapped() instanceof SnapshotAware)
+            snapshot = ((SnapshotAware) getWrapped()).getSnapshot();
+
+        if (snapshot == null) {
+            if (properties == null)
+                properties = configurationProvider.allConfigurationAsProperties();
+            snapshot = PropertiesSnapshot.of(properties);
+        }
+
+        log.debug("refresh Cfg4jPropertyPlaceholderConfigurer config source");
+        PropertiesSnapshot previous = Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.getAndSet(snapshot);
+
+        ConfigChangeEvent event = null;
+        if (changeDispatcher != null)
+            event = changeDispatcher.publish(previous, snapshot);
+
+        if (metrics != null) {
+            if (event == null)
+                event = ConfigChangeEvent.between(previous, snapshot);
+            metrics.recordApplied(snapshot.size(), sizeInBytes(snapshot), event.getChanges().size());
+        }
+
+        lastFingerprint = fingerprint;
+        appliedReloads.incrementAndGet();
+    }
+
+    /**
+     * 按 UTF-16 估算的 key 和 value 占用的字节数
+     */
+    private static long sizeInBytes(PropertiesSnapshot snapshot) {
+        long chars = 0;
+        for (int i = 0; i < snapshot.size(); i++)
+            chars += snapshot.nameAt(i).length() + snapshot.valueAt(i).length();
+        return chars * 2;
     }
 }
@@ -0,0 +1,113 @@
+package cm.cfg4j.spring.source;
+
+import org.cfg4j.source.ConfigurationSource;
+import org.cfg4j.source.context.environment.Environment;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * 由 {@link SharedDatabaseLoader} 批量加载的数据库配置源
+ * <p>
+ * 本身不查询数据库: 数据由共享加载器按周期统一查询后分发, reload 只是读取加载器中该项目的最新数据.
+ * 与 {@link DatabaseConfigurationSource#setProfiles} 相同, 只加载指定的 profile 回退链, 前面的 profile 优先.
+ * 关闭时从批量查询中移除项目并释放共享加载器.
+ */
+public class SharedDatabaseConfigurationSource implements ConfigurationSource, FingerprintAware, Closeable {
+
+    private final SharedDatabaseLoader loader;
+
+    private final String project;
+
+    private final List<String> profiles;
+
+    private boolean closed;
+
+    /**
+     * @param loader   已通过 {@link SharedDatabaseLoader#acquire} 获取的加载器, 由本配置源负责释放
+     * @param profiles profile 回退链, 如 [prod, default]
+     */
+    public SharedDatabaseConfigurationSource(SharedDatabaseLoader loader, String project, List<String> profiles) {
+        if (project == null || project.trim().isEmpty())
+            throw new IllegalArgumentException("project cannot be empty");
+        if (profiles == null || profiles.isEmpty())
+            throw new IllegalArgumentException("profiles cannot be empty");
+        if (profiles.stream().map(p -> p.toLowerCase(Locale.ROOT)).collect(Collectors.toSet()).size() != profiles.size())
+            throw new IllegalArgumentException("duplicate profile in fallback chain: " + profiles);
+
+        this.loader = loader;
+        this.project = project;
+        this.profiles = Collections.unmodifiableList(new ArrayList<>(profiles));
+        loader.register(project, this.profiles);
+    }
+
+    @Override
+    public Properties getConfiguration(Environment environment) {
+        if (!profiles.get(0).equals(environment.getName()))
+            throw new IllegalArgumentException("only profile " + profiles + " is loaded, cannot serve: " + environment.getName());
+
+        Map<String, Properties> all = loader.get(project);
+        Properties prop = new Properties();
+        for (int i = profiles.size() - 1; i >= 0; i--) {
+            Properties data = find(all, profiles.get(i));
+            if (data != null)
+                prop.putAll(data);
+        }
+        return prop;
+    }
+
+    /**
+     * 先按原样查找, 配置表使用不区分大小写的排序规则时查出的 profile 大小写可能不同
+     */
+    private static Properties find(Map<String, Properties> all, String profile) {
+        Properties data = all.get(profile);
+        if (data != null)
+            return data;
+
+        for (Map.Entry<String, Properties> entry : all.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(profile))
+                return entry.getValue();
+        }
+        return null;
+    }
+
+    @Override
+    public void init() {
+        loader.get(project);
+    }
+
+    @Override
+    public void reload() {
+        loader.get(project);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return loader.getFingerprint(project);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+
+        closed = true;
+        loader.unregister(project, profiles);
+        loader.release();
+    }
+
+    @Override
+    public String toString() {
+        return "SharedDatabaseConfigurationSource{" +
+            "loader=" + loader +
+            ", project='" + project + '\'' +
+            ", profiles=" + profiles +
+            '}';
+    }
+}
@@ -0,0 +1,364 @@
+package cm.cfg4j.spring.source;
+
+import cm.cfg4j.spring.reload.ChangeTrigger;
+import cm.cfg4j.spring.reload.ReloadScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 同一张配置表上多个项目共享的加载器
+ * <p>
+ * 同一个应用中有多个配置提供者(多个 cfg4j:config 或多个 Spring 上下文, 加载不同的项目)且共用同一个配置库时,
+ * 每个项目各自建立连接, 各自定时查询. 共享加载器按数据库(及表)合并: 所有注册的项目只使用一个连接, 每个周期只执行一次查询,
+ * 只取各项目注册的 profile, 再把结果按项目分发; 只有数据指纹发生变化的项目才会通过 {@link #newTrigger(String)}
+ * 返回的变更通知触发 reload.
+ * <p>
+ * 共享的范围是加载本类的类加载器. 每个 web 应用在 WEB-INF/lib 中各自带一份 jar, 加载器、
+ * {@link cm.cfg4j.spring.config.ConfigurationProviderRegistry#shared()} 和占位符解析使用的静态快照都只在本应用内共享.
+ * 不要把 jar 放到容器的公共 lib 中: 那样这些静态状态会在所有应用之间共享, 各应用的配置会互相覆盖.
+ * <p>
+ * 通过 {@link #acquire} 与 {@link #release()} 引用计数, 最后一个使用者释放后停止定时任务并关闭连接.
+ */
+public class SharedDatabaseLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedDatabaseLoader.class);
+
+    private static final String SQL = "SELECT `project`, `profile`, `key`, `value` FROM %s where (%s)";
+
+    private static final String PROJECT_CONDITION = "(project = ? and profile IN (%s))";
+
+    private static final Map<String, SharedDatabaseLoader> LOADERS = new HashMap<>();
+
+    private final String key;
+
+    private final DatabaseConnectionManager connectionManager;
+
+    private final String tableName;
+
+    private final String deletedColumn;
+
+    private final long intervalMillis;
+
+    /**
+     * 已注册的项目
+     */
+    private final Map<String, ProjectState> projects = new ConcurrentHashMap<>();
+
+    private int references;
+
+    /**
+     * 是否有批量查询正在 worker 中执行, 数据库挂起时不会堆积查询
+     */
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private ScheduledFuture<?> future;
+
+    private SharedDatabaseLoader(String key, DatabaseConnectionManager connectionManager, String tableName, String deletedColumn,
+                                 long intervalMillis) {
+        this.key = key;
+        this.connectionManager = connectionManager;
+        this.tableName = tableName;
+        this.deletedColumn = deletedColumn;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * 获取(必要时创建) key 对应的共享加载器并增加引用计数. 已存在时沿用它的连接和周期(周期不同时记录警告), 传入的连接管理被关闭
+     *
+     * @param key            数据库及配置表的标识, 如 url + user + table
+     * @param intervalMillis 批量查询的周期
+     */
+    public static SharedDatabaseLoader acquire(String key, DatabaseConnectionManager connectionManager, String tableName,
+                                               String deletedColumn, long intervalMillis) {
+        if (intervalMillis <= 0)
+            throw new IllegalArgumentException("intervalMillis must be positive: " + intervalMillis);
+
+        synchronized (LOADERS) {
+            SharedDatabaseLoader loader = LOADERS.get(key);
+            if (loader == null) {
+                loader = new SharedDatabaseLoader(key, connectionManager, tableName, deletedColumn, intervalMillis);
+                loader.future = ReloadScheduler.shared().scheduleWithFixedDelay(loader::submitRefresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+                LOADERS.put(key, loader);
+                log.info("create shared database loader [{}], interval: {} ms", key, intervalMillis);
+            } else {
+                if (loader.intervalMillis != intervalMillis)
+                    log.warn("shared database loader [{}] keeps its interval {} ms, requested {} ms is ignored", key, loader.intervalMillis, intervalMillis);
+                connectionManager.close();
+            }
+
+            loader.references++;
+            return loader;
+        }
+    }
+
+    /**
+     * 减少引用计数, 最后一个使用者释放时停止定时任务并关闭连接
+     */
+    public void release() {
+        synchronized (LOADERS) {
+            if (--references > 0)
+                return;
+
+            LOADERS.remove(key);
+            future.cancel(false);
+        }
+
+        log.info("close shared database loader [{}]", key);
+        connectionManager.close();
+    }
+
+    /**
+     * 将项目的 profile 加入批量查询, 同一个项目可以按不同的 profile 注册多次; 加入新的 profile 后下次读取时立即重新查询
+     */
+    public void register(String project, List<String> profiles) {
+        if (profiles == null || profiles.isEmpty())
+            throw new IllegalArgumentException("profiles cannot be empty");
+
+        projects.compute(project, (p, state) -> {
+            if (state == null)
+                state = new ProjectState();
+            for (String profile : profiles) {
+                if (state.profiles.merge(profile, 1, Integer::sum) == 1)
+                    state.loaded = false;
+            }
+            return state;
+        });
+    }
+
+    public void unregister(String project, List<String> profiles) {
+        projects.computeIfPresent(project, (p, state) -> {
+            for (String profile : profiles)
+                state.profiles.computeIfPresent(profile, (k, count) -> count > 1 ? count - 1 : null);
+            return state.profiles.isEmpty() ? null : state;
+        });
+    }
+
+    /**
+     * 项目下各 profile 的配置, 项目还未加载过时立即执行一次批量查询
+     */
+    public Map<String, Properties> get(String project) {
+        ProjectState state = state(project);
+        if (!state.loaded)
+            refresh();
+        return state.data;
+    }
+
+    public String getFingerprint(String project) {
+        ProjectState state = state(project);
+        return state.loaded ? Long.toHexString(state.fingerprint) : null;
+    }
+
+    /**
+     * 项目数据发生变化时的通知, 用于推送模式的 reload
+     */
+    public ChangeTrigger newTrigger(String project) {
+        return new ProjectTrigger(project);
+    }
+
+    private ProjectState state(String project) {
+        ProjectState state = projects.get(project);
+        if (state == null)
+            throw new IllegalStateException("project is not registered: " + project);
+        return state;
+    }
+
+    /**
+     * 在调度线程上触发, 查询交给 worker 执行
+     */
+    private void submitRefresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            log.warn("previous query of [{}] is still running, skip this cycle", key);
+            return;
+        }
+
+        try {
+            ReloadScheduler.workers().execute(() -> {
+                try {
+                    refreshQuietly();
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+            log.warn("reload worker rejected the query of [{}]", key, e);
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("failed to load projects {} from [{}]", projects.keySet(), key, e);
+        }
+    }
+
+    /**
+     * 一次查询所有注册的项目, 并通知数据发生变化的项目
+     */
+    void refresh() {
+        List<Runnable> notifications = new ArrayList<>();
+
+        synchronized (this) {
+            List<String> names = new ArrayList<>();
+            Map<String, List<String>> queried = new HashMap<>();
+            List<String> params = new ArrayList<>();
+            StringBuilder conditions = new StringBuilder();
+            for (Map.Entry<String, ProjectState> entry : projects.entrySet()) {
+                List<String> profiles = new ArrayList<>(entry.getValue().profiles.keySet());
+                if (profiles.isEmpty())
+                    continue;
+
+                StringBuilder placeholders = new StringBuilder();
+                for (int i = 0; i < profiles.size(); i++)
+                    placeholders.append(i == 0 ? "?" : ", ?");
+
+                if (conditions.length() > 0)
+                    conditions.append(" or ");
+                conditions.append(String.format(PROJECT_CONDITION, placeholders));
+                names.add(entry.getKey());
+                queried.put(entry.getKey(), profiles);
+                params.add(entry.getKey());
+                params.addAll(profiles);
+            }
+            if (names.isEmpty())
+                return;
+
+            String sql = String.format(SQL, tableName, conditions);
+            if (deletedColumn != null && deletedColumn.length() > 0)
+                sql += " and `" + deletedColumn + "` = 0";
+
+            Map<String, Map<String, Properties>> result = new HashMap<>();
+            Map<String, ContentFingerprint> fingerprints = new HashMap<>();
+            connectionManager.execute(sql, ps -> {
+                for (int i = 0; i < params.size(); i++)
+                    ps.setString(i + 1, params.get(i));
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String project = rs.getString(1);
+                        String profile = rs.getString(2);
+                        String key = rs.getString(3);
+                        String value = rs.getString(4);
+
+                        result.computeIfAbsent(project, p -> new ConcurrentHashMap<>()).computeIfAbsent(profile, p -> new Properties()).setProperty(key, value);
+                        fingerprints.computeIfAbsent(project, p -> new ContentFingerprint()).add(profile, key, value);
+                    }
+                }
+                return null;
+            });
+
+            for (String name : names) {
+                ProjectState state = projects.get(name);
+                if (state == null)
+                    continue;
+
+                ContentFingerprint fp = fingerprints.get(name);
+                long fingerprint = fp == null ? 0L : fp.getValue();
+                boolean changed = state.fetched && state.fingerprint != fingerprint;
+
+                Map<String, Properties> data = result.get(name);
+                state.data = data == null ? Collections.emptyMap() : data;
+                state.fingerprint = fingerprint;
+                state.fetched = true;
+                // 查询期间新注册的 profile 还没有数据, 下次读取时重新查询
+                state.loaded = queried.get(name).containsAll(state.profiles.keySet());
+
+                if (changed)
+                    notifications.addAll(state.listeners);
+            }
+
+            log.debug("loaded {} projects from [{}] in one query, {} listeners to notify", names.size(), key, notifications.size());
+        }
+
+        for (Runnable listener : notifications) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.warn("failed to notify configuration change", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SharedDatabaseLoader{" + key + '}';
+    }
+
+    private static final class ProjectState {
+
+        /**
+         * 注册的 profile 及其引用次数
+         */
+        private final Map<String, Integer> profiles = new ConcurrentHashMap<>();
+
+        private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+        private volatile Map<String, Properties> data = Collections.emptyMap();
+
+        private volatile long fingerprint;
+
+        /**
+         * 注册的 profile 是否都已查询过
+         */
+        private volatile boolean loaded;
+
+        /**
+         * 是否查询过, 用于判断数据变化
+         */
+        private volatile boolean fetched;
+    }
+
+    /**
+     * 单个项目的变更通知, 由共享加载器的批量查询驱动
+     */
+    private final class ProjectTrigger implements ChangeTrigger {
+
+        private final String project;
+
+        private Runnable listener;
+
+        private ProjectTrigger(String project) {
+            this.project = project;
+        }
+
+        @Override
+        public synchronized void start(Runnable onChange) {
+            if (listener != null)
+                throw new IllegalStateException("trigger is already started");
+
+            listener = onChange;
+            state(project).listeners.add(onChange);
+        }
+
+        @Override
+        public synchronized void stop() {
+            if (listener == null)
+                return;
+
+            ProjectState state = projects.get(project);
+            if (state != null)
+                state.listeners.remove(listener);
+            listener = null;
+        }
+
+        @Override
+        public String toString() {
+            return "SharedDatabaseTrigger{loader=" + key + ", project=" + project + '}';
+        }
+    }
+}
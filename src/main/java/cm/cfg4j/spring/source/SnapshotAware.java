@@ -0,0 +1,16 @@
+package cm.cfg4j.spring.source;
+
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
+
+/**
+ * 直接以只读快照形式提供数据的配置源.
+ * <p>
+ * reload 后直接使用该快照替换全局快照, 不再经过 {@link java.util.Properties} 物化和复制.
+ */
+public interface SnapshotAware {
+
+    /**
+     * @return 最近一次加载的快照, 尚未加载或不可用时返回 null
+     */
+    PropertiesSnapshot getSnapshot();
+}
@@ -0,0 +1,165 @@
+package cm.cfg4j.spring.source;
+
+import cm.cfg4j.spring.reload.ReloadScheduler;
+import cm.cfg4j.spring.snapshot.LocalSnapshotStore;
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
+import org.cfg4j.source.ConfigurationSource;
+import org.cfg4j.source.context.environment.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 以本地快照文件加速启动的配置源
+ * <p>
+ * 存在有效的本地快照时, init 只读取快照, 后端的初始化和首次加载在后台进行, 完成之前都由快照提供配置;
+ * 后端就绪后调用 onReady 回调(一般是触发一次 reload, 使新数据生效). 本地快照不存在时与直接使用后端配置源一致.
+ * 后端就绪之前的 reload 只在后台重试初始化, 通过 {@link #isServingSnapshot()} 可以知道当前仍在使用可能过期的快照.
+ * <p>
+ * 每次成功加载后, 如果内容有变化则写回本地快照.
+ */
+public class SnapshotBackedConfigurationSource extends ConfigurationSourceWrapper implements FingerprintAware, SnapshotAware {
+
+    private final Logger log = LoggerFactory.getLogger(SnapshotBackedConfigurationSource.class);
+
+    private final LocalSnapshotStore store;
+
+    private final Environment environment;
+
+    private volatile Properties snapshot;
+
+    private volatile boolean ready;
+
+    private final AtomicBoolean initializing = new AtomicBoolean();
+
+    private volatile String persistedFingerprint;
+
+    private Runnable onReady;
+
+    public SnapshotBackedConfigurationSource(ConfigurationSource wrapped, LocalSnapshotStore store, Environment environment) {
+        super(wrapped);
+        this.store = store;
+        this.environment = environment;
+    }
+
+    public void setOnReady(Runnable onReady) {
+        this.onReady = onReady;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return 后端尚未就绪, 正在使用本地快照中(可能过期)的配置
+     */
+    public boolean isServingSnapshot() {
+        return !ready && snapshot != null;
+    }
+
+    @Override
+    public void init() {
+        snapshot = store.read();
+        if (snapshot == null) {
+            initBackend();
+            return;
+        }
+
+        log.info("serve {} properties from local snapshot {} while initializing backend", snapshot.size(), store.getFile());
+
+        // 内容未变化时不必在后端就绪后重写快照
+        if (!(getWrapped() instanceof FingerprintAware))
+            persistedFingerprint = ContentFingerprint.of(snapshot);
+
+        initBackendAsync();
+    }
+
+    private void initBackendAsync() {
+        if (!initializing.compareAndSet(false, true))
+            return;
+
+        ReloadScheduler.workers().execute(() -> {
+            try {
+                initBackend();
+                log.info("configuration backend is ready");
+
+                if (onReady != null)
+                    onReady.run();
+            } catch (RuntimeException e) {
+                log.warn("failed to initialize configuration backend, keep serving local snapshot", e);
+            } finally {
+                initializing.set(false);
+            }
+        });
+    }
+
+    private void initBackend() {
+        getWrapped().init();
+        // 强制完成首次加载, 懒加载的配置源(如数据库)也在这里访问后端
+        getWrapped().getConfiguration(environment);
+        persist();
+        ready = true;
+        snapshot = null;
+    }
+
+    @Override
+    public Properties getConfiguration(Environment environment) {
+        Properties local = snapshot;
+        if (!ready && local != null)
+            return local;
+
+        return super.getConfiguration(environment);
+    }
+
+    @Override
+    public void reload() {
+        if (!ready) {
+            // 后端尚未就绪时不阻塞 reload 线程, 在后台重试初始化
+            log.debug("configuration backend is not ready, keep serving local snapshot");
+            initBackendAsync();
+            return;
+        }
+
+        getWrapped().reload();
+        persist();
+
+        afterReload();
+    }
+
+    @Override
+    public String getFingerprint() {
+        if (ready && getWrapped() instanceof FingerprintAware)
+            return ((FingerprintAware) getWrapped()).getFingerprint();
+        return null;
+    }
+
+    @Override
+    public PropertiesSnapshot getSnapshot() {
+        if (ready && getWrapped() instanceof SnapshotAware)
+            return ((SnapshotAware) getWrapped()).getSnapshot();
+        return null;
+    }
+
+    /**
+     * 配置源给出指纹且未变化时, 不物化属性直接跳过
+     */
+    private synchronized void persist() {
+        String fingerprint = getWrapped() instanceof FingerprintAware ? ((FingerprintAware) getWrapped()).getFingerprint() : null;
+        if (fingerprint != null && fingerprint.equals(persistedFingerprint))
+            return;
+
+        Properties properties = getWrapped().getConfiguration(environment);
+        if (properties == null)
+            return;
+
+        if (fingerprint == null)
+            fingerprint = ContentFingerprint.of(properties);
+
+        if (!fingerprint.equals(persistedFingerprint)) {
+            store.write(properties);
+            persistedFingerprint = fingerprint;
+        }
+    }
+}
@@ -1,13 +1,58 @@
+-- 主键为 (PROJECT, PROFILE, KEY): InnoDB 按主键聚簇存储, 按 project + profile IN (...) 查询时
+-- 直接顺序读取主键索引中的整行, 相当于覆盖索引, 不需要回表. 四个 VARCHAR(255) 列超出二级索引的长度上限,
+-- 因此不单独建覆盖索引. 已有的表(ID 为自增主键, TB_CONFIG_UNIQ 为唯一索引)按以下顺序迁移, 期间需要停止写入:
+-- 自增列必须是索引列, 先去掉 ID 的 AUTO_INCREMENT 才能删除主键, ID 有了唯一索引之后再恢复
+-- ALTER TABLE TB_CONFIG MODIFY ID INTEGER NOT NULL;
+-- ALTER TABLE TB_CONFIG DROP PRIMARY KEY;
+-- ALTER TABLE TB_CONFIG ADD PRIMARY KEY (PROJECT, PROFILE, `KEY`);
+-- ALTER TABLE TB_CONFIG DROP INDEX TB_CONFIG_UNIQ;
+-- ALTER TABLE TB_CONFIG ADD UNIQUE KEY TB_CONFIG_ID (ID);
+-- ALTER TABLE TB_CONFIG MODIFY ID INTEGER NOT NULL AUTO_INCREMENT;
 CREATE TABLE TB_CONFIG (
-  ID        INTEGER PRIMARY KEY   AUTO_INCREMENT,
+  ID        INTEGER      NOT NULL AUTO_INCREMENT,
   PROJECT   VARCHAR(255) NOT NULL,
   PROFILE   VARCHAR(255) NOT NULL DEFAULT 'default',
   `KEY`     VARCHAR(255) NOT NULL,
   `VALUE`   VARCHAR(255) NOT NULL,
+  DELETED   TINYINT      NOT NULL DEFAULT 0,
   CREATE_AT DATETIME     NOT NULL DEFAULT CURRENT_TIMESTAMP,
-  UPDATE_AT TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP
+  UPDATE_AT TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  PRIMARY KEY (PROJECT, PROFILE, `KEY`),
+  UNIQUE KEY TB_CONFIG_ID (ID)
 );
 
-CREATE UNIQUE INDEX TB_CONFIG_UNIQ ON TB_CONFIG (PROJECT, PROFILE, `KEY`);
+-- 增量加载(db.incremental=true)按 UPDATE_AT 水位线查询
+CREATE INDEX TB_CONFIG_UPDATE_AT ON TB_CONFIG (PROJECT, UPDATE_AT);
+
+-- 按 profile 增量加载(db.streaming=true 或 db.fallbackProfiles)时的水位线查询
+CREATE INDEX TB_CONFIG_PROFILE_UPDATE_AT ON TB_CONFIG (PROJECT, PROFILE, UPDATE_AT);
+
+-- 配置版本表, 推送模式(reload.push=true)下只检查这里的版本号, 变化后才重新加载配置.
+-- 版本号只由下面的触发器递增, 写入方(DatabaseConfigurationWriter)只用 SELECT ... FOR UPDATE 锁定这一行来串行化写入
+CREATE TABLE TB_CONFIG_VERSION (
+  PROJECT   VARCHAR(255) PRIMARY KEY,
+  VERSION   BIGINT       NOT NULL DEFAULT 0,
+  UPDATE_AT TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+CREATE TRIGGER TB_CONFIG_AFTER_INSERT AFTER INSERT ON TB_CONFIG FOR EACH ROW
+  INSERT INTO TB_CONFIG_VERSION (PROJECT, VERSION) VALUES (NEW.PROJECT, 1)
+  ON DUPLICATE KEY UPDATE VERSION = VERSION + 1;
+
+-- INSERT ... ON DUPLICATE KEY UPDATE 写入相同的值时也会触发 AFTER UPDATE, 内容未变化时不递增版本号,
+-- 避免无意义的 reload 和对版本行的争用
+DELIMITER $$
+CREATE TRIGGER TB_CONFIG_AFTER_UPDATE AFTER UPDATE ON TB_CONFIG FOR EACH ROW
+BEGIN
+  IF NOT (NEW.PROFILE <=> OLD.PROFILE AND NEW.`KEY` <=> OLD.`KEY` AND NEW.`VALUE` <=> OLD.`VALUE` AND NEW.DELETED <=> OLD.DELETED) THEN
+    INSERT INTO TB_CONFIG_VERSION (PROJECT, VERSION) VALUES (NEW.PROJECT, 1)
+    ON DUPLICATE KEY UPDATE VERSION = VERSION + 1;
+  END IF;
+END$$
+DELIMITER ;
+
+CREATE TRIGGER TB_CONFIG_AFTER_DELETE AFTER DELETE ON TB_CONFIG FOR EACH ROW
+  INSERT INTO TB_CONFIG_VERSION (PROJECT, VERSION) VALUES (OLD.PROJECT, 1)
+  ON DUPLICATE KEY UPDATE VERSION = VERSION + 1;
 
 INSERT INTO TB_CONFIG (PROJECT, `PROFILE`, `KEY`, `VALUE`) VALUE ('demo', 'prod', 'sample.key', 'sample.value');
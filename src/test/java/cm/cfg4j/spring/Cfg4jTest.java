@@ -1,18 +1,47 @@
 package cm.cfg4j.spring;
 
+import cm.cfg4j.spring.config.ConfigurationProviderRegistry;
+import cm.cfg4j.spring.listener.ConfigChangeDispatcher;
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
 import org.cfg4j.provider.ConfigurationProvider;
+import org.cfg4j.provider.ConfigurationProviderBuilder;
+import org.cfg4j.source.context.environment.ImmutableEnvironment;
+import org.cfg4j.source.inmemory.InMemoryConfigurationSource;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.parsing.BeanDefinitionParsingException;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.testng.annotations.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 /**
  * Created by Yang Tengfei on 9/23/16.
  */
 public class Cfg4jTest {
 
+    public interface Named {
+        String getName();
+    }
+
+    public static class NamedDummy extends Dummy implements Named {
+    }
+
     @Test
     public void testWithFileBackend() throws Exception {
         System.setProperty("configFile", "app-file.properties"); // use app-file.properties as origin config
@@ -28,6 +57,144 @@ public class Cfg4jTest {
         assertEquals(dummy.getName(), "hello");
     }
 
+    @Test
+    public void testRefreshWithFileBackend() throws Exception {
+        System.setProperty("configFile", "app-file.properties");
+
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("classpath:spring-config-file-refresh.xml");
+        try {
+            Dummy dummy = context.getBean(Dummy.class);
+            assertEquals(dummy.getName(), "hello");
+
+            PropertiesSnapshot snapshot = Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get();
+            Properties changed = snapshot.toProperties();
+            changed.setProperty("dummy.name", "world");
+            ConfigChangeDispatcher.shared().publish(snapshot, PropertiesSnapshot.of(changed));
+
+            for (int i = 0; i < 100 && !"world".equals(dummy.getName()); i++)
+                Thread.sleep(100);
+            assertEquals(dummy.getName(), "world");
+        } finally {
+            context.close();
+        }
+    }
+
+    @Test
+    public void testRefreshProxiedBeanWithValueProcessing() throws Exception {
+        PropertiesSnapshot original = Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get();
+        ConfigChangeDispatcher dispatcher = new ConfigChangeDispatcher();
+        try {
+            Properties prop = new Properties();
+            prop.setProperty("dummy.name", " hello ");
+
+            Cfg4jPropertyPlaceholderConfigurer configurer = new Cfg4jPropertyPlaceholderConfigurer();
+            configurer.setConfigurationProvider(new ConfigurationProviderBuilder()
+                .withConfigurationSource(new InMemoryConfigurationSource(prop))
+                .withEnvironment(new ImmutableEnvironment(""))
+                .build());
+            configurer.setRefreshEnabled(true);
+            configurer.setChangeDispatcher(dispatcher);
+            configurer.setTrimValues(true);
+            configurer.setNullValue("@null");
+            configurer.afterPropertiesSet();
+
+            DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+            RootBeanDefinition definition = new RootBeanDefinition(NamedDummy.class);
+            definition.getPropertyValues().add("name", "${dummy.name}");
+            beanFactory.registerBeanDefinition("dummy", definition);
+            beanFactory.addBeanPostProcessor(new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                    return bean;
+                }
+
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return new ProxyFactory(bean).getProxy();
+                }
+            });
+            configurer.postProcessBeanFactory(beanFactory);
+
+            Named dummy = beanFactory.getBean(Named.class);
+            assertTrue(AopUtils.isAopProxy(dummy));
+            assertEquals(dummy.getName(), "hello");
+
+            // 刷新时与启动时一样处理 trimValues 和 nullValue, 值注入到代理的目标对象上
+            PropertiesSnapshot snapshot = Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get();
+            Properties changed = snapshot.toProperties();
+            changed.setProperty("dummy.name", " world ");
+            dispatcher.publish(snapshot, PropertiesSnapshot.of(changed));
+            for (int i = 0; i < 100 && !"world".equals(dummy.getName()); i++)
+                Thread.sleep(50);
+            assertEquals(dummy.getName(), "world");
+
+            Properties cleared = new Properties();
+            cleared.putAll(changed);
+            cleared.setProperty("dummy.name", "@null");
+            dispatcher.publish(PropertiesSnapshot.of(changed), PropertiesSnapshot.of(cleared));
+            for (int i = 0; i < 100 && dummy.getName() != null; i++)
+                Thread.sleep(50);
+            assertNull(dummy.getName());
+        } finally {
+            Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.set(original);
+        }
+    }
+
+    @Test
+    public void testProviderAcquiredOnlyWhenContextStarts() throws Exception {
+        System.setProperty("configFile", "app-file.properties");
+        Properties origin = new Properties();
+        origin.load(getClass().getClassLoader().getResourceAsStream("app-file.properties"));
+        String providerKey = ConfigurationProviderRegistry.keyOf(origin);
+
+        // 只解析 bean 定义不会获取 provider
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        new XmlBeanDefinitionReader(beanFactory).loadBeanDefinitions("classpath:spring-config-file.xml");
+        assertFalse(isAcquired(providerKey));
+
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("classpath:spring-config-file.xml");
+        assertTrue(isAcquired(providerKey));
+        context.close();
+        assertFalse(isAcquired(providerKey));
+    }
+
+    @Test
+    public void testDuplicateConfig() throws Exception {
+        System.setProperty("configFile", "app-file.properties");
+        System.setProperty("sameConfigFile", "app-file.properties");
+        System.setProperty("otherConfigFile", "app.properties");
+
+        // 相同来源的多个 <cfg4j:config> 共用一个 provider
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        new XmlBeanDefinitionReader(beanFactory).loadBeanDefinitions(configXml("<cfg4j:config id=\"a\"/><cfg4j:config id=\"b\" key=\"sameConfigFile\"/>"));
+        assertEquals(beanFactory.getBeanNamesForType(Cfg4jPropertyPlaceholderConfigurer.class).length, 2);
+
+        try {
+            new XmlBeanDefinitionReader(new DefaultListableBeanFactory()).loadBeanDefinitions(configXml("<cfg4j:config id=\"a\"/><cfg4j:config id=\"b\" key=\"otherConfigFile\"/>"));
+            fail("different origin configs in one container should be rejected");
+        } catch (BeanDefinitionParsingException e) {
+            assertTrue(e.getMessage().contains("cfg4jConfigurationProvider"));
+        }
+    }
+
+    private static Resource configXml(String elements) {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<beans xmlns=\"http://www.springframework.org/schema/beans\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+            + " xmlns:cfg4j=\"http://codingme.com/cfg4j\" xsi:schemaLocation=\"http://www.springframework.org/schema/beans"
+            + " http://www.springframework.org/schema/beans/spring-beans.xsd http://codingme.com/cfg4j http://codingme.com/cfg4j/cfg4j.xsd\">"
+            + elements + "</beans>";
+        return new ByteArrayResource(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isAcquired(String providerKey) {
+        try {
+            ConfigurationProviderRegistry.shared().get(providerKey);
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
     @Test
     public void testWithGitBackend() throws Exception {
         System.setProperty("configFile", "app-git.properties"); // use app-file.properties as origin config
@@ -0,0 +1,73 @@
+package cm.cfg4j.spring;
+
+import org.springframework.util.PropertyPlaceholderHelper;
+import org.testng.annotations.Test;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class CompiledPlaceholderResolverTest {
+
+    @Test
+    public void testSameAsPropertyPlaceholderHelper() {
+        Properties prop = new Properties();
+        prop.setProperty("host", "localhost");
+        prop.setProperty("port", "8080");
+        prop.setProperty("url", "http://${host}:${port}/");
+        prop.setProperty("env", "prod");
+        prop.setProperty("db.prod", "mysql-prod");
+        prop.setProperty("name", "db");
+
+        PropertyPlaceholderHelper helper = new PropertyPlaceholderHelper("${", "}", ":", true);
+        CompiledPlaceholderResolver resolver = new CompiledPlaceholderResolver("${", "}", ":", true, prop::getProperty);
+
+        String[] values = {
+            "plain", "${host}", "${url}api", "${db.${env}}", "${${name}.${env}}", "${missing:default}", "${missing:${host}}",
+            "${missing}", "a${host}b${port}c", "${missing:${other:x}}y", "${unclosed", "{${host}}", "$${host}}",
+        };
+        for (String value : values)
+            assertEquals(resolver.replacePlaceholders(value), helper.replacePlaceholders(value, prop), value);
+    }
+
+    @Test
+    public void testCacheLookups() {
+        AtomicInteger lookups = new AtomicInteger();
+        CompiledPlaceholderResolver resolver = new CompiledPlaceholderResolver("${", "}", ":", false, name -> {
+            lookups.incrementAndGet();
+            return "a".equals(name) ? "${b}" : "b".equals(name) ? "1" : null;
+        });
+
+        assertEquals(resolver.replacePlaceholders("${a}"), "1");
+        assertEquals(resolver.replacePlaceholders("x${a}"), "x1");
+        assertEquals(resolver.replacePlaceholders("x${a}"), "x1");
+        assertEquals(lookups.get(), 2);
+    }
+
+    @Test
+    public void testBoundedCache() {
+        CompiledPlaceholderResolver resolver = new CompiledPlaceholderResolver("${", "}", ":", false,
+            name -> name.startsWith("key.") ? "value." + name.substring(4) : null, 10);
+
+        // 缓存写满后仍然正确解析, 只是不再加入新项
+        for (int i = 0; i < 1000; i++)
+            assertEquals(resolver.replacePlaceholders("${key." + i + "}!"), "value." + i + "!");
+        assertTrue(resolver.cachedEntries() <= 30, String.valueOf(resolver.cachedEntries()));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Circular placeholder reference.*")
+    public void testCircularReference() {
+        Properties prop = new Properties();
+        prop.setProperty("a", "${b}");
+        prop.setProperty("b", "${a}");
+
+        new CompiledPlaceholderResolver("${", "}", ":", false, prop::getProperty).replacePlaceholders("${a}");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Could not resolve placeholder 'missing'.*")
+    public void testUnresolvable() {
+        new CompiledPlaceholderResolver("${", "}", ":", false, name -> null).replacePlaceholders("${missing}");
+    }
+}
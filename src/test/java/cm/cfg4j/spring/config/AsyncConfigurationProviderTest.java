@@ -0,0 +1,108 @@
+package cm.cfg4j.spring.config;
+
+import cm.cfg4j.spring.Dummy;
+import org.cfg4j.provider.ConfigurationProvider;
+import org.cfg4j.provider.ConfigurationProviderBuilder;
+import org.cfg4j.source.context.environment.ImmutableEnvironment;
+import org.cfg4j.source.inmemory.InMemoryConfigurationSource;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.Ordered;
+import org.testng.annotations.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class AsyncConfigurationProviderTest {
+
+    /**
+     * 在 provider 之后执行的后处理器, 记录它执行期间后台初始化是否在进行
+     */
+    public static class InitProbe implements BeanDefinitionRegistryPostProcessor, Ordered {
+
+        static volatile String providerKey;
+
+        static volatile boolean doneWhileRunning;
+
+        @Override
+        public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+            // provider 在本后处理器之前已经获取, 初始化在后台线程上进行
+            AsyncConfigurationProvider provider = (AsyncConfigurationProvider) ConfigurationProviderRegistry.shared().get(providerKey);
+            for (int i = 0; i < 500 && !provider.isDone(); i++) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            doneWhileRunning = provider.isDone();
+        }
+
+        @Override
+        public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        }
+
+        @Override
+        public int getOrder() {
+            return 0;
+        }
+    }
+
+    @Test
+    public void testWaitOnFirstLookup() throws Exception {
+        CompletableFuture<ConfigurationProvider> future = new CompletableFuture<>();
+        AsyncConfigurationProvider provider = new AsyncConfigurationProvider(future);
+        assertFalse(provider.isDone());
+
+        Future<String> lookup = Executors.newSingleThreadExecutor().submit(() -> provider.getProperty("a", String.class));
+        Thread.sleep(50);
+        assertFalse(lookup.isDone());
+
+        Properties prop = new Properties();
+        prop.setProperty("a", "1");
+        future.complete(new ConfigurationProviderBuilder()
+            .withConfigurationSource(new InMemoryConfigurationSource(prop))
+            .withEnvironment(new ImmutableEnvironment(""))
+            .build());
+
+        assertEquals(lookup.get(5, TimeUnit.SECONDS), "1");
+        assertTrue(provider.isDone());
+        assertEquals(provider.allConfigurationAsProperties().getProperty("a"), "1");
+    }
+
+    @Test
+    public void testInitOverlapsPostProcessors() throws Exception {
+        System.setProperty("configFile", "app-file-async.properties");
+        Properties origin = new Properties();
+        origin.load(getClass().getClassLoader().getResourceAsStream("app-file-async.properties"));
+        InitProbe.providerKey = ConfigurationProviderRegistry.keyOf(origin);
+
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("classpath:spring-config-file-async.xml");
+        try {
+            // 主线程停在其他后处理器中时, 后台初始化已经完成, 不需要等到占位符解析
+            assertTrue(InitProbe.doneWhileRunning);
+            assertEquals(context.getBean(Dummy.class).getName(), "hello");
+        } finally {
+            context.close();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInitFailure() {
+        CompletableFuture<ConfigurationProvider> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalArgumentException("illegal origin config"));
+
+        new AsyncConfigurationProvider(future).allConfigurationAsProperties();
+    }
+}
@@ -0,0 +1,123 @@
+package cm.cfg4j.spring.config;
+
+import org.cfg4j.provider.ConfigurationProviderBuilder;
+import org.testng.annotations.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ConfigurationProviderRegistryTest {
+
+    @Test
+    public void testShareAndRelease() {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        ConfigurationProviderRegistry registry = new ConfigurationProviderRegistry(prop -> {
+            created.incrementAndGet();
+            return new ManagedConfigurationProvider(new ConfigurationProviderBuilder().build(), closed::incrementAndGet);
+        });
+
+        Properties a = origin("a.properties, b.properties");
+        Properties b = origin("a.properties;b.properties");
+        b.setProperty("reload", "30s");
+
+        String key = registry.acquire(a);
+        assertEquals(registry.acquire(b), key);
+        assertSame(registry.get(key), registry.get(ConfigurationProviderRegistry.keyOf(b)));
+        assertEquals(created.get(), 1);
+        assertEquals(registry.references(key), 2);
+
+        assertNotEquals(registry.acquire(origin("c.properties")), key);
+        assertEquals(created.get(), 2);
+
+        registry.release(key);
+        assertEquals(closed.get(), 0);
+        registry.release(key);
+        assertEquals(closed.get(), 1);
+        assertEquals(registry.references(key), 0);
+    }
+
+    @Test
+    public void testCreateOutsideLock() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+        ConfigurationProviderRegistry registry = new ConfigurationProviderRegistry(prop -> {
+            created.incrementAndGet();
+            if (prop.getProperty("files").startsWith("slow")) {
+                started.countDown();
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new ManagedConfigurationProvider(new ConfigurationProviderBuilder().build(), () -> {
+            });
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> registry.acquire(origin("slow.properties")));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> registry.acquire(origin("slow.properties")));
+
+            // 一个来源创建缓慢时, 其他来源的获取不被阻塞, 同一来源的获取等待创建完成
+            registry.acquire(origin("fast.properties"));
+            assertFalse(second.isDone());
+
+            gate.countDown();
+            String key = first.get(5, TimeUnit.SECONDS);
+            assertEquals(second.get(5, TimeUnit.SECONDS), key);
+            assertEquals(registry.references(key), 2);
+            assertEquals(created.get(), 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedCreation() {
+        AtomicInteger created = new AtomicInteger();
+        ConfigurationProviderRegistry registry = new ConfigurationProviderRegistry(prop -> {
+            if (created.incrementAndGet() == 1)
+                throw new IllegalArgumentException("illegal origin config");
+            return new ManagedConfigurationProvider(new ConfigurationProviderBuilder().build(), () -> {
+            });
+        });
+
+        try {
+            registry.acquire(origin("a.properties"));
+            fail("creation failed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(registry.references(ConfigurationProviderRegistry.keyOf(origin("a.properties"))), 0);
+
+        // 失败的条目被移除, 下次获取重新创建
+        String key = registry.acquire(origin("a.properties"));
+        assertEquals(registry.references(key), 1);
+        assertEquals(created.get(), 2);
+    }
+
+    private Properties origin(String files) {
+        Properties prop = new Properties();
+        prop.setProperty("type", "file");
+        prop.setProperty("project", "demo");
+        prop.setProperty("profile", " dev ");
+        prop.setProperty("files", files);
+        return prop;
+    }
+}
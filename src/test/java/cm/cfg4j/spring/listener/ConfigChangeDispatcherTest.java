@@ -0,0 +1,62 @@
+package cm.cfg4j.spring.listener;
+
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
+import org.testng.annotations.Test;
+
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class ConfigChangeDispatcherTest {
+
+    @Test
+    public void testDiff() throws Exception {
+        Properties oldProp = new Properties();
+        oldProp.setProperty("db.url", "a");
+        oldProp.setProperty("db.user", "u");
+        oldProp.setProperty("feature.x", "on");
+
+        Properties newProp = new Properties();
+        newProp.setProperty("db.url", "b");
+        newProp.setProperty("db.user", "u");
+        newProp.setProperty("feature.y", "on");
+
+        ConfigChangeEvent event = ConfigChangeEvent.between(PropertiesSnapshot.of(oldProp), PropertiesSnapshot.of(newProp));
+        assertEquals(event.getChanges().size(), 3);
+        assertTrue(event.isChanged("db.url"));
+        assertFalse(event.isChanged("db.user"));
+
+        ConfigChangeEvent feature = event.filter("feature.");
+        assertEquals(feature.getChanges().size(), 2);
+        assertEquals(feature.getChanges().get(0).getType(), ConfigChangeEvent.ChangeType.REMOVED);
+        assertEquals(feature.getChanges().get(1).getType(), ConfigChangeEvent.ChangeType.ADDED);
+
+        ConfigChangeEvent db = event.filter("db.");
+        assertEquals(db.getChanges().size(), 1);
+        assertEquals(db.getChanges().get(0).getOldValue(), "a");
+        assertEquals(db.getChanges().get(0).getNewValue(), "b");
+    }
+
+    @Test
+    public void testPublish() throws Exception {
+        ConfigChangeDispatcher dispatcher = new ConfigChangeDispatcher();
+
+        BlockingQueue<ConfigChangeEvent> received = new ArrayBlockingQueue<>(10);
+        dispatcher.addListener("db.", received::add);
+        AtomicInteger others = new AtomicInteger();
+        dispatcher.addListener("other.", e -> others.incrementAndGet());
+
+        Properties prop = new Properties();
+        prop.setProperty("db.url", "a");
+        dispatcher.publish(PropertiesSnapshot.empty(), PropertiesSnapshot.of(prop));
+
+        ConfigChangeEvent event = received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(event.getChanges().get(0).getKey(), "db.url");
+        assertEquals(others.get(), 0);
+    }
+}
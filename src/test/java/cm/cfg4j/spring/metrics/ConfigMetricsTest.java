@@ -0,0 +1,52 @@
+package cm.cfg4j.spring.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ConfigMetricsTest {
+
+    @Test
+    public void testRecordAndExpose() throws Exception {
+        ConfigMetrics metrics = new ConfigMetrics("file", "demo:dev");
+        try {
+            for (int i = 0; i < 99; i++)
+                metrics.recordReloadSuccess(TimeUnit.MILLISECONDS.toNanos(3));
+            metrics.recordReloadFailure(TimeUnit.MILLISECONDS.toNanos(700));
+            metrics.recordApplied(10, 200, 2);
+            metrics.recordLookup(true);
+            metrics.recordLookup(false);
+
+            assertEquals(metrics.getReloadCount(), 100);
+            assertEquals(metrics.getReloadFailureCount(), 1);
+            assertEquals(metrics.getReloadP50Millis(), 5);
+            assertEquals(metrics.getReloadP99Millis(), 5);
+            assertEquals(metrics.percentile(1.0), 1000);
+            assertEquals(metrics.getLookupMissCount(), 1);
+            assertTrue(metrics.getMillisSinceLastSuccess() >= 0);
+
+            metrics.registerMBean();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("cm.cfg4j.spring:type=ConfigMetrics,backend=\"file\",name=\"demo:dev\"");
+            assertEquals(server.getAttribute(name, "KeyCount"), 10);
+            assertEquals(server.getAttribute(name, "ChangedKeyCount"), 2L);
+
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            new ConfigMetricsBinder(metrics).bindTo(registry);
+            assertEquals(registry.get("cfg4j.lookups").functionCounter().count(), 2.0);
+            assertEquals(registry.get("cfg4j.reload").functionTimer().count(), 100.0);
+
+            metrics.close();
+            assertTrue(!server.isRegistered(name));
+        } finally {
+            metrics.close();
+        }
+    }
+}
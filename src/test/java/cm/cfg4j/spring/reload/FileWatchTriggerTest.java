@@ -0,0 +1,35 @@
+package cm.cfg4j.spring.reload;
+
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertTrue;
+
+public class FileWatchTriggerTest {
+
+    @Test
+    public void testTriggerOnChange() throws Exception {
+        Path dir = Files.createTempDirectory("cfg4j-watch");
+        Path file = dir.resolve("config.properties");
+        Files.write(file, "a=1".getBytes(StandardCharsets.UTF_8));
+
+        CountDownLatch latch = new CountDownLatch(1);
+        FileWatchTrigger trigger = new FileWatchTrigger(Collections.singletonList(file));
+        trigger.start(latch::countDown);
+        try {
+            // 不被关注的文件不会触发
+            Files.write(dir.resolve("other.properties"), "b=1".getBytes(StandardCharsets.UTF_8));
+            Files.write(file, "a=2".getBytes(StandardCharsets.UTF_8));
+
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+        } finally {
+            trigger.stop();
+        }
+    }
+}
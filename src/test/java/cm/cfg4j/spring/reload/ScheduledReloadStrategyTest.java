@@ -0,0 +1,90 @@
+package cm.cfg4j.spring.reload;
+
+import org.cfg4j.source.reload.Reloadable;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ScheduledReloadStrategyTest {
+
+    @Test
+    public void testBackoff() throws Exception {
+        ScheduledReloadStrategy strategy = new ScheduledReloadStrategy(Duration.ofSeconds(10), 0, Duration.ofSeconds(60));
+
+        assertEquals(strategy.nextDelay(0), 10000L);
+        assertEquals(strategy.nextDelay(1), 20000L);
+        assertEquals(strategy.nextDelay(2), 40000L);
+        assertEquals(strategy.nextDelay(3), 60000L);
+        assertEquals(strategy.nextDelay(100), 60000L);
+    }
+
+    @Test
+    public void testJitter() throws Exception {
+        ScheduledReloadStrategy strategy = new ScheduledReloadStrategy(Duration.ofSeconds(10), 0.2, Duration.ofSeconds(60));
+
+        for (int i = 0; i < 1000; i++) {
+            long delay = strategy.nextDelay(0);
+            assertTrue(delay >= 8000L && delay <= 12000L, "delay out of range: " + delay);
+        }
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        CountDownLatch latch = new CountDownLatch(3);
+        Reloadable reloadable = latch::countDown;
+
+        ScheduledReloadStrategy strategy = new ScheduledReloadStrategy(20, TimeUnit.MILLISECONDS);
+        strategy.register(reloadable);
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            strategy.deregister(reloadable);
+        }
+    }
+
+    @Test
+    public void testBlockedReloadDoesNotStarveOthers() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        ScheduledReloadStrategy strategy = new ScheduledReloadStrategy(Duration.ofMillis(20), 0, Duration.ofMillis(20), scheduler, workers);
+
+        // 首次 reload 在注册线程上完成, 之后的 reload 一直挂起
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger blockedCalls = new AtomicInteger();
+        Reloadable blocked = () -> {
+            if (blockedCalls.incrementAndGet() > 1) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        CountDownLatch fired = new CountDownLatch(5);
+        Reloadable other = fired::countDown;
+
+        strategy.register(blocked);
+        strategy.register(other);
+        try {
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            // 挂起的 reload 没有完成之前不会再次调度
+            assertEquals(blockedCalls.get(), 2);
+        } finally {
+            release.countDown();
+            strategy.deregister(blocked);
+            strategy.deregister(other);
+            scheduler.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package cm.cfg4j.spring.snapshot;
+
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class ConfigBinderTest {
+
+    public interface PoolConfig {
+
+        int size();
+
+        Long maxWait();
+
+        boolean enabled();
+
+        Duration timeout();
+
+        List<String> hosts();
+
+        TimeUnit unit();
+
+        String name();
+
+        default String label() {
+            return name() + ":" + size();
+        }
+    }
+
+    public interface Unsupported {
+
+        Object value();
+    }
+
+    @Test
+    public void testBind() throws Exception {
+        Properties prop = new Properties();
+        prop.setProperty("pool.size", "8");
+        prop.setProperty("pool.maxWait", "100");
+        prop.setProperty("pool.enabled", "true");
+        prop.setProperty("pool.timeout", "15s");
+        prop.setProperty("pool.hosts", "a, b");
+        prop.setProperty("pool.unit", "seconds");
+        prop.setProperty("pool.name", "main");
+
+        AtomicReference<PropertiesSnapshot> holder = new AtomicReference<>(PropertiesSnapshot.of(prop));
+        ConfigBinder binder = new ConfigBinder(holder);
+        PoolConfig config = binder.bind("pool", PoolConfig.class);
+
+        assertFalse(Proxy.isProxyClass(config.getClass()));
+        assertEquals(config.size(), 8);
+        assertEquals(config.maxWait(), Long.valueOf(100L));
+        assertTrue(config.enabled());
+        assertEquals(config.timeout(), Duration.ofSeconds(15));
+        assertEquals(config.hosts(), Arrays.asList("a", "b"));
+        assertEquals(config.unit(), TimeUnit.SECONDS);
+        assertEquals(config.label(), "main:8");
+
+        // 相关的值未变化时沿用原来的对象
+        Duration timeout = config.timeout();
+        prop.setProperty("other", "x");
+        holder.set(PropertiesSnapshot.of(prop));
+        assertSame(config.timeout(), timeout);
+
+        prop.setProperty("pool.size", "16");
+        holder.set(PropertiesSnapshot.of(prop));
+        assertEquals(config.size(), 16);
+
+        // 无法转换的新值被忽略, 继续使用之前的值
+        prop.setProperty("pool.size", "x");
+        holder.set(PropertiesSnapshot.of(prop));
+        assertEquals(config.size(), 16);
+
+        // 同一个接口可以按不同前缀多次绑定
+        prop.setProperty("backup.size", "2");
+        prop.setProperty("backup.maxWait", "1");
+        prop.setProperty("backup.enabled", "false");
+        prop.setProperty("backup.timeout", "1m");
+        prop.setProperty("backup.hosts", "c");
+        prop.setProperty("backup.unit", "minutes");
+        prop.setProperty("backup.name", "backup");
+        holder.set(PropertiesSnapshot.of(prop));
+        PoolConfig backup = binder.bind("backup", PoolConfig.class);
+        assertSame(backup.getClass(), config.getClass());
+        assertEquals(backup.size(), 2);
+        assertEquals(backup.timeout(), Duration.ofMinutes(1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingProperty() throws Exception {
+        new ConfigBinder(new AtomicReference<>(PropertiesSnapshot.empty())).bind("pool", PoolConfig.class);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsupportedType() throws Exception {
+        new ConfigBinder(new AtomicReference<>(PropertiesSnapshot.empty())).bind("", Unsupported.class);
+    }
+}
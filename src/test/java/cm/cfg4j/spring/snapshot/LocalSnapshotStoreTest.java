@@ -0,0 +1,32 @@
+package cm.cfg4j.spring.snapshot;
+
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class LocalSnapshotStoreTest {
+
+    @Test
+    public void testReadWrite() throws Exception {
+        Path file = Files.createTempDirectory("cfg4j-snapshot").resolve("app.snapshot");
+        LocalSnapshotStore store = new LocalSnapshotStore(file);
+        assertNull(store.read());
+
+        Properties prop = new Properties();
+        prop.setProperty("dummy.name", "hello");
+        prop.setProperty("中文", "值");
+        store.write(prop);
+        assertEquals(store.read(), prop);
+
+        // 内容被篡改后校验失败
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 2] = 'x';
+        Files.write(file, bytes);
+        assertNull(store.read());
+    }
+}
@@ -0,0 +1,99 @@
+package cm.cfg4j.spring.snapshot;
+
+import cm.cfg4j.spring.SubTreePropertySource;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.*;
+
+public class PropertiesSnapshotTest {
+
+    @Test
+    public void testLookup() throws Exception {
+        Properties prop = new Properties();
+        for (int i = 0; i < 1000; i++)
+            prop.setProperty("key." + i, "value." + i);
+        // "Aa" 与 "BB" 的 hashCode 相同
+        prop.setProperty("Aa", "1");
+        prop.setProperty("BB", "2");
+
+        PropertiesSnapshot snapshot = PropertiesSnapshot.of(prop);
+        assertEquals(snapshot.size(), 1002);
+        assertEquals(snapshot.get("key.0"), "value.0");
+        assertEquals(snapshot.get("key.999"), "value.999");
+        assertEquals(snapshot.get(new String("key.500")), "value.500");
+        assertEquals(snapshot.get("Aa"), "1");
+        assertEquals(snapshot.get("BB"), "2");
+        assertNull(snapshot.get("key.1000"));
+        assertNull(snapshot.get(null));
+        assertEquals(snapshot.toProperties(), prop);
+    }
+
+    @Test
+    public void testPropertyNames() throws Exception {
+        Properties prop = new Properties();
+        prop.setProperty("b", "2");
+        prop.setProperty("a", "1");
+
+        PropertiesSnapshot snapshot = PropertiesSnapshot.of(prop);
+        assertEquals(snapshot.getPropertyNames(), new String[]{"a", "b"});
+
+        assertTrue(PropertiesSnapshot.of(new Properties()).isEmpty());
+        assertNull(PropertiesSnapshot.empty().get("a"));
+    }
+
+    @Test
+    public void testBuilder() throws Exception {
+        PropertiesSnapshot.Builder builder = PropertiesSnapshot.builder(4);
+        Properties expected = new Properties();
+        for (int i = 999; i >= 0; i--) {
+            builder.put("key." + i, "value." + i);
+            expected.setProperty("key." + i, "value." + i);
+        }
+        // 同名属性以后加入的为准
+        builder.put("key.7", "override");
+        expected.setProperty("key.7", "override");
+
+        PropertiesSnapshot snapshot = builder.build();
+        assertEquals(snapshot.size(), 1000);
+        assertEquals(snapshot.get("key.7"), "override");
+        assertEquals(snapshot.nameAt(0), "key.0");
+        assertEquals(snapshot.toProperties(), expected);
+        assertTrue(PropertiesSnapshot.builder(0).build().isEmpty());
+    }
+
+    @Test
+    public void testSubTree() throws Exception {
+        Properties prop = new Properties();
+        prop.setProperty("databasePool", "root");
+        prop.setProperty("databasePool-x", "sibling");
+        prop.setProperty("databasePool.primary.url", "jdbc:a");
+        prop.setProperty("databasePool.primary.user", "sa");
+        prop.setProperty("databasePool.size", "8");
+        prop.setProperty("databasePoolx.size", "1");
+        prop.setProperty("feature.a", "on");
+        PropertiesSnapshot snapshot = PropertiesSnapshot.of(prop);
+
+        PropertiesSnapshot.SubTree pool = snapshot.subTree("databasePool");
+        assertEquals(pool.getPrefix(), "databasePool.");
+        assertEquals(pool.getPropertyNames(), new String[]{"primary.url", "primary.user", "size"});
+        assertEquals(pool.getChildNames(), Arrays.asList("primary", "size"));
+        assertEquals(pool.get("size"), "8");
+        assertEquals(pool.nameAt(0), "primary.url");
+        assertEquals(pool.valueAt(0), "jdbc:a");
+        assertEquals(pool.subTree("primary").toProperties().getProperty("user"), "sa");
+        assertEquals(snapshot.subTree("databasePool.").size(), 3);
+        assertTrue(snapshot.subTree("missing").isEmpty());
+        assertEquals(snapshot.subTree("").size(), snapshot.size());
+        assertEquals(snapshot.subTree("").getChildNames(), Arrays.asList("databasePool", "databasePool-x", "databasePoolx", "feature"));
+
+        SubTreePropertySource source = new SubTreePropertySource("pool", new AtomicReference<>(snapshot), "databasePool");
+        assertEquals(source.getProperty("primary.url"), "jdbc:a");
+        assertTrue(source.containsProperty("size"));
+        assertFalse(source.containsProperty("feature.a"));
+        assertEquals(source.getPropertyNames().length, 3);
+    }
+}
@@ -0,0 +1,62 @@
+package cm.cfg4j.spring.snapshot;
+
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TypedPropertiesTest {
+
+    @Test
+    public void testTypedValues() throws Exception {
+        Properties prop = new Properties();
+        prop.setProperty("pool.size", "8");
+        prop.setProperty("pool.timeout", "15s");
+        prop.setProperty("pool.enabled", "true");
+        prop.setProperty("pool.hosts", "a, b,,c");
+        prop.setProperty("pool.unit", "seconds");
+        prop.setProperty("pool.broken", "x");
+
+        AtomicReference<PropertiesSnapshot> holder = new AtomicReference<>(PropertiesSnapshot.of(prop));
+        TypedProperties typed = new TypedProperties(holder);
+
+        TypedProperties.IntProperty size = typed.intProperty("pool.size", 1);
+        TypedProperties.ObjectProperty<Duration> timeout = typed.durationProperty("pool.timeout", Duration.ZERO);
+        TypedProperties.ObjectProperty<TimeUnit> unit = typed.enumProperty("pool.unit", TimeUnit.class, TimeUnit.MILLISECONDS);
+
+        assertEquals(size.get(), 8);
+        assertEquals(timeout.get(), Duration.ofSeconds(15));
+        assertTrue(typed.booleanProperty("pool.enabled", false).get());
+        assertEquals(typed.listProperty("pool.hosts").get(), Arrays.asList("a", "b", "c"));
+        assertEquals(unit.get(), TimeUnit.SECONDS);
+        assertEquals(typed.longProperty("pool.broken", 3L).get(), 3L);
+        assertEquals(typed.intProperty("pool.missing", 5).get(), 5);
+
+        // 值未变化时沿用已解析的对象, 变化后重新解析
+        Duration parsed = timeout.get();
+        prop.setProperty("pool.size", "16");
+        holder.set(PropertiesSnapshot.of(prop));
+        assertSame(timeout.get(), parsed);
+        assertEquals(size.get(), 16);
+
+        prop.setProperty("pool.enabled", "false");
+        holder.set(PropertiesSnapshot.of(prop));
+        assertFalse(typed.booleanProperty("pool.enabled", true).get());
+    }
+
+    @Test
+    public void testParseDuration() throws Exception {
+        assertEquals(TypedProperties.parseDuration("500"), Duration.ofMillis(500));
+        assertEquals(TypedProperties.parseDuration("500ms"), Duration.ofMillis(500));
+        assertEquals(TypedProperties.parseDuration("5m"), Duration.ofMinutes(5));
+        assertEquals(TypedProperties.parseDuration("PT1H"), Duration.ofHours(1));
+    }
+}
@@ -0,0 +1,90 @@
+package cm.cfg4j.spring.source;
+
+import org.cfg4j.source.ConfigurationSource;
+import org.cfg4j.source.context.environment.DefaultEnvironment;
+import org.cfg4j.source.context.environment.Environment;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class CompositeConfigurationSourceTest {
+
+    @Test
+    public void testPrecedenceAndFailureIsolation() {
+        StubSource defaults = new StubSource(300, "a", "git", "b", "git");
+        StubSource db = new StubSource(300, "b", "db");
+        StubSource local = new StubSource(300, "c", "local");
+        local.failing = true;
+
+        CompositeConfigurationSource source = new CompositeConfigurationSource(Arrays.asList(
+            new CompositeConfigurationSource.Layer("defaults", defaults, new DefaultEnvironment()),
+            new CompositeConfigurationSource.Layer("db", db, new DefaultEnvironment()),
+            new CompositeConfigurationSource.Layer("local", local, new DefaultEnvironment())
+        ), 3, 5000);
+
+        long start = System.currentTimeMillis();
+        source.init();
+        assertTrue(System.currentTimeMillis() - start < 800, "layers should be loaded in parallel");
+
+        Properties prop = source.getConfiguration(new DefaultEnvironment());
+        assertEquals(prop.getProperty("a"), "git");
+        assertEquals(prop.getProperty("b"), "db");
+        assertEquals(prop.getProperty("c"), null);
+
+        // 失败的层在下一轮重试, 并覆盖前面的层
+        local.failing = false;
+        local.properties.setProperty("b", "local");
+        source.reload();
+        prop = source.getConfiguration(new DefaultEnvironment());
+        assertEquals(prop.getProperty("b"), "local");
+        assertEquals(prop.getProperty("c"), "local");
+
+        source.close();
+    }
+
+    private static final class StubSource implements ConfigurationSource {
+
+        private final long delayMillis;
+
+        private final Properties properties = new Properties();
+
+        private volatile boolean failing;
+
+        private StubSource(long delayMillis, String... keyValues) {
+            this.delayMillis = delayMillis;
+            for (int i = 0; i < keyValues.length; i += 2)
+                properties.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+
+        @Override
+        public Properties getConfiguration(Environment environment) {
+            Properties prop = new Properties();
+            prop.putAll(properties);
+            return prop;
+        }
+
+        @Override
+        public void init() {
+            load();
+        }
+
+        @Override
+        public void reload() {
+            load();
+        }
+
+        private void load() {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing)
+                throw new IllegalStateException("backend is down");
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package cm.cfg4j.spring.source;
+
+import cm.cfg4j.spring.reload.ConsulWatchTrigger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.cfg4j.source.context.environment.ImmutableEnvironment;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * 以本地 HTTP 服务模拟 Consul 的 KV 递归查询和阻塞查询
+ */
+public class ConsulConfigurationSourceTest {
+
+    private final Map<String, String> kv = new TreeMap<>();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private long index = 10;
+
+    private boolean stopped;
+
+    private HttpServer server;
+
+    private String url;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/kv/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        synchronized (kv) {
+            stopped = true;
+            kv.notifyAll();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void testBlockingQuery() throws Exception {
+        put("demo/prod/db/url", "jdbc:mysql://db");
+        put("demo/prod/name", "a");
+        put("demo/prod/", null);
+        put("demo/dev/name", "dev");
+
+        ConsulConfigurationSource source = new ConsulConfigurationSource(url, "demo", "prod");
+        source.init();
+        Properties prop = source.getConfiguration(new ImmutableEnvironment("prod"));
+        assertEquals(prop.size(), 2);
+        assertEquals(prop.getProperty("db.url"), "jdbc:mysql://db");
+
+        Semaphore changes = new Semaphore(0);
+        ConsulWatchTrigger trigger = new ConsulWatchTrigger(source, 5000L);
+        trigger.start(changes::release);
+
+        // 空闲时只有一个挂起的阻塞查询
+        Thread.sleep(300);
+        assertEquals(requests.get(), 2);
+
+        put("demo/prod/name", "b");
+        assertTrue(changes.tryAcquire(2, TimeUnit.SECONDS));
+
+        // reload 直接使用阻塞查询返回的数据
+        int before = requests.get();
+        source.reload();
+        assertEquals(requests.get(), before);
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("name"), "b");
+
+        // 其他 profile 的变更不触发 reload
+        put("demo/dev/name", "dev2");
+        Thread.sleep(300);
+        assertEquals(changes.availablePermits(), 0);
+
+        trigger.stop();
+    }
+
+    private void put(String key, String value) {
+        synchronized (kv) {
+            kv.put(key, value);
+            index++;
+            kv.notifyAll();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+
+        String prefix = exchange.getRequestURI().getPath().substring("/v1/kv/".length());
+        long requestIndex = 0;
+        String query = exchange.getRequestURI().getQuery();
+        for (String param : query == null ? new String[0] : query.split("&")) {
+            if (param.startsWith("index="))
+                requestIndex = Long.parseLong(param.substring("index=".length()));
+        }
+
+        JSONArray entries = new JSONArray();
+        long responseIndex;
+        synchronized (kv) {
+            long deadline = System.currentTimeMillis() + 5000L;
+            try {
+                while (!stopped && requestIndex == index && System.currentTimeMillis() < deadline)
+                    kv.wait(deadline - System.currentTimeMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            responseIndex = index;
+            for (Map.Entry<String, String> e : kv.entrySet()) {
+                if (!e.getKey().startsWith(prefix))
+                    continue;
+
+                JSONObject entry = new JSONObject();
+                entry.put("Key", e.getKey());
+                entry.put("Value", e.getValue() == null ? JSONObject.NULL : Base64.getEncoder().encodeToString(e.getValue().getBytes(StandardCharsets.UTF_8)));
+                entries.put(entry);
+            }
+        }
+
+        byte[] body = entries.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("X-Consul-Index", String.valueOf(responseIndex));
+        exchange.sendResponseHeaders(entries.length() == 0 ? 404 : 200, entries.length() == 0 ? -1 : body.length);
+        if (entries.length() > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,386 @@
+package cm.cfg4j.spring.source;
+
+import cm.cfg4j.spring.reload.DatabaseVersionTrigger;
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
+import org.cfg4j.source.context.environment.ImmutableEnvironment;
+import org.h2.jdbcx.JdbcDataSource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * 以内存 H2(MySQL 兼容模式)代替 MySQL
+ */
+public class DatabaseConfigurationSourceTest {
+
+    private JdbcDataSource dataSource;
+
+    private Connection keepAlive;
+
+    @BeforeMethod
+    public void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:cfg4j_" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+
+        keepAlive = dataSource.getConnection();
+        execute("CREATE TABLE TB_CONFIG (ID INTEGER PRIMARY KEY AUTO_INCREMENT, PROJECT VARCHAR(255) NOT NULL," +
+            " PROFILE VARCHAR(255) NOT NULL DEFAULT 'default', `KEY` VARCHAR(255) NOT NULL, `VALUE` VARCHAR(255) NOT NULL," +
+            " DELETED TINYINT NOT NULL DEFAULT 0, UPDATE_AT TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        execute("INSERT INTO TB_CONFIG (PROJECT, PROFILE, `KEY`, `VALUE`) VALUES" +
+            " ('demo', 'prod', 'a', '1'), ('demo', 'prod', 'b', '2'), ('demo', 'dev', 'a', 'dev'), ('other', 'prod', 'a', 'other')");
+    }
+
+    @AfterMethod
+    public void tearDown() throws SQLException {
+        keepAlive.close();
+    }
+
+    @Test
+    public void testIncrementalWithoutProfile() throws SQLException {
+        DatabaseConfigurationSource source = new DatabaseConfigurationSource(dataSource, "TB_CONFIG", "demo");
+        source.setIncremental(true);
+        source.setDeletedColumn("deleted");
+        source.setFullSyncCycles(4);
+
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("a"), "1");
+        Properties dev = source.getConfiguration(new ImmutableEnvironment("dev"));
+        String fingerprint = source.getFingerprint();
+
+        // 新增
+        execute("INSERT INTO TB_CONFIG (PROJECT, PROFILE, `KEY`, `VALUE`) VALUES ('demo', 'prod', 'c', '3')");
+        source.reload();
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("c"), "3");
+        // 未变化的 profile 沿用原来的对象
+        assertSame(source.getConfiguration(new ImmutableEnvironment("dev")), dev);
+
+        // 修改
+        execute("UPDATE TB_CONFIG SET `VALUE` = '20', UPDATE_AT = CURRENT_TIMESTAMP WHERE PROFILE = 'prod' AND `KEY` = 'b'");
+        source.reload();
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("b"), "20");
+
+        // 软删除
+        execute("UPDATE TB_CONFIG SET DELETED = 1, UPDATE_AT = CURRENT_TIMESTAMP WHERE PROFILE = 'prod' AND `KEY` = 'a'");
+        source.reload();
+        Properties prop = source.getConfiguration(new ImmutableEnvironment("prod"));
+        assertNull(prop.getProperty("a"));
+        assertEquals(prop.size(), 2);
+        assertNotEquals(source.getFingerprint(), fingerprint);
+
+        // 物理删除只能由全量同步发现: 第 4 次仍是增量, 第 5 次全量
+        execute("DELETE FROM TB_CONFIG WHERE PROFILE = 'prod' AND `KEY` = 'c'");
+        source.reload();
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("c"), "3");
+        source.reload();
+        assertNull(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("c"));
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("b"), "20");
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("dev")).getProperty("a"), "dev");
+
+        source.close();
+    }
+
+    @Test
+    public void testStreamingProfile() throws SQLException {
+        DatabaseConfigurationSource source = new DatabaseConfigurationSource(dataSource, "TB_CONFIG", "demo");
+        source.setProfile("prod");
+        source.setIncremental(true);
+        source.setDeletedColumn("deleted");
+        source.setFetchSize(1);
+
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("a"), "1");
+        PropertiesSnapshot snapshot = source.getSnapshot();
+        assertEquals(snapshot.size(), 2);
+        String fingerprint = source.getFingerprint();
+
+        // 未变化时快照不变
+        source.reload();
+        assertSame(source.getSnapshot(), snapshot);
+
+        execute("UPDATE TB_CONFIG SET `VALUE` = '3', UPDATE_AT = CURRENT_TIMESTAMP WHERE PROFILE = 'prod' AND `KEY` = 'b'");
+        execute("UPDATE TB_CONFIG SET DELETED = 1, UPDATE_AT = CURRENT_TIMESTAMP WHERE PROFILE = 'prod' AND `KEY` = 'a'");
+        source.reload();
+        assertEquals(source.getSnapshot().get("b"), "3");
+        assertNull(source.getSnapshot().get("a"));
+        assertNotEquals(source.getFingerprint(), fingerprint);
+
+        source.close();
+    }
+
+    @Test
+    public void testFallbackProfiles() throws SQLException {
+        execute("INSERT INTO TB_CONFIG (PROJECT, PROFILE, `KEY`, `VALUE`) VALUES" +
+            " ('demo', 'default', 'a', 'default'), ('demo', 'default', 'c', 'default'), ('other', 'default', 'd', 'other')");
+
+        DatabaseConfigurationSource source = new DatabaseConfigurationSource(dataSource, "TB_CONFIG", "demo");
+        source.setProfiles(Arrays.asList("prod", "default"));
+        source.setIncremental(true);
+        source.setDeletedColumn("deleted");
+
+        Properties prop = source.getConfiguration(new ImmutableEnvironment("prod"));
+        assertEquals(prop.getProperty("a"), "1");
+        assertEquals(prop.getProperty("b"), "2");
+        assertEquals(prop.getProperty("c"), "default");
+        assertEquals(prop.size(), 3);
+
+        // 删除 prod 中的配置后回退到 default
+        execute("UPDATE TB_CONFIG SET DELETED = 1, UPDATE_AT = CURRENT_TIMESTAMP WHERE PROFILE = 'prod' AND `KEY` = 'a'");
+        execute("UPDATE TB_CONFIG SET `VALUE` = 'changed', UPDATE_AT = CURRENT_TIMESTAMP WHERE PROFILE = 'default' AND `KEY` = 'c'");
+        source.reload();
+        assertEquals(source.getSnapshot().get("a"), "default");
+        assertEquals(source.getSnapshot().get("c"), "changed");
+
+        source.close();
+    }
+
+    @Test
+    public void testCaseInsensitiveProfile() throws SQLException {
+        // 模拟 MySQL 不区分大小写的排序规则
+        execute("ALTER TABLE TB_CONFIG ALTER COLUMN PROFILE VARCHAR_IGNORECASE(255) NOT NULL");
+        execute("INSERT INTO TB_CONFIG (PROJECT, PROFILE, `KEY`, `VALUE`) VALUES ('demo', 'Default', 'c', 'default')");
+
+        DatabaseConfigurationSource source = new DatabaseConfigurationSource(dataSource, "TB_CONFIG", "demo");
+        source.setProfiles(Arrays.asList("PROD", "default"));
+        source.setIncremental(true);
+        source.setDeletedColumn("deleted");
+
+        Properties prop = source.getConfiguration(new ImmutableEnvironment("PROD"));
+        assertEquals(prop.getProperty("a"), "1");
+        assertEquals(prop.getProperty("c"), "default");
+        assertEquals(prop.size(), 3);
+
+        execute("UPDATE TB_CONFIG SET `VALUE` = 'changed', UPDATE_AT = CURRENT_TIMESTAMP WHERE PROFILE = 'prod' AND `KEY` = 'b'");
+        source.reload();
+        assertEquals(source.getSnapshot().get("b"), "changed");
+        assertEquals(source.getSnapshot().get("c"), "default");
+
+        source.close();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testProfilesDifferOnlyInCase() throws Exception {
+        new DatabaseConfigurationSource(dataSource, "TB_CONFIG", "demo").setProfiles(Arrays.asList("prod", "PROD"));
+    }
+
+    @Test
+    public void testConcurrentFirstLoadQueriesOnce() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        AtomicReference<CountDownLatch> gate = new AtomicReference<>(new CountDownLatch(1));
+        DatabaseConfigurationSource source = new DatabaseConfigurationSource(gatedDataSource(connections, gate), "TB_CONFIG", "demo");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Properties>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            futures.add(executor.submit(() -> source.getConfiguration(new ImmutableEnvironment("prod"))));
+
+        Thread.sleep(100);
+        gate.get().countDown();
+        for (Future<Properties> future : futures)
+            assertEquals(future.get(5, TimeUnit.SECONDS).getProperty("a"), "1");
+        executor.shutdown();
+
+        assertEquals(connections.get(), 1);
+        source.close();
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        AtomicReference<CountDownLatch> gate = new AtomicReference<>(new CountDownLatch(0));
+        DatabaseConfigurationSource source = new DatabaseConfigurationSource(gatedDataSource(connections, gate), "TB_CONFIG", "demo");
+        source.setProfile("prod");
+        source.setStaleWhileRevalidate(true);
+        source.setRevalidateTimeoutMillis(50);
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("b"), "2");
+
+        // 慢查询: reload 超时返回, 读取继续使用旧数据, 重复的 reload 共享进行中的查询
+        execute("UPDATE TB_CONFIG SET `VALUE` = '3' WHERE PROFILE = 'prod' AND `KEY` = 'b'");
+        gate.set(new CountDownLatch(1));
+        source.reload();
+        source.reload();
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("b"), "2");
+        assertEquals(connections.get(), 2);
+
+        gate.get().countDown();
+        for (int i = 0; i < 100 && "2".equals(source.getSnapshot().get("b")); i++)
+            Thread.sleep(20);
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("b"), "3");
+
+        source.close();
+    }
+
+    @Test
+    public void testSharedLoaderQueriesAllProjectsOnce() throws SQLException {
+        execute("INSERT INTO TB_CONFIG (PROJECT, PROFILE, `KEY`, `VALUE`) VALUES" +
+            " ('demo', 'default', 'c', 'default'), ('other', 'dev', 'a', 'other-dev')");
+        AtomicInteger connections = new AtomicInteger();
+        AtomicReference<CountDownLatch> gate = new AtomicReference<>(new CountDownLatch(0));
+        String key = "shared-" + System.nanoTime();
+        SharedDatabaseLoader loader = SharedDatabaseLoader.acquire(key, new DatabaseConnectionManager(gatedDataSource(connections, gate)),
+            "TB_CONFIG", "deleted", 60000L);
+        SharedDatabaseLoader same = SharedDatabaseLoader.acquire(key, new DatabaseConnectionManager(dataSource), "TB_CONFIG", "deleted", 60000L);
+        assertSame(same, loader);
+
+        SharedDatabaseConfigurationSource demo = new SharedDatabaseConfigurationSource(loader, "demo", Arrays.asList("prod", "default"));
+        SharedDatabaseConfigurationSource demoDev = new SharedDatabaseConfigurationSource(loader, "demo", Arrays.asList("dev"));
+        SharedDatabaseConfigurationSource other = new SharedDatabaseConfigurationSource(same, "other", Arrays.asList("prod"));
+        demo.init();
+        demoDev.init();
+        other.init();
+        assertEquals(connections.get(), 1);
+        Properties prop = demo.getConfiguration(new ImmutableEnvironment("prod"));
+        assertEquals(prop.getProperty("a"), "1");
+        assertEquals(prop.getProperty("b"), "2");
+        assertEquals(prop.getProperty("c"), "default");
+        assertEquals(demoDev.getConfiguration(new ImmutableEnvironment("dev")).getProperty("a"), "dev");
+        assertEquals(other.getConfiguration(new ImmutableEnvironment("prod")).getProperty("a"), "other");
+
+        AtomicInteger demoChanges = new AtomicInteger();
+        AtomicInteger otherChanges = new AtomicInteger();
+        loader.newTrigger("demo").start(demoChanges::incrementAndGet);
+        loader.newTrigger("other").start(otherChanges::incrementAndGet);
+
+        // 没有注册的 profile 不在查询范围内
+        String otherFingerprint = other.getFingerprint();
+        execute("UPDATE TB_CONFIG SET `VALUE` = 'changed' WHERE PROJECT = 'other' AND PROFILE = 'dev'");
+        loader.refresh();
+        assertEquals(otherChanges.get(), 0);
+        assertEquals(other.getFingerprint(), otherFingerprint);
+
+        // 每个周期一次查询, 只有数据变化的项目收到通知
+        String fingerprint = demo.getFingerprint();
+        execute("UPDATE TB_CONFIG SET `VALUE` = 'changed' WHERE PROJECT = 'other'");
+        loader.refresh();
+        assertEquals(connections.get(), 3);
+        assertEquals(demoChanges.get(), 0);
+        assertEquals(otherChanges.get(), 1);
+        assertEquals(demo.getFingerprint(), fingerprint);
+        assertEquals(other.getConfiguration(new ImmutableEnvironment("prod")).getProperty("a"), "changed");
+
+        execute("UPDATE TB_CONFIG SET DELETED = 1 WHERE PROJECT = 'demo' AND `KEY` = 'b'");
+        loader.refresh();
+        assertEquals(demoChanges.get(), 1);
+        assertNull(demo.getConfiguration(new ImmutableEnvironment("prod")).getProperty("b"));
+
+        demo.close();
+        demoDev.close();
+        other.close();
+        // 最后一个使用者释放后重新创建
+        SharedDatabaseLoader recreated = SharedDatabaseLoader.acquire(key, new DatabaseConnectionManager(dataSource), "TB_CONFIG", null, 60000L);
+        assertNotSame(recreated, loader);
+        recreated.release();
+    }
+
+    @Test
+    public void testVersionTriggerRunsOnWorkers() throws Exception {
+        execute("CREATE TABLE TB_CONFIG_VERSION (PROJECT VARCHAR(255) PRIMARY KEY, VERSION BIGINT NOT NULL DEFAULT 0)");
+        execute("INSERT INTO TB_CONFIG_VERSION (PROJECT, VERSION) VALUES ('demo', 1)");
+
+        BlockingQueue<String> threads = new ArrayBlockingQueue<>(10);
+        DatabaseVersionTrigger trigger = new DatabaseVersionTrigger(new DatabaseConnectionManager(dataSource), "TB_CONFIG_VERSION", "demo", 50L);
+        trigger.start(() -> threads.add(Thread.currentThread().getName()));
+        try {
+            // 基线在 start 中读取, 紧接着发生的变更也会被首次检查发现
+            execute("UPDATE TB_CONFIG_VERSION SET VERSION = 2 WHERE PROJECT = 'demo'");
+
+            // 版本查询和变更通知都不在调度线程上执行
+            String thread = threads.poll(5, TimeUnit.SECONDS);
+            assertNotNull(thread);
+            assertTrue(thread.startsWith("cfg4j-reload-worker-"), thread);
+        } finally {
+            trigger.stop();
+        }
+    }
+
+    @Test
+    public void testReconnect() throws SQLException {
+        DatabaseConnectionManager manager = new DatabaseConnectionManager("org.h2.Driver", dataSource.getURL(), dataSource.getUser(), dataSource.getPassword());
+        String sql = "SELECT COUNT(*) FROM TB_CONFIG WHERE PROJECT = ?";
+        List<Connection> used = new ArrayList<>();
+        DatabaseConnectionManager.StatementCallback<Integer> count = ps -> {
+            used.add(ps.getConnection());
+            ps.setString(1, "demo");
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        };
+
+        assertEquals(manager.execute(sql, count), Integer.valueOf(3));
+        assertEquals(manager.execute(sql, count), Integer.valueOf(3));
+        assertSame(used.get(1), used.get(0));
+
+        // 保活的连接在外部被关闭, isValid 校验失败后重新连接
+        used.get(0).close();
+        assertEquals(manager.execute(sql, count), Integer.valueOf(3));
+        assertNotSame(used.get(2), used.get(0));
+
+        // 执行出错后丢弃连接和语句缓存
+        try {
+            manager.execute(sql, ps -> {
+                used.add(ps.getConnection());
+                throw new SQLException("broken");
+            });
+            fail("callback failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(used.get(3).isClosed());
+        assertEquals(manager.execute(sql, count), Integer.valueOf(3));
+        assertNotSame(used.get(4), used.get(3));
+
+        manager.close();
+        assertTrue(used.get(4).isClosed());
+    }
+
+    /**
+     * 统计获取连接的次数, gate 打开之前获取连接会被阻塞, 用来模拟慢查询
+     */
+    private DataSource gatedDataSource(AtomicInteger connections, AtomicReference<CountDownLatch> gate) {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+            if ("getConnection".equals(method.getName())) {
+                connections.incrementAndGet();
+                gate.get().await(5, TimeUnit.SECONDS);
+            }
+            try {
+                return method.invoke(dataSource, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement st = keepAlive.createStatement()) {
+            st.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package cm.cfg4j.spring.source;
+
+import org.cfg4j.source.context.environment.ImmutableEnvironment;
+import org.h2.api.Trigger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+/**
+ * 以内存 H2(MySQL 兼容模式)代替 MySQL
+ */
+public class DatabaseConfigurationWriterTest {
+
+    private JdbcDataSource dataSource;
+
+    private Connection keepAlive;
+
+    @BeforeMethod
+    public void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:cfg4j_" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+
+        keepAlive = dataSource.getConnection();
+        execute("CREATE TABLE TB_CONFIG (ID INTEGER NOT NULL AUTO_INCREMENT, PROJECT VARCHAR(255) NOT NULL," +
+            " PROFILE VARCHAR(255) NOT NULL DEFAULT 'default', `KEY` VARCHAR(255) NOT NULL, `VALUE` VARCHAR(255) NOT NULL," +
+            " DELETED TINYINT NOT NULL DEFAULT 0, UPDATE_AT TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (PROJECT, PROFILE, `KEY`))");
+        execute("CREATE TABLE TB_CONFIG_VERSION (PROJECT VARCHAR(255) PRIMARY KEY, VERSION BIGINT NOT NULL DEFAULT 0)");
+        execute("INSERT INTO TB_CONFIG (PROJECT, PROFILE, `KEY`, `VALUE`, UPDATE_AT) VALUES" +
+            " ('demo', 'prod', 'same', 'v', TIMESTAMP '2020-01-01 00:00:00'), ('demo', 'prod', 'old', 'v', TIMESTAMP '2020-01-01 00:00:00')");
+        execute("CREATE TRIGGER TB_CONFIG_BUMP_VERSION AFTER INSERT, UPDATE, DELETE ON TB_CONFIG FOR EACH ROW CALL '" +
+            BumpVersion.class.getName() + "'");
+    }
+
+    /**
+     * 对应 config.sql 中的触发器: 行内容变化时递增项目的版本号
+     */
+    public static class BumpVersion implements Trigger {
+
+        @Override
+        public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+            if (Arrays.equals(oldRow, newRow))
+                return;
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO TB_CONFIG_VERSION (PROJECT, VERSION) VALUES (?, 1) ON DUPLICATE KEY UPDATE VERSION = VERSION + 1")) {
+                ps.setObject(1, (newRow != null ? newRow : oldRow)[1]);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws SQLException {
+        keepAlive.close();
+    }
+
+    @Test
+    public void testApplyInBatches() throws SQLException {
+        DatabaseConfigurationWriter writer = new DatabaseConfigurationWriter(dataSource, "TB_CONFIG");
+        writer.setDeletedColumn("deleted");
+        writer.setBatchSize(100);
+
+        Map<String, String> changes = new HashMap<>();
+        for (int i = 0; i < 1050; i++)
+            changes.put("key." + i, "value." + i);
+        changes.put("same", "v");
+        changes.put("old", null);
+
+        // 新增 1050 行和软删除 1 行, 值未变化的行不递增版本号
+        assertEquals(writer.apply("demo", "prod", changes), 1051L);
+
+        DatabaseConfigurationSource source = new DatabaseConfigurationSource(dataSource, "TB_CONFIG", "demo");
+        source.setProfile("prod");
+        source.setDeletedColumn("deleted");
+        Properties prop = source.getConfiguration(new ImmutableEnvironment("prod"));
+        assertEquals(prop.size(), 1051);
+        assertEquals(prop.getProperty("key.1049"), "value.1049");
+        assertNull(prop.getProperty("old"));
+
+        // 值未变化的行保留原来的 UPDATE_AT
+        assertEquals(queryString("SELECT CAST(UPDATE_AT AS VARCHAR) FROM TB_CONFIG WHERE `KEY` = 'same'"), "2020-01-01 00:00:00");
+        // 变化的行使用数据库的当前时间
+        assertEquals(queryString("SELECT COUNT(*) FROM TB_CONFIG WHERE UPDATE_AT > TIMESTAMP '2020-01-01 00:00:00'" +
+            " AND UPDATE_AT <= CURRENT_TIMESTAMP"), "1051");
+
+        // 删除后重新写入
+        changes.clear();
+        changes.put("old", "again");
+        assertEquals(writer.apply("demo", "prod", changes), 1052L);
+        source.reload();
+        assertEquals(source.getConfiguration(new ImmutableEnvironment("prod")).getProperty("old"), "again");
+        source.close();
+    }
+
+    @Test
+    public void testRollbackOnFailure() throws SQLException {
+        DatabaseConfigurationWriter writer = new DatabaseConfigurationWriter(dataSource, "TB_CONFIG");
+        writer.setBatchSize(2);
+
+        Map<String, String> changes = new HashMap<>();
+        changes.put("a", "1");
+        changes.put("b", "2");
+        changes.put("c", new String(new char[300]).replace('\0', 'x'));
+
+        try {
+            writer.apply("demo", "prod", changes);
+            fail("value is longer than the column");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(queryString("SELECT COUNT(*) FROM TB_CONFIG"), "2");
+        assertNull(queryString("SELECT VERSION FROM TB_CONFIG_VERSION WHERE PROJECT = 'demo'"));
+    }
+
+    private String queryString(String sql) throws SQLException {
+        try (Statement st = keepAlive.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement st = keepAlive.createStatement()) {
+            st.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cm.cfg4j.spring.source;
+
+import org.cfg4j.source.context.environment.ImmutableEnvironment;
+import org.eclipse.jgit.api.Git;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+
+public class GitRepositoryConfigurationSourceTest {
+
+    @Test
+    public void testReloadAndReuse() throws Exception {
+        Path origin = Files.createTempDirectory("cfg4j-git-origin");
+        Path local = Files.createTempDirectory("cfg4j-git-local").resolve("repo");
+
+        try (Git git = Git.init().setDirectory(origin.toFile()).call()) {
+            Files.createDirectories(origin.resolve("app"));
+            Files.write(origin.resolve("app/a.properties"), "a=1\n".getBytes("UTF-8"));
+            Files.write(origin.resolve("app/b.properties"), "b=1\n".getBytes("UTF-8"));
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("init").call();
+
+            String uri = origin.toUri().toString();
+            GitRepositoryConfigurationSource source = new GitRepositoryConfigurationSource(uri, local, "master/app", Arrays.asList("a.properties", "b.properties"));
+            source.init();
+            assertEquals(source.getConfiguration(new ImmutableEnvironment("master/app")).getProperty("a"), "1");
+            String fingerprint = source.getFingerprint();
+
+            // 与配置文件无关的提交不改变指纹
+            Files.write(origin.resolve("README"), "readme".getBytes("UTF-8"));
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("readme").call();
+            source.reload();
+            assertEquals(source.getFingerprint(), fingerprint);
+
+            Files.write(origin.resolve("app/b.properties"), "b=2\n".getBytes("UTF-8"));
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("update b").call();
+            source.reload();
+            assertNotEquals(source.getFingerprint(), fingerprint);
+            assertEquals(source.getConfiguration(new ImmutableEnvironment("master/app")).getProperty("b"), "2");
+            source.close();
+
+            // 重启后复用本地仓库
+            GitRepositoryConfigurationSource restarted = new GitRepositoryConfigurationSource(uri, local, "master/app", Arrays.asList("a.properties", "b.properties"));
+            restarted.init();
+            assertEquals(restarted.getConfiguration(new ImmutableEnvironment("master/app")).getProperty("b"), "2");
+            restarted.close();
+        }
+    }
+}
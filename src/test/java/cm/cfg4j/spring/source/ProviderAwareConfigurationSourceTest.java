@@ -0,0 +1,219 @@
+package cm.cfg4j.spring.source;
+
+import cm.cfg4j.spring.Cfg4jPropertyPlaceholderConfigurer;
+import cm.cfg4j.spring.metrics.ConfigMetrics;
+import cm.cfg4j.spring.snapshot.LocalSnapshotStore;
+import cm.cfg4j.spring.snapshot.PropertiesSnapshot;
+import org.cfg4j.provider.ConfigurationProviderBuilder;
+import org.cfg4j.source.ConfigurationSource;
+import org.cfg4j.source.context.environment.Environment;
+import org.cfg4j.source.context.environment.ImmutableEnvironment;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class ProviderAwareConfigurationSourceTest {
+
+    /**
+     * reload 时按当前数据计算指纹的配置源
+     */
+    private static class StubSource implements ConfigurationSource, FingerprintAware {
+
+        private final Properties data = new Properties();
+
+        private volatile String fingerprint;
+
+        private int reads;
+
+        /**
+         * 初始化和 reload 前等待, 用来模拟慢的后端
+         */
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        private volatile long delayMillis;
+
+        private final AtomicInteger running = new AtomicInteger();
+
+        private volatile int maxRunning;
+
+        @Override
+        public synchronized Properties getConfiguration(Environment environment) {
+            reads++;
+            Properties prop = new Properties();
+            prop.putAll(data);
+            return prop;
+        }
+
+        @Override
+        public void init() {
+            reload();
+        }
+
+        @Override
+        public void reload() {
+            maxRunning = Math.max(maxRunning, running.incrementAndGet());
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+                Thread.sleep(delayMillis);
+                synchronized (this) {
+                    fingerprint = ContentFingerprint.of(data);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String getFingerprint() {
+            return fingerprint;
+        }
+    }
+
+    @Test
+    public void testSkipUnchangedReload() {
+        PropertiesSnapshot original = Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get();
+        try {
+            StubSource stub = new StubSource();
+            stub.data.setProperty("a", "1");
+            stub.data.setProperty("b", "2");
+
+            ProviderAwareConfigurationSource source = new ProviderAwareConfigurationSource(stub);
+            source.setChangeDispatcher(null);
+            source.setConfigurationProvider(new ConfigurationProviderBuilder()
+                .withConfigurationSource(source)
+                .withEnvironment(new ImmutableEnvironment(""))
+                .build());
+
+            source.reload();
+            assertEquals(source.getAppliedReloadCount(), 1L);
+            PropertiesSnapshot snapshot = Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get();
+            assertEquals(snapshot.get("a"), "1");
+
+            // 指纹未变化时不读取属性, 也不替换快照
+            int reads = stub.reads;
+            source.reload();
+            assertEquals(source.getSkippedReloadCount(), 1L);
+            assertEquals(stub.reads, reads);
+            assertSame(Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get(), snapshot);
+
+            stub.data.setProperty("a", "changed");
+            source.reload();
+            assertEquals(source.getAppliedReloadCount(), 2L);
+            assertEquals(Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get().get("a"), "changed");
+
+            stub.data.remove("b");
+            source.reload();
+            assertEquals(source.getAppliedReloadCount(), 3L);
+            assertNull(Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get().get("b"));
+            assertEquals(source.getSkippedReloadCount(), 1L);
+        } finally {
+            Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.set(original);
+        }
+    }
+
+    @Test
+    public void testStaleSnapshotAndSerializedReload() throws Exception {
+        PropertiesSnapshot original = Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            LocalSnapshotStore store = new LocalSnapshotStore(Files.createTempDirectory("cfg4j-snapshot").resolve("app.snapshot"));
+            Properties local = new Properties();
+            local.setProperty("a", "local");
+            store.write(local);
+
+            StubSource stub = new StubSource();
+            stub.data.setProperty("a", "1");
+            stub.gate = new CountDownLatch(1);
+
+            SnapshotBackedConfigurationSource snapshotSource = new SnapshotBackedConfigurationSource(stub, store, new ImmutableEnvironment(""));
+            ProviderAwareConfigurationSource source = new ProviderAwareConfigurationSource(snapshotSource);
+            source.setChangeDispatcher(null);
+            ConfigMetrics metrics = new ConfigMetrics("stub", "test");
+            source.setMetrics(metrics);
+            snapshotSource.setOnReady(source::reload);
+            source.setConfigurationProvider(new ConfigurationProviderBuilder()
+                .withConfigurationSource(source)
+                .withEnvironment(new ImmutableEnvironment(""))
+                .build());
+
+            // 后端未就绪时的 reload 不报错, 但记为失败
+            assertTrue(snapshotSource.isServingSnapshot());
+            long failures = metrics.getReloadFailureCount();
+            source.reload();
+            assertEquals(metrics.getReloadFailureCount(), failures + 1);
+            assertEquals(Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get().get("a"), "local");
+
+            // 后端就绪时 worker 上的 reload 与其他 reload 互斥执行
+            stub.delayMillis = 100;
+            stub.gate.countDown();
+            for (int i = 0; i < 100 && snapshotSource.isServingSnapshot(); i++)
+                Thread.sleep(20);
+            assertFalse(snapshotSource.isServingSnapshot());
+            Future<?> concurrent = executor.submit(source::reload);
+            source.reload();
+            concurrent.get(5, TimeUnit.SECONDS);
+            assertEquals(stub.maxRunning, 1);
+
+            assertEquals(Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.get().get("a"), "1");
+            assertEquals(metrics.getReloadFailureCount(), failures + 1);
+            metrics.close();
+        } finally {
+            executor.shutdownNow();
+            Cfg4jPropertyPlaceholderConfigurer.__propertiesHolder.set(original);
+        }
+    }
+
+    @Test
+    public void testFingerprintSymmetry() {
+        ContentFingerprint fp = new ContentFingerprint();
+        fp.add("prod", "a", "1");
+        long one = fp.getValue();
+
+        // 与顺序无关
+        fp.add("prod", "b", "2");
+        ContentFingerprint reversed = new ContentFingerprint();
+        reversed.add("prod", "b", "2");
+        reversed.add("prod", "a", "1");
+        assertEquals(reversed.getValue(), fp.getValue());
+
+        // remove 抵消 add, 修改等价于 remove 旧值再 add 新值
+        fp.remove("prod", "b", "2");
+        assertEquals(fp.getValue(), one);
+        fp.remove("prod", "a", "1");
+        assertEquals(fp.getValue(), 0L);
+
+        fp.add("prod", "a", "1");
+        fp.remove("prod", "a", "1");
+        fp.add("prod", "a", "3");
+        ContentFingerprint updated = new ContentFingerprint();
+        updated.add("prod", "a", "3");
+        assertEquals(fp.getValue(), updated.getValue());
+
+        // scope、key 与 value 的边界不同时指纹不同
+        assertNotEquals(ContentFingerprint.entryHash("prod", "a1", ""), ContentFingerprint.entryHash("prod", "a", "1"));
+        assertNotEquals(ContentFingerprint.entryHash("proda", "", "1"), ContentFingerprint.entryHash("prod", "a", "1"));
+        assertNotEquals(ContentFingerprint.of(props("a", "1")), ContentFingerprint.of(props("a", "2")));
+    }
+
+    private static Properties props(String key, String value) {
+        Properties prop = new Properties();
+        prop.setProperty(key, value);
+        return prop;
+    }
+}